@@ -0,0 +1,161 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.abhishek.simplicitas.util.excel.CsvRowWriter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the stages of the conversion of a workbook into a CSV file one at
+ * a time - opening the workbook, formatting its rows, escaping the formatted
+ * fields and writing the CSV file from the open workbook - and the
+ * conversion as a whole, through the user model and streamed. One operation
+ * is one pass over the whole workbook.
+ * <p>
+ * The workbooks are built by {@link WorkbookFixture} before each trial, one
+ * for every combination of the parameters; narrow them down with the -p
+ * option of JMH. The allocation rate is reported by the gc profiler, which
+ * the benchmarks profile turns on by default.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+    private static final int COLUMNS = 20;
+
+    @Param({
+        "xlsx", "xls"
+    })
+    public String format;
+
+    @Param({
+        "1000", "20000"
+    })
+    public int rows;
+
+    @Param({
+        "0.0", "0.6"
+    })
+    public double blankRatio;
+
+    @Param({
+        "0.0", "0.3"
+    })
+    public double formulaRatio;
+
+    @Param({
+        "0.2", "0.8"
+    })
+    public double stringRatio;
+
+    private File folder;
+    private File workbook;
+    private File csvFile;
+    private ExcelUtils converter;
+    private List<Row> sheetRows;
+    private List<String> fields;
+    private CsvRowWriter escaper;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.folder = Files.createTempDirectory("benchmark").toFile();
+        this.workbook = WorkbookFixture.create(this.folder, this.format, this.rows, COLUMNS, this.blankRatio,
+            this.formulaRatio, this.stringRatio);
+        this.csvFile = new File(this.folder, ExcelUtils.csvFilename(this.workbook.getName()));
+
+        // The workbook stays open for the stages that work on an open
+        // workbook; the fields are formatted once for the escaping stage.
+        this.converter = this.newConverter();
+        this.converter.openWorkbook(this.workbook);
+        this.converter.convertToCSV();
+        this.sheetRows = new ArrayList<Row>(this.rows);
+        this.fields = new ArrayList<String>(this.rows * COLUMNS);
+        Sheet sheet = this.converter.getWorkbook().getSheetAt(0);
+        for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+            this.sheetRows.add(sheet.getRow(i));
+            this.fields.addAll(this.converter.rowToCSV(sheet.getRow(i)));
+        }
+        this.escaper = new CsvRowWriter(new StringWriter(), ",", ExcelUtils.EXCEL_STYLE_ESCAPING, COLUMNS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.converter.closeWorkbook();
+        for (File file : this.folder.listFiles()) {
+            file.delete();
+        }
+        this.folder.delete();
+    }
+
+    @Benchmark
+    public void openWorkbook() {
+        ExcelUtils converter = this.newConverter();
+        converter.openWorkbook(this.workbook);
+        converter.closeWorkbook();
+    }
+
+    @Benchmark
+    public void rowToCSV(Blackhole blackhole) {
+        for (Row row : this.sheetRows) {
+            blackhole.consume(this.converter.rowToCSV(row));
+        }
+    }
+
+    @Benchmark
+    public void escapeEmbeddedCharacters(Blackhole blackhole) {
+        for (String field : this.fields) {
+            blackhole.consume(this.escaper.escapeEmbeddedCharacters(field));
+        }
+    }
+
+    @Benchmark
+    public List<File> saveCSVFile() {
+        return this.converter.saveCSVFile(this.csvFile);
+    }
+
+    @Benchmark
+    public List<File> convertLoaded() {
+        return this.newConverter().convertFile(this.workbook, this.csvFile);
+    }
+
+    @Benchmark
+    public List<File> convertStreamed() {
+        ExcelUtils converter = this.newConverter();
+        converter.setStreaming(true);
+        return converter.convertFile(this.workbook, this.csvFile);
+    }
+
+    private ExcelUtils newConverter() {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setCsvFormat(",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+        return converter;
+    }
+}
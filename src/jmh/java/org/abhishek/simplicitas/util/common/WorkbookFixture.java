@@ -0,0 +1,119 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Builds the workbooks the conversion is benchmarked against. Every workbook
+ * holds a single sheet whose cells are, in the given proportions, blank,
+ * formulae, strings or numbers - plain, as amounts or as dates - chosen by a
+ * seeded Random so that the same parameters always give the same workbook.
+ * Some of the strings hold separators, quotes and line breaks so that the
+ * escaping of fields is exercised too. The cached results of the formulae
+ * are saved with the workbook.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+final class WorkbookFixture {
+    private static final long SEED = 20160314L;
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie, delta", "echo \"foxtrot\"", "golf\nhotel", "india", "juliet", "kilo"
+    };
+
+    private WorkbookFixture() {
+    }
+
+    /**
+     * @param folder
+     *            the folder the workbook is saved in
+     * @param format
+     *            either xls or xlsx
+     * @param rows
+     *            the number of rows
+     * @param columns
+     *            the number of columns
+     * @param blankRatio
+     *            the proportion of cells left blank
+     * @param formulaRatio
+     *            the proportion of cells holding formulae
+     * @param stringRatio
+     *            the proportion of the remaining cells holding strings rather
+     *            than numbers
+     * @return the workbook file
+     * @throws IOException
+     *             if the workbook cannot be saved
+     */
+    static File create(File folder, String format, int rows, int columns, double blankRatio, double formulaRatio,
+        double stringRatio) throws IOException {
+        Workbook workbook = "xls".equals(format) ? new HSSFWorkbook() : new XSSFWorkbook();
+        Random random = new Random(SEED);
+        DataFormat formats = workbook.createDataFormat();
+        CellStyle amountStyle = workbook.createCellStyle();
+        amountStyle.setDataFormat(formats.getFormat("#,##0.00"));
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(formats.getFormat("dd/mm/yyyy"));
+        Calendar calendar = Calendar.getInstance();
+
+        Sheet sheet = workbook.createSheet("Data");
+        for (int i = 0; i < rows; i++) {
+            Row row = sheet.createRow(i);
+            // The first column is always a number, for the formulae to use.
+            row.createCell(0).setCellValue(random.nextInt(100000));
+            for (int j = 1; j < columns; j++) {
+                double kind = random.nextDouble();
+                if (kind < blankRatio) {
+                    continue;
+                }
+                Cell cell = row.createCell(j);
+                if (kind < blankRatio + formulaRatio) {
+                    cell.setCellFormula("A" + (i + 1) + "*" + j + "+" + new CellReference(i, j - 1).formatAsString());
+                } else if (random.nextDouble() < stringRatio) {
+                    cell.setCellValue(WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000));
+                } else {
+                    switch (random.nextInt(3)) {
+                    case 0:
+                        cell.setCellValue(random.nextInt(1000000));
+                        break;
+                    case 1:
+                        cell.setCellValue(random.nextDouble() * 100000);
+                        cell.setCellStyle(amountStyle);
+                        break;
+                    default:
+                        calendar.clear();
+                        calendar.set(2000 + random.nextInt(20), random.nextInt(12), 1 + random.nextInt(28));
+                        cell.setCellValue(calendar);
+                        cell.setCellStyle(dateStyle);
+                        break;
+                    }
+                }
+            }
+        }
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+        File file = new File(folder, "fixture_" + rows + "x" + columns + "." + format);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+            workbook.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,478 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records, in a file kept in the destination folder, which workbooks have
+ * already been converted so that a later run converts only those that have
+ * changed.
+ * <p>
+ * Every entry holds the path, size, modification time and SHA-256 digest of a
+ * workbook, a digest of the converter settings that shaped its CSV files and
+ * the files themselves. A workbook is current - and skipped - if its entry
+ * carries the same settings, its CSV files still exist and either its size
+ * and modification time or, failing those, its digest are unchanged.
+ * Workbooks that are byte for byte identical to another, under whatever name,
+ * are converted only once; the CSV files of the first are copied for the
+ * rest.
+ * <p>
+ * A run is {@link #plan(List, List, String) planned} before any workbook is
+ * converted; the conversions the plan calls for may then be carried out on
+ * any number of threads before the duplicates are copied and the manifest
+ * {@link #save() saved}.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ConversionManifest extends ExceptionUtils {
+    /** The name of the manifest file in the destination folder. */
+    public static final String MANIFEST_FILENAME = ".excel-csv-manifest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String CSV_FILE_EXTENSION = ".csv";
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    private ConversionManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the manifest kept in the destination folder; if there is none,
+     * the manifest starts out empty.
+     * <p>
+     * Handles {@link IOException} thrown if the manifest cannot be read.
+     *
+     * @param destination
+     *            the folder the CSV files are written to
+     * @return the manifest
+     * @author abhishek
+     * @since 1.0
+     */
+    public static ConversionManifest load(File destination) {
+        ConversionManifest manifest = new ConversionManifest(new File(destination, MANIFEST_FILENAME));
+        if (!manifest.file.exists()) {
+            return manifest;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest.file), UTF_8));
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    Entry entry = Entry.parse(line);
+                    if (entry != null) {
+                        manifest.entries.put(entry.source, entry);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    handleIOException(ex);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest away, replacing the previous one only once the new
+     * one is complete.
+     * <p>
+     * Handles {@link IOException} thrown if the manifest cannot be written.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    public synchronized void save() {
+        File temporary = new File(this.file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temporary.toPath()), UTF_8));
+            writer.write("# source\tsize\tmodified\tsha-256\tsettings\tcsv file\toutput files...\n");
+            for (Entry entry : this.entries.values()) {
+                writer.write(entry.format());
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    handleIOException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decides what has to be done for each workbook: nothing if it is
+     * current, a copy if it duplicates another workbook or a conversion.
+     * Workbooks whose size or modification time have changed are read once
+     * to compute their digest.
+     * <p>
+     * Handles {@link IOException} thrown if a workbook cannot be read.
+     *
+     * @param workbooks
+     *            the workbooks
+     * @param csvFiles
+     *            the CSV file for each workbook, in the same order
+     * @param settings
+     *            a description of the converter settings that shape the CSV
+     *            files
+     * @return the plan
+     * @author abhishek
+     * @since 1.0
+     */
+    public Plan plan(List<File> workbooks, List<File> csvFiles, String settings) {
+        String settingsDigest = digest(settings);
+        Plan plan = new Plan(settingsDigest);
+        try {
+            Map<String, Integer> firstByContent = new HashMap<String, Integer>();
+            List<Integer> unresolved = new ArrayList<Integer>();
+            for (int i = 0; i < workbooks.size(); i++) {
+                File workbook = workbooks.get(i);
+                String source = workbook.getAbsolutePath();
+                long size = workbook.length();
+                long modified = workbook.lastModified();
+                Entry previous = this.entries.get(source);
+
+                // Unchanged size and modification time are trusted; only
+                // workbooks that may have changed are read.
+                String hash = null;
+                if (previous != null && previous.size == size && previous.modified == modified
+                    && previous.isCurrent(settingsDigest)) {
+                    hash = previous.hash;
+                } else {
+                    hash = digest(workbook);
+                }
+                Entry entry = new Entry(source, size, modified, hash, settingsDigest, csvFiles.get(i));
+                plan.entries.add(entry);
+
+                if (previous != null && previous.hash.equals(hash) && previous.isCurrent(settingsDigest)) {
+                    entry.outputs = previous.outputs;
+                    plan.skipped.add(i);
+                } else if (firstByContent.containsKey(hash)) {
+                    plan.duplicates.put(i, firstByContent.get(hash));
+                } else {
+                    unresolved.add(i);
+                }
+                if (!firstByContent.containsKey(hash)) {
+                    firstByContent.put(hash, i);
+                }
+            }
+
+            // A workbook still to be converted may duplicate one converted on
+            // an earlier run, provided that the CSV files of that one are not
+            // about to be overwritten.
+            Map<String, Entry> previousByContent = new HashMap<String, Entry>();
+            for (Entry previous : this.entries.values()) {
+                if (previous.isCurrent(settingsDigest)) {
+                    previousByContent.put(previous.hash, previous);
+                }
+            }
+            for (int i = 0; i < plan.entries.size(); i++) {
+                if (!plan.skipped.contains(i)) {
+                    previousByContent.remove(this.entryHash(plan.entries.get(i).source));
+                }
+            }
+            for (Integer i : unresolved) {
+                Entry original = previousByContent.get(plan.entries.get(i).hash);
+                if (original != null && !original.source.equals(plan.entries.get(i).source)) {
+                    plan.copies.put(i, original);
+                } else {
+                    plan.conversions.add(i);
+                }
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
+        }
+        plan.manifest = this;
+        return plan;
+    }
+
+    private String entryHash(String source) {
+        Entry entry = this.entries.get(source);
+        return (entry == null) ? null : entry.hash;
+    }
+
+    private synchronized void record(Entry entry) {
+        this.entries.put(entry.source, entry);
+    }
+
+    /**
+     * Computes the SHA-256 digest of the contents of a file.
+     *
+     * @param file
+     *            the file
+     * @return the digest as hexadecimal digits
+     * @throws IOException
+     *             if the file cannot be read
+     * @author abhishek
+     * @since 1.0
+     */
+    public static String digest(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(file);
+        try {
+            int count = 0;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String digest(String text) {
+        return toHex(newDigest().digest(text.getBytes(UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * What a run has to do for each of the workbooks it was planned for,
+     * identified by their position in the list given to the plan.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    public static class Plan {
+        private final String settingsDigest;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private final List<Integer> skipped = new ArrayList<Integer>();
+        private final List<Integer> conversions = new ArrayList<Integer>();
+        private final Map<Integer, Integer> duplicates = new LinkedHashMap<Integer, Integer>();
+        private final Map<Integer, Entry> copies = new LinkedHashMap<Integer, Entry>();
+        private ConversionManifest manifest;
+
+        private Plan(String settingsDigest) {
+            this.settingsDigest = settingsDigest;
+        }
+
+        /**
+         * @return the positions of the workbooks that have to be converted
+         * @author abhishek
+         * @since 1.0
+         */
+        public List<Integer> getConversions() {
+            return this.conversions;
+        }
+
+        /**
+         * @return the number of workbooks that are already current
+         * @author abhishek
+         * @since 1.0
+         */
+        public int getSkippedCount() {
+            return this.skipped.size();
+        }
+
+        /**
+         * @return the number of workbooks whose CSV files are copied from
+         *         those of an identical workbook
+         * @author abhishek
+         * @since 1.0
+         */
+        public int getCopyCount() {
+            return this.duplicates.size() + this.copies.size();
+        }
+
+        /**
+         * Records that a workbook has been converted. May be called from any
+         * thread.
+         *
+         * @param index
+         *            the position of the workbook
+         * @param outputs
+         *            the files written
+         * @author abhishek
+         * @since 1.0
+         */
+        public void converted(int index, List<File> outputs) {
+            Entry entry = this.entries.get(index);
+            entry.outputs = new ArrayList<String>();
+            for (File output : outputs) {
+                entry.outputs.add(output.getAbsolutePath());
+            }
+            this.manifest.record(entry);
+        }
+
+        /**
+         * Copies the CSV files of each duplicate from those of the workbook
+         * it duplicates, renamed after the duplicate, and records the current
+         * workbooks. Duplicates of a workbook whose conversion failed are
+         * left out.
+         * <p>
+         * Handles {@link IOException} thrown if a file cannot be copied.
+         *
+         * @author abhishek
+         * @since 1.0
+         */
+        public void complete() {
+            try {
+                for (Integer i : this.skipped) {
+                    this.manifest.record(this.entries.get(i));
+                }
+                // Copies of earlier conversions come first, as the first of
+                // several identical workbooks may itself be such a copy.
+                for (Map.Entry<Integer, Entry> copy : this.copies.entrySet()) {
+                    this.copy(copy.getValue(), this.entries.get(copy.getKey()));
+                }
+                for (Map.Entry<Integer, Integer> duplicate : this.duplicates.entrySet()) {
+                    Entry original = this.entries.get(duplicate.getValue());
+                    if (original.outputs != null) {
+                        this.copy(original, this.entries.get(duplicate.getKey()));
+                    }
+                }
+            } catch (IOException ex) {
+                handleIOException(ex);
+            }
+        }
+
+        private void copy(Entry original, Entry duplicate) throws IOException {
+            System.out.println("Copying the CSV file(s) of [" + original.source + "] for [" + duplicate.source
+                + "]");
+            String originalBase = baseName(original.csv);
+            File duplicateCsv = new File(duplicate.csv);
+            String duplicateBase = baseName(duplicate.csv);
+            List<File> outputs = new ArrayList<File>();
+            for (String output : original.outputs) {
+                String name = new File(output).getName();
+                File target = new File(duplicateCsv.getParentFile(), duplicateBase
+                    + name.substring(Math.min(originalBase.length(), name.length())));
+                Files.copy(new File(output).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                outputs.add(target);
+            }
+            duplicate.settings = this.settingsDigest;
+            this.converted(this.entries.indexOf(duplicate), outputs);
+        }
+
+        private static String baseName(String csv) {
+            String name = new File(csv).getName();
+            return name.endsWith(CSV_FILE_EXTENSION) ? name.substring(0, name.length() - CSV_FILE_EXTENSION.length())
+                : name;
+        }
+    }
+
+    /**
+     * A single line of the manifest.
+     */
+    private static class Entry {
+        private final String source;
+        private final long size;
+        private final long modified;
+        private final String hash;
+        private final String csv;
+        private String settings;
+        private List<String> outputs;
+
+        Entry(String source, long size, long modified, String hash, String settings, File csv) {
+            this(source, size, modified, hash, settings, csv.getAbsolutePath(), null);
+        }
+
+        private Entry(String source, long size, long modified, String hash, String settings, String csv,
+            List<String> outputs) {
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.settings = settings;
+            this.csv = csv;
+            this.outputs = outputs;
+        }
+
+        /**
+         * @return true if the CSV files were written with the same settings
+         *         and all of them still exist
+         */
+        boolean isCurrent(String settingsDigest) {
+            if (!this.settings.equals(settingsDigest) || this.outputs == null) {
+                return false;
+            }
+            for (String output : this.outputs) {
+                if (!new File(output).isFile()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String format() {
+            StringBuilder line = new StringBuilder();
+            line.append(this.source).append(FIELD_SEPARATOR).append(this.size).append(FIELD_SEPARATOR)
+                .append(this.modified).append(FIELD_SEPARATOR).append(this.hash).append(FIELD_SEPARATOR)
+                .append(this.settings).append(FIELD_SEPARATOR).append(this.csv);
+            for (String output : this.outputs) {
+                line.append(FIELD_SEPARATOR).append(output);
+            }
+            return line.toString();
+        }
+
+        /**
+         * @return the entry, or null if the line is malformed
+         */
+        static Entry parse(String line) {
+            String[] fields = line.split(FIELD_SEPARATOR);
+            if (fields.length < 6) {
+                return null;
+            }
+            try {
+                return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3],
+                    fields[4], fields[5], new ArrayList<String>(Arrays.asList(fields).subList(6, fields.length)));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+    }
+}
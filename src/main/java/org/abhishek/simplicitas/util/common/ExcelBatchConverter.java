@@ -0,0 +1,207 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts every Excel workbook beneath a folder into a CSV file, several
+ * workbooks at a time.
+ * <p>
+ * The source folder is walked recursively and the structure of its sub folders
+ * is mirrored beneath the destination folder. Workbooks are handed to a fixed
+ * number of worker threads largest first, so that one big workbook picked up
+ * late does not leave the other threads idle at the end of the run. Each
+ * workbook is converted by a fresh copy of the {@link ExcelUtils} it was
+ * created with, so no per workbook state is ever shared between threads.
+ * <p>
+ * In {@link ExcelUtils#setIncremental(boolean) incremental} mode the
+ * workbooks whose CSV files are still current are skipped and those identical
+ * to another are converted only once, as recorded by a
+ * {@link ConversionManifest} in the destination folder.
+ * <p>
+ * A workbook that cannot be converted does not stop the others; once the
+ * whole folder has been processed an {@link IllegalStateException} reports
+ * how many failed.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ExcelBatchConverter extends ExceptionUtils {
+    private final ExcelUtils settings;
+    private final int threads;
+
+    /**
+     * @param settings
+     *            the converter whose separator, formatting convention and
+     *            other settings are applied to every workbook
+     * @param threads
+     *            the number of workbooks converted at the same time
+     * @author abhishek
+     * @since 1.0
+     */
+    public ExcelBatchConverter(ExcelUtils settings, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        this.settings = settings;
+        this.threads = threads;
+    }
+
+    /**
+     * Converts all of the workbooks beneath the source folder, returning once
+     * every one of them has been processed.
+     * <p>
+     * Handles {@link IOException} thrown if the source folder cannot be
+     * walked or a destination sub folder cannot be created.
+     * <p>
+     * Handles {@link InterruptedException} thrown if the calling thread is
+     * interrupted whilst waiting; conversions still running are cancelled.
+     *
+     * @param source
+     *            the folder holding the workbooks
+     * @param destination
+     *            the folder the CSV files are written to
+     * @author abhishek
+     * @since 1.0
+     */
+    public void convert(File source, File destination) {
+        final Map<File, Long> sizes = new HashMap<File, Long>();
+        try {
+            this.findWorkbooks(source.toPath(), sizes);
+        } catch (IOException ex) {
+            handleIOException(ex);
+        }
+
+        // Largest first; the file size is a fair stand in for the time a
+        // workbook takes to convert.
+        List<File> workbooks = new ArrayList<File>(sizes.keySet());
+        Collections.sort(workbooks, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return sizes.get(second).compareTo(sizes.get(first));
+            }
+        });
+
+        ConversionManifest manifest = null;
+        ConversionManifest.Plan plan = null;
+        List<Integer> conversions = new ArrayList<Integer>();
+        List<File> csvFiles = new ArrayList<File>(workbooks.size());
+        try {
+            for (int i = 0; i < workbooks.size(); i++) {
+                csvFiles.add(this.csvFile(source, destination, workbooks.get(i)));
+                conversions.add(i);
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
+        }
+        if (this.settings.isIncremental()) {
+            manifest = ConversionManifest.load(destination);
+            plan = manifest.plan(workbooks, csvFiles, this.settings.settingsFingerprint());
+            conversions = plan.getConversions();
+            System.out.println(plan.getSkippedCount() + " workbooks are current, " + plan.getCopyCount()
+                + " duplicate others");
+        }
+
+        System.out.println("Converting " + conversions.size() + " workbooks on " + this.threads + " threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        List<Future<Void>> results = new ArrayList<Future<Void>>(conversions.size());
+        int failures = 0;
+        Throwable firstFailure = null;
+        try {
+            for (Integer i : conversions) {
+                results.add(executor.submit(this.newTask(workbooks.get(i), csvFiles.get(i), plan, i)));
+            }
+            executor.shutdown();
+
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException ex) {
+                    System.out.println("Failed to convert [" + workbooks.get(conversions.get(i)).getPath() + "]: "
+                        + ex.getCause().getMessage());
+                    if (firstFailure == null) {
+                        firstFailure = ex.getCause();
+                    }
+                    failures++;
+                }
+            }
+            if (plan != null) {
+                plan.complete();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            handleCheckedException(ex);
+        } finally {
+            executor.shutdownNow();
+            if (manifest != null) {
+                manifest.save();
+            }
+        }
+
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " of " + workbooks.size() + " workbooks could not be converted.",
+                firstFailure);
+        }
+    }
+
+    private Callable<Void> newTask(final File workbook, final File csvFile, final ConversionManifest.Plan plan,
+        final int index) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                List<File> outputs = ExcelBatchConverter.this.settings.copy().convertFile(workbook, csvFile);
+                if (plan != null) {
+                    plan.converted(index, outputs);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Works out where the CSV file for a workbook belongs, creating the sub
+     * folder that mirrors the one holding the workbook if need be.
+     */
+    private File csvFile(File source, File destination, File workbook) throws IOException {
+        Path relative = source.toPath().relativize(workbook.toPath().getParent());
+        Path folder = destination.toPath().resolve(relative);
+        Files.createDirectories(folder);
+        return folder.resolve(ExcelUtils.csvFilename(workbook.getName())).toFile();
+    }
+
+    /**
+     * Walks the source folder recording the size of every workbook found.
+     */
+    private void findWorkbooks(Path source, final Map<File, Long> sizes) throws IOException {
+        final FilenameFilter filter = new ExcelUtils.ExcelFilenameFilter();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && filter.accept(file.getParent().toFile(), file.getFileName().toString())) {
+                    sizes.put(file.toFile(), attributes.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+
+/**
+ * Converts Excel workbooks into CSV files on behalf of any number of threads
+ * at once, such as those of a servlet container, so that a single instance
+ * can be configured at start up and shared for the life of the application.
+ * <p>
+ * The converter is configured from an {@link ExcelUtils}, whose settings -
+ * streaming, threads, charset, compression, projection, splitting and the
+ * rest - are copied when the converter is created, along with the separator
+ * and formatting convention; later changes to that ExcelUtils have no
+ * effect. Every conversion is then carried out by a fresh copy of those
+ * settings, so the workbook, formula evaluator and row width of one
+ * conversion are never seen by another.
+ * <p>
+ * What can safely be shared is: each thread keeps the DataFormatter it used
+ * for its last workbook, with the cell formats it has already parsed, rather
+ * than building a new one for every request. The {@link Projection} of the
+ * settings is copied along with the rest, so changing it afterwards does not
+ * affect the converter either.
+ * <p>
+ * Settings that concern whole folders, the number of workbooks converted at
+ * once and incremental conversion, do not apply; each call converts exactly
+ * one workbook.
+ *
+ * @author abhishek
+ * @since 1.0
+ * @see org.abhishek.simplicitas.util.excel.Projection
+ */
+public final class ExcelConverter extends ExceptionUtils {
+    private final ExcelUtils settings;
+    private final ThreadLocal<DataFormatter> formatters = new ThreadLocal<DataFormatter>() {
+        @Override
+        protected DataFormatter initialValue() {
+            return new DataFormatter(true);
+        }
+    };
+
+    /**
+     * Creates a converter that separates fields with a comma and escapes them
+     * in accordance with Excel's convention.
+     *
+     * @param settings
+     *            the settings applied to every workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    public ExcelConverter(ExcelUtils settings) {
+        this(settings, ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    /**
+     * @param settings
+     *            the settings applied to every workbook
+     * @param separator
+     *            the character or characters used to separate fields
+     * @param formattingConvention
+     *            either {@link ExcelUtils#EXCEL_STYLE_ESCAPING} or
+     *            {@link ExcelUtils#UNIX_STYLE_ESCAPING}
+     * @author abhishek
+     * @since 1.0
+     */
+    public ExcelConverter(ExcelUtils settings, String separator, int formattingConvention) {
+        if (settings == null) {
+            throw new IllegalArgumentException("The settings are required.");
+        }
+        ExcelUtils snapshot = settings.copy();
+        snapshot.setCsvFormat(separator, formattingConvention);
+        snapshot.setSharedFormatters(this.formatters);
+        this.settings = snapshot;
+    }
+
+    /**
+     * Converts a single workbook into a CSV file in the destination folder,
+     * named after the workbook with the .xls or .xlsx extension replaced by
+     * .csv; the calling thread returns once the file is complete. May be
+     * called by any number of threads at once.
+     *
+     * @param workbook
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @param destination
+     *            the folder the CSV file is written to
+     * @return the files actually written; the CSV file, a compressed CSV
+     *         file, a CSV file for each sheet or the parts of the CSV file
+     *         along with their manifest
+     * @author abhishek
+     * @since 1.0
+     */
+    public List<File> convert(File workbook, File destination) {
+        if (!workbook.isFile()) {
+            throw new IllegalArgumentException("The Excel workbook [" + workbook.getPath() + "] cannot be found.");
+        }
+        if (!destination.isDirectory()) {
+            throw new IllegalArgumentException("The destination for the CSV " + "file(s) is not a directory/folder.");
+        }
+        return this.settings.copy().convertFile(workbook,
+            new File(destination, ExcelUtils.csvFilename(workbook.getName())));
+    }
+
+    /**
+     * Opens a sheet of a workbook so that its rows can be consumed one at a
+     * time; see {@link ExcelUtils#iterateSheet(String, int)}. May be called
+     * by any number of threads at once, though each iterator must only be
+     * used by one.
+     *
+     * @param workbook
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @param sheetIndex
+     *            the zero based index of the sheet
+     * @return the rows of the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public SheetRowIterator iterateSheet(File workbook, int sheetIndex) {
+        return this.settings.copy().iterateSheet(workbook.getPath(), sheetIndex);
+    }
+
+    /**
+     * Opens a sheet of a workbook so that its rows can be consumed one at a
+     * time; see {@link ExcelUtils#iterateSheet(String, String)}.
+     *
+     * @param workbook
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @return the rows of the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public SheetRowIterator iterateSheet(File workbook, String sheetName) {
+        return this.settings.copy().iterateSheet(workbook.getPath(), sheetName);
+    }
+}
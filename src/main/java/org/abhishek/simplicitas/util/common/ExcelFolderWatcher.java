@@ -0,0 +1,311 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a folder for Excel workbooks as they are dropped into it and
+ * converts each into a CSV file in the destination folder, for as long as
+ * it is left running, so that the JVM stays warm and a workbook is converted
+ * seconds after it lands rather than on the next scheduled run.
+ * <p>
+ * The folder is watched through a {@link WatchService} rather than scanned.
+ * A workbook that is created or modified is not converted straight away, as
+ * it may still be being copied in; it is converted once its size and last
+ * modified time have stayed the same for the settle time, two seconds by
+ * default. It is then handed to a fixed number of worker threads, which
+ * share a single {@link ExcelConverter}. A workbook modified again whilst it
+ * is being converted is converted once more when it next settles, never
+ * twice at the same time. The workbooks already in the folder when watching
+ * begins are converted as though they had just been dropped in, as are all
+ * of those in the folder should the watch service lose track of events.
+ * <p>
+ * Only the folder itself is watched, not its sub folders, and Excel's own
+ * lock files - those whose names start with ~$ - are ignored. A workbook
+ * that cannot be converted is reported and does not stop the others; it is
+ * tried again should it change. Progress can be followed through the
+ * {@link org.abhishek.simplicitas.util.excel.ConversionMetrics metrics} of
+ * the settings the converter was created from.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ExcelFolderWatcher extends ExceptionUtils {
+    static final long DEFAULT_SETTLE_MILLIS = 2000;
+    private static final String LOCK_FILE_PREFIX = "~$";
+
+    private final ExcelConverter converter;
+    private final int workers;
+    private final FilenameFilter filter = new ExcelUtils.ExcelFilenameFilter();
+    private final Set<Path> converting = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private long settleMillis = ExcelFolderWatcher.DEFAULT_SETTLE_MILLIS;
+    private volatile WatchService watchService = null;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param converter
+     *            converts the workbooks
+     * @param workers
+     *            the number of workbooks converted at the same time
+     * @author abhishek
+     * @since 1.0
+     */
+    public ExcelFolderWatcher(ExcelConverter converter, int workers) {
+        if (converter == null) {
+            throw new IllegalArgumentException("A converter is required.");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required.");
+        }
+        this.converter = converter;
+        this.workers = workers;
+    }
+
+    /**
+     * @param settleMillis
+     *            the time, in milliseconds, a workbook must go unchanged
+     *            before it is converted
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setSettleMillis(long settleMillis) {
+        if (settleMillis < 0) {
+            throw new IllegalArgumentException("The settle time cannot be negative.");
+        }
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * @return the time, in milliseconds, a workbook must go unchanged before
+     *         it is converted
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getSettleMillis() {
+        return this.settleMillis;
+    }
+
+    /**
+     * Watches the source folder, converting workbooks as they settle, until
+     * {@link #stop()} is called or the calling thread is interrupted. Before
+     * returning it waits for the conversions already under way to finish.
+     * <p>
+     * Handles {@link IOException} thrown if the folder cannot be watched.
+     * <p>
+     * Handles {@link InterruptedException} thrown if the calling thread is
+     * interrupted whilst waiting for the conversions under way.
+     *
+     * @param source
+     *            the folder the workbooks are dropped into
+     * @param destination
+     *            the folder the CSV files are written to
+     * @author abhishek
+     * @since 1.0
+     */
+    public void watch(File source, File destination) {
+        if (!source.isDirectory()) {
+            throw new IllegalArgumentException("The folder to watch [" + source.getPath() + "] does not exist.");
+        }
+        if (!destination.isDirectory()) {
+            throw new IllegalArgumentException("The destination for the CSV " + "file(s) is not a directory/folder.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.workers);
+        boolean interrupted = false;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            // Stopped before watching began.
+            if (this.stopped) {
+                return;
+            }
+            Path folder = source.toPath();
+            folder.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching [" + source.getPath() + "] for workbooks");
+
+            Map<Path, Pending> pending = new HashMap<Path, Pending>();
+            this.pendAll(folder, pending);
+            while (!this.stopped) {
+                WatchKey key = this.watchService.poll(this.pollMillis(pending), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            this.pendAll(folder, pending);
+                        } else {
+                            this.pend(folder.resolve((Path) event.context()), pending);
+                        }
+                    }
+                    if (!key.reset()) {
+                        throw new IllegalStateException("The folder [" + source.getPath()
+                            + "] can no longer be watched.");
+                    }
+                }
+                this.convertSettled(pending, executor, destination);
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // Closed by stop().
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } catch (InterruptedException ex) {
+            interrupted = true;
+        } finally {
+            this.closeWatchService();
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    System.out.println("Waiting for " + this.converting.size() + " conversions to finish");
+                }
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                handleCheckedException(ex);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Asks the watcher to stop; {@link #watch(File, File)} returns once the
+     * conversions under way have finished. May be called from any thread,
+     * such as a shutdown hook.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    public void stop() {
+        this.stopped = true;
+        this.closeWatchService();
+    }
+
+    private void closeWatchService() {
+        WatchService service = this.watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ex) {
+                handleIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * @return how long to wait for events before checking whether the
+     *         pending workbooks have settled
+     */
+    private long pollMillis(Map<Path, Pending> pending) {
+        return pending.isEmpty() ? this.settleMillis + 1000 : Math.max(this.settleMillis / 4, 10);
+    }
+
+    /**
+     * Adds every workbook in the folder to those waiting to settle.
+     */
+    private void pendAll(Path folder, Map<Path, Pending> pending) {
+        File[] workbooks = folder.toFile().listFiles(this.filter);
+        if (workbooks != null) {
+            for (File workbook : workbooks) {
+                this.pend(workbook.toPath(), pending);
+            }
+        }
+    }
+
+    /**
+     * Adds a workbook to those waiting to settle, or restarts its wait.
+     */
+    private void pend(Path file, Map<Path, Pending> pending) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(ExcelFolderWatcher.LOCK_FILE_PREFIX) && this.filter.accept(file.getParent().toFile(), name)) {
+            pending.put(file, new Pending(file.toFile()));
+        }
+    }
+
+    /**
+     * Hands the workbooks that have gone unchanged for the settle time over
+     * to the workers, and forgets those that have been deleted.
+     */
+    private void convertSettled(Map<Path, Pending> pending, ExecutorService executor, File destination) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Pending> entry = entries.next();
+            File file = entry.getKey().toFile();
+            Pending state = entry.getValue();
+            if (!file.isFile()) {
+                entries.remove();
+            } else if (state.changed(file, now)) {
+                continue;
+            } else if (now - state.since >= TimeUnit.MILLISECONDS.toNanos(this.settleMillis)
+                && this.converting.add(entry.getKey())) {
+                entries.remove();
+                executor.execute(this.newTask(entry.getKey(), destination));
+            }
+        }
+    }
+
+    private Runnable newTask(final Path workbook, final File destination) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ExcelFolderWatcher.this.converter.convert(workbook.toFile(), destination);
+                } catch (RuntimeException ex) {
+                    System.out.println("Failed to convert [" + workbook + "]: " + ex.getMessage());
+                } finally {
+                    ExcelFolderWatcher.this.converting.remove(workbook);
+                }
+            }
+        };
+    }
+
+    /**
+     * The size and last modified time of a workbook waiting to settle, and
+     * when they were last seen to change.
+     */
+    private static class Pending {
+        private long length;
+        private long modified;
+        private long since;
+
+        Pending(File file) {
+            this.length = file.length();
+            this.modified = file.lastModified();
+            this.since = System.nanoTime();
+        }
+
+        /**
+         * @return true, restarting the wait, if the workbook has changed
+         *         since it was last seen
+         */
+        boolean changed(File file, long now) {
+            long currentLength = file.length();
+            long currentModified = file.lastModified();
+            if (currentLength == this.length && currentModified == this.modified) {
+                return false;
+            }
+            this.length = currentLength;
+            this.modified = currentModified;
+            this.since = now;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.abhishek.simplicitas.util.excel.SheetDimensions;
+import org.abhishek.simplicitas.util.excel.StreamingWorkbookReader;
+
+/**
+ * Reports the sheets of an Excel workbook and the number of rows and columns
+ * each declares, without loading the workbook. Only the list of sheets - the
+ * workbook part of a SpreadsheetML package, or the BOUNDSHEET records of a
+ * binary workbook - and the dimensions recorded at the head of every sheet
+ * are read, so inspecting even a very large workbook takes no more than a
+ * few milliseconds.
+ * <p>
+ * The figures are those declared by the application that wrote the
+ * workbook; see {@link SheetDimensions}.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ExcelInspector extends ExceptionUtils {
+
+    /**
+     * Lists the sheets of a workbook along with their declared dimensions.
+     * <p>
+     * Handles {@link IOException} thrown if the workbook cannot be read or
+     * parsed.
+     *
+     * @param workbook
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @return the name and dimensions of each sheet, in workbook order
+     * @author abhishek
+     * @since 1.0
+     */
+    public static List<SheetDimensions> inspect(File workbook) {
+        if (!workbook.isFile()) {
+            throw new IllegalArgumentException("The Excel workbook [" + workbook.getPath() + "] cannot be found.");
+        }
+        StreamingWorkbookReader reader = null;
+        try {
+            reader = StreamingWorkbookReader.open(workbook);
+            return reader.declaredDimensions();
+        } catch (IOException ex) {
+            handleIOException(ex);
+            return null;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Lists the sheets of a workbook along with their declared dimensions.
+     *
+     * @param workbook
+     *            the path to either a binary (.xls) or a SpreadsheetML (.xlsx)
+     *            workbook
+     * @return the name and dimensions of each sheet, in workbook order
+     * @author abhishek
+     * @since 1.0
+     */
+    public static List<SheetDimensions> inspect(String workbook) {
+        return inspect(new File(workbook));
+    }
+}
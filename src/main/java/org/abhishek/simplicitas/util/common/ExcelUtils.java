@@ -119,15 +119,49 @@
 
 package org.abhishek.simplicitas.util.common;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
+import javax.management.JMException;
+
+import org.abhishek.simplicitas.util.excel.CachedResultEvaluator;
+import org.abhishek.simplicitas.util.excel.ChannelWriter;
+import org.abhishek.simplicitas.util.excel.ConversionMetrics;
+import org.abhishek.simplicitas.util.excel.CsvRowReader;
+import org.abhishek.simplicitas.util.excel.CsvRowWriter;
+import org.abhishek.simplicitas.util.excel.CsvWorkbookWriter;
+import org.abhishek.simplicitas.util.excel.ParallelGzipChannel;
+import org.abhishek.simplicitas.util.excel.PartitionedCsvWriter;
+import org.abhishek.simplicitas.util.excel.Projection;
+import org.abhishek.simplicitas.util.excel.Projection.SheetProjection;
+import org.abhishek.simplicitas.util.excel.RowHandler;
+import org.abhishek.simplicitas.util.excel.SharedStringsStore;
+import org.abhishek.simplicitas.util.excel.StreamingWorkbookReader;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.DataFormatter;
@@ -136,33 +170,597 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 public class ExcelUtils extends ExceptionUtils {
 
     private Workbook workbook = null;
-    private ArrayList<ArrayList<String>> csvData = null;
     private int maxRowWidth = 0;
+    private int fixedRowWidth = 0;
+    private boolean declaredRowWidth = false;
     private int formattingConvention = 0;
     private DataFormatter formatter = null;
     private FormulaEvaluator evaluator = null;
     private String separator = null;
+    private boolean streaming = false;
+    private int threads = 0;
+    private int sheetThreads = 0;
+    private boolean pipelined = false;
+    private boolean csvPerSheet = false;
+    private Charset charset = Charset.forName("UTF-8");
+    private int outputBufferSize = ExcelUtils.DEFAULT_OUTPUT_BUFFER_SIZE;
+    private boolean byteOrderMark = false;
+    private boolean gzip = false;
+    private int gzipThreads = Runtime.getRuntime().availableProcessors();
+    private boolean evaluateFormulas = false;
+    private boolean incremental = false;
+    private long sharedStringsThreshold = SharedStringsStore.DEFAULT_THRESHOLD;
+    private Projection projection = new Projection();
+    private long partRows = 0;
+    private long partBytes = 0;
+    private boolean partHeader = false;
+    private ThreadLocal<DataFormatter> sharedFormatters = null;
+    private ConversionMetrics metrics = null;
+    private File workbookFile = null;
+    private int rowWindow = ExcelUtils.DEFAULT_ROW_WINDOW;
+    private boolean inferCellTypes = true;
+    private boolean toExcel = false;
+    private boolean watch = false;
+    private long settleMillis = ExcelFolderWatcher.DEFAULT_SETTLE_MILLIS;
 
     private static final String CSV_FILE_EXTENSION = ".csv";
+    private static final String ILLEGAL_FILENAME_CHARACTERS = "/\\:*?\"<>|";
+    private static final String XLSX_FILE_EXTENSION = ".xlsx";
     private static final String DEFAULT_SEPARATOR = ",";
+    private static final String STREAMING_OPTION = "--streaming";
+    private static final String ROW_WIDTH_OPTION = "--row-width=";
+    private static final String DECLARED_ROW_WIDTH_OPTION = "--declared-row-width";
+    private static final String THREADS_OPTION = "--threads=";
+    private static final String SHEET_THREADS_OPTION = "--sheet-threads=";
+    private static final String PIPELINE_OPTION = "--pipeline";
+    private static final String CSV_PER_SHEET_OPTION = "--csv-per-sheet";
+    private static final String CHARSET_OPTION = "--charset=";
+    private static final String BUFFER_SIZE_OPTION = "--buffer-size=";
+    private static final String BYTE_ORDER_MARK_OPTION = "--bom";
+    private static final String GZIP_OPTION = "--gzip";
+    private static final String GZIP_THREADS_OPTION = "--gzip-threads=";
+    private static final String EVALUATE_FORMULAS_OPTION = "--evaluate-formulas";
+    private static final String INCREMENTAL_OPTION = "--incremental";
+    private static final String SHARED_STRINGS_THRESHOLD_OPTION = "--shared-strings-threshold=";
+    private static final String SHEETS_OPTION = "--sheets=";
+    private static final String COLUMNS_OPTION = "--columns=";
+    private static final String ROWS_OPTION = "--rows=";
+    private static final String PART_ROWS_OPTION = "--part-rows=";
+    private static final String PART_BYTES_OPTION = "--part-bytes=";
+    private static final String PART_HEADER_OPTION = "--part-header";
+    private static final String METRICS_OPTION = "--metrics";
+    private static final String TO_EXCEL_OPTION = "--to-excel";
+    private static final String ROW_WINDOW_OPTION = "--row-window=";
+    private static final String TEXT_CELLS_OPTION = "--text-cells";
+    private static final String WATCH_OPTION = "--watch";
+    private static final String SETTLE_MILLIS_OPTION = "--settle-millis=";
+    private static final String PARTS_MANIFEST_EXTENSION = ".parts";
+    private static final String GZIP_FILE_EXTENSION = ".gz";
+    private static final int DEFAULT_OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final int STREAMED_ROWS_AHEAD = 1024;
+    private static final int DEFAULT_INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_ROW_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     /**
      * Identifies that the CSV file should obey Excel's formatting conventions
      * with regard to escaping certain embedded characters - the field
      * separator, speech mark and end of line (EOL) character
      */
-    public static final int EXCEL_STYLE_ESCAPING = 0;
+    public static final int EXCEL_STYLE_ESCAPING = CsvRowWriter.EXCEL_STYLE_ESCAPING;
 
     /**
      * Identifies that the CSV file should obey UNIX formatting conventions with
      * regard to escaping certain embedded characters - the field separator and
      * end of line (EOL) character
      */
-    public static final int UNIX_STYLE_ESCAPING = 1;
+    public static final int UNIX_STYLE_ESCAPING = CsvRowWriter.UNIX_STYLE_ESCAPING;
+
+    /**
+     * Selects whether workbooks are converted by streaming them rather than by
+     * loading the whole workbook into memory. SpreadsheetML (.xlsx) workbooks
+     * have their sheet XML read by a SAX parser whilst binary (.xls) workbooks
+     * are read through the HSSF event model, record by record. In streaming
+     * mode the rows are written to the CSV file as they are parsed so that the
+     * heap required stays flat regardless of the size of the workbook; the
+     * resulting file is the same as the one produced by the default mode
+     * except that formulae are not re-evaluated, the results Excel cached when
+     * the workbook was last saved being used instead.
+     *
+     * @param streaming
+     *            true to stream workbooks, false to load them into memory
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @return true if workbooks are converted in streaming mode
+     */
+    public boolean isStreaming() {
+        return this.streaming;
+    }
+
+    /**
+     * Fixes the number of fields every line of the CSV file is padded to,
+     * rather than measuring the width of the widest row in the workbook. This
+     * allows a streaming conversion to be completed in a single pass over the
+     * workbook. Rows wider than the fixed width are not truncated; their lines
+     * simply hold more fields.
+     *
+     * @param fixedRowWidth
+     *            the number of fields per line, or zero to measure the width
+     *            of the widest row
+     */
+    public void setFixedRowWidth(int fixedRowWidth) {
+        if (fixedRowWidth < 0) {
+            throw new IllegalArgumentException("The row width cannot be negative.");
+        }
+        this.fixedRowWidth = fixedRowWidth;
+    }
+
+    /**
+     * @return the fixed number of fields per line, or zero if the width of the
+     *         widest row is measured
+     */
+    public int getFixedRowWidth() {
+        return this.fixedRowWidth;
+    }
+
+    /**
+     * Selects whether a streaming conversion pads the lines of the CSV file to
+     * the dimensions the sheets of the workbook declare, so that it can be
+     * completed in a single pass. Should any sheet not declare its dimensions
+     * then the workbook is read twice, as it is by default, the first pass
+     * measuring the widest row. Ignored if a fixed row width has been set and
+     * when the workbook is not streamed, as the rows of a workbook held in
+     * memory can be measured cheaply.
+     *
+     * @param declaredRowWidth
+     *            true to rely upon the declared dimensions of the sheets
+     */
+    public void setDeclaredRowWidth(boolean declaredRowWidth) {
+        this.declaredRowWidth = declaredRowWidth;
+    }
+
+    /**
+     * @return true if a streaming conversion relies upon the declared
+     *         dimensions of the sheets
+     */
+    public boolean isDeclaredRowWidth() {
+        return this.declaredRowWidth;
+    }
+
+    /**
+     * Sets the number of workbooks converted at the same time when the source
+     * is a folder. Any value greater than zero hands the folder over to an
+     * {@link ExcelBatchConverter}, which also descends into sub folders and
+     * mirrors them beneath the destination folder. Zero, the default, converts
+     * the workbooks at the top level of the folder one after the other on the
+     * calling thread.
+     *
+     * @param threads
+     *            the number of worker threads, or zero
+     */
+    public void setThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("The number of threads cannot be negative.");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @return the number of workbooks converted at the same time, or zero if
+     *         they are converted one after the other on the calling thread
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Sets the number of sheets of a workbook converted at the same time. Any
+     * value greater than zero has each sheet formatted by a task of its own
+     * on a pool of that many threads; the lines are still written to the CSV
+     * file in sheet order. Zero, the default, converts the sheets one after
+     * the other. Applies only when workbooks are loaded into memory rather
+     * than streamed.
+     *
+     * @param sheetThreads
+     *            the number of worker threads, or zero
+     */
+    public void setSheetThreads(int sheetThreads) {
+        if (sheetThreads < 0) {
+            throw new IllegalArgumentException("The number of threads cannot be negative.");
+        }
+        this.sheetThreads = sheetThreads;
+    }
+
+    /**
+     * @return the number of sheets converted at the same time, or zero if
+     *         they are converted one after the other
+     */
+    public int getSheetThreads() {
+        return this.sheetThreads;
+    }
+
+    /**
+     * Selects whether a streamed workbook is parsed, and its cells formatted,
+     * on a thread of its own whilst the calling thread escapes the fields and
+     * writes the lines away, rather than the one waiting on the other; see
+     * {@link RowPipeline}. Off by default. Ignored unless workbooks are
+     * streamed, as a loaded workbook has already been parsed by the time its
+     * rows are written.
+     *
+     * @param pipelined
+     *            true to parse and write on threads of their own
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * @return true if streamed workbooks are parsed and written on threads of
+     *         their own
+     */
+    public boolean isPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * Selects whether each sheet of a workbook is written to a CSV file of its
+     * own, named after both the workbook and the sheet, rather than all of
+     * them to a single CSV file. Sheets that contain no rows produce no file.
+     * Applies only when workbooks are loaded into memory rather than streamed.
+     *
+     * @param csvPerSheet
+     *            true to write a CSV file per sheet
+     */
+    public void setCsvPerSheet(boolean csvPerSheet) {
+        this.csvPerSheet = csvPerSheet;
+    }
+
+    /**
+     * @return true if each sheet is written to a CSV file of its own
+     */
+    public boolean isCsvPerSheet() {
+        return this.csvPerSheet;
+    }
+
+    /**
+     * Sets the charset the CSV files are encoded in; UTF-8 by default,
+     * whatever the default charset of the JVM may be. Characters the charset
+     * cannot represent are replaced.
+     *
+     * @param charset
+     *            the charset
+     */
+    public void setCharset(Charset charset) {
+        if (charset == null) {
+            throw new IllegalArgumentException("The charset cannot be null.");
+        }
+        this.charset = charset;
+    }
+
+    /**
+     * @return the charset the CSV files are encoded in
+     */
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+    /**
+     * Sets the size, in bytes, of the buffer the encoded contents of a CSV
+     * file are gathered in before being written to the file system; one
+     * megabyte by default. Larger buffers mean fewer, larger, writes.
+     *
+     * @param outputBufferSize
+     *            the size of the buffer in bytes
+     */
+    public void setOutputBufferSize(int outputBufferSize) {
+        if (outputBufferSize < 16) {
+            throw new IllegalArgumentException("The buffer must hold at least 16 bytes.");
+        }
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * @return the size, in bytes, of the output buffer
+     */
+    public int getOutputBufferSize() {
+        return this.outputBufferSize;
+    }
+
+    /**
+     * Selects whether every CSV file starts with a byte order mark. Some
+     * applications, Excel amongst them, rely upon it to recognise a UTF-8
+     * encoded file. Only Unicode charsets can encode the mark.
+     *
+     * @param byteOrderMark
+     *            true to write a byte order mark
+     */
+    public void setByteOrderMark(boolean byteOrderMark) {
+        this.byteOrderMark = byteOrderMark;
+    }
+
+    /**
+     * @return true if every CSV file starts with a byte order mark
+     */
+    public boolean isByteOrderMark() {
+        return this.byteOrderMark;
+    }
+
+    /**
+     * Selects whether the CSV files are compressed as they are written. Each
+     * is written as a multi-member gzip file, name.csv.gz, whose blocks are
+     * deflated on a pool of threads so that compression adds no serial pass
+     * over the data.
+     *
+     * @param gzip
+     *            true to compress the CSV files
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return true if the CSV files are compressed as they are written
+     */
+    public boolean isGzip() {
+        return this.gzip;
+    }
+
+    /**
+     * Sets the number of blocks of a CSV file compressed at the same time;
+     * the number of available processors by default. The blocks of every CSV
+     * file are compressed on a single pool of one thread per processor, so
+     * converting several workbooks or sheets at once does not multiply the
+     * compression threads.
+     *
+     * @param gzipThreads
+     *            the number of compression threads per CSV file
+     */
+    public void setGzipThreads(int gzipThreads) {
+        if (gzipThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        this.gzipThreads = gzipThreads;
+    }
+
+    /**
+     * @return the number of blocks of a CSV file compressed at the same time
+     */
+    public int getGzipThreads() {
+        return this.gzipThreads;
+    }
+
+    /**
+     * Selects whether formulae are evaluated afresh during the conversion. By
+     * default the result Excel cached with each formula when the workbook was
+     * last saved is written to the CSV file, which is much faster and is what
+     * Excel itself displays. Live evaluation is worth its cost only for
+     * workbooks written by applications that do not cache results. Streamed
+     * workbooks always yield the cached results.
+     *
+     * @param evaluateFormulas
+     *            true to evaluate every formula
+     */
+    public void setEvaluateFormulas(boolean evaluateFormulas) {
+        this.evaluateFormulas = evaluateFormulas;
+    }
+
+    /**
+     * @return true if formulae are evaluated afresh during the conversion
+     */
+    public boolean isEvaluateFormulas() {
+        return this.evaluateFormulas;
+    }
+
+    /**
+     * Selects incremental conversion. A manifest kept in the destination
+     * folder records the size, modification time and digest of every workbook
+     * converted, along with the settings used; workbooks whose CSV files are
+     * still current are skipped and workbooks identical to another, under
+     * whatever name, are converted only once. See {@link ConversionManifest}.
+     *
+     * @param incremental
+     *            true to convert only those workbooks that have changed
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return true if only those workbooks that have changed are converted
+     */
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+
+    /**
+     * Sets the number of characters of shared strings a streamed
+     * SpreadsheetML workbook may hold on the heap. A larger table is moved
+     * into a memory mapped temporary file and each entry decoded when it is
+     * looked up; see {@link SharedStringsStore}. Only streamed .xlsx
+     * workbooks are affected.
+     *
+     * @param sharedStringsThreshold
+     *            the number of characters at which the shared strings are
+     *            mapped; zero to always map them
+     */
+    public void setSharedStringsThreshold(long sharedStringsThreshold) {
+        if (sharedStringsThreshold < 0) {
+            throw new IllegalArgumentException("The shared strings threshold cannot be negative.");
+        }
+        this.sharedStringsThreshold = sharedStringsThreshold;
+    }
+
+    /**
+     * @return the number of characters at which the shared strings of a
+     *         streamed workbook are mapped
+     */
+    public long getSharedStringsThreshold() {
+        return this.sharedStringsThreshold;
+    }
+
+    /**
+     * Narrows the conversion down to some of the sheets, rows and columns of
+     * every workbook. The projection is applied as the workbook is read, so
+     * cells outside it are never formatted nor, if formulae are evaluated,
+     * evaluated. Unless a fixed row width has been set, the lines of the CSV
+     * file are padded to the number of columns selected or, if every column
+     * is, to the widest of the selected rows. Sheets that are not selected
+     * contribute no lines, nor files of their own.
+     *
+     * @param projection
+     *            the sheets, rows and columns to convert; see
+     *            {@link Projection}
+     */
+    public void setProjection(Projection projection) {
+        if (projection == null) {
+            throw new IllegalArgumentException("A projection is required.");
+        }
+        this.projection = projection;
+    }
+
+    /**
+     * @return the sheets, rows and columns converted
+     */
+    public Projection getProjection() {
+        return this.projection;
+    }
+
+    /**
+     * Splits every CSV file into parts of at most the given number of rows,
+     * so that it can be loaded by several threads at once. The parts of
+     * Book.csv are named Book_part00001.csv, Book_part00002.csv and so on,
+     * and listed, as each is closed, in the manifest Book.parts; see
+     * {@link PartitionedCsvWriter}. Sheets are then converted one after the
+     * other unless each is written to CSV files of its own.
+     *
+     * @param partRows
+     *            the number of rows per part, or zero for no limit
+     */
+    public void setPartRows(long partRows) {
+        if (partRows < 0) {
+            throw new IllegalArgumentException("The number of rows per part cannot be negative.");
+        }
+        this.partRows = partRows;
+    }
+
+    /**
+     * @return the number of rows per part, or zero for no limit
+     */
+    public long getPartRows() {
+        return this.partRows;
+    }
+
+    /**
+     * Splits every CSV file into parts once they reach the given number of
+     * bytes, before any compression; a part is closed after the row that
+     * takes it to the limit. See {@link #setPartRows(long)}.
+     *
+     * @param partBytes
+     *            the number of bytes per part, or zero for no limit
+     */
+    public void setPartBytes(long partBytes) {
+        if (partBytes < 0) {
+            throw new IllegalArgumentException("The number of bytes per part cannot be negative.");
+        }
+        this.partBytes = partBytes;
+    }
+
+    /**
+     * @return the number of bytes per part, or zero for no limit
+     */
+    public long getPartBytes() {
+        return this.partBytes;
+    }
+
+    /**
+     * Selects whether every part of a split CSV file after the first starts
+     * with a copy of the first row of the file, its header.
+     *
+     * @param partHeader
+     *            true to repeat the header in every part
+     */
+    public void setPartHeader(boolean partHeader) {
+        this.partHeader = partHeader;
+    }
+
+    /**
+     * @return true if the header is repeated in every part
+     */
+    public boolean isPartHeader() {
+        return this.partHeader;
+    }
+
+    /**
+     * Has the workbooks, sheets, rows, cells and bytes converted counted, and
+     * the time spent in each phase of the conversion measured, by the metrics
+     * given. The same metrics may be shared by several converters.
+     *
+     * @param metrics
+     *            the metrics, or null to measure nothing
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics the conversions are recorded by, or null
+     */
+    public ConversionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the number of rows held in memory whilst CSV files are converted
+     * into workbooks; the rest are spooled, compressed, to temporary files.
+     * The heap needed follows the window rather than the size of the file.
+     *
+     * @param rowWindow
+     *            the number of rows, at least one
+     */
+    public void setRowWindow(int rowWindow) {
+        if (rowWindow < 1) {
+            throw new IllegalArgumentException("The row window must hold at least one row.");
+        }
+        this.rowWindow = rowWindow;
+    }
+
+    /**
+     * @return the number of rows held in memory whilst CSV files are
+     *         converted into workbooks
+     */
+    public int getRowWindow() {
+        return this.rowWindow;
+    }
+
+    /**
+     * Selects whether the fields of CSV files converted into workbooks that
+     * read as numbers or booleans are written as numeric or boolean cells,
+     * formatted as the text was, rather than as strings. They are by
+     * default.
+     *
+     * @param inferCellTypes
+     *            false to write every field as a string
+     */
+    public void setInferCellTypes(boolean inferCellTypes) {
+        this.inferCellTypes = inferCellTypes;
+    }
+
+    /**
+     * @return true if numbers and booleans are written as such when CSV
+     *         files are converted into workbooks
+     */
+    public boolean isInferCellTypes() {
+        return this.inferCellTypes;
+    }
 
     /**
      * Process the contents of a folder, convert the contents of each Excel
@@ -289,6 +887,13 @@ public class ExcelUtils extends ExceptionUtils {
         this.separator = separator;
         this.formattingConvention = formattingConvention;
 
+        // Folders may be handed over to a pool of worker threads, each of
+        // which converts one workbook at a time with a converter of its own.
+        if (source.isDirectory() && this.threads > 0) {
+            new ExcelBatchConverter(this, this.threads).convert(source, destination);
+            return;
+        }
+
         // Check to see if the sourceFolder variable holds a reference to
         // a file or a folder full of files.
         if (source.isDirectory()) {
@@ -315,22 +920,490 @@ public class ExcelUtils extends ExceptionUtils {
         // (.xls) and the other a SpreadsheetML file (.xlsx), then the names
         // for both CSV files will be identical and one CSV file will,
         // therefore, over-write the other.
+        List<File> workbooks = new ArrayList<File>(filesList.length);
+        List<File> csvFiles = new ArrayList<File>(filesList.length);
         for (File excelFile : filesList) {
-            // Open the workbook
-            this.openWorkbook(excelFile);
+            // Build the name of the csv folder from that of the Excel workbook.
+            // Simply replace the .xls or .xlsx file extension with .csv
+            destinationFilename = ExcelUtils.csvFilename(excelFile.getName());
+            workbooks.add(excelFile);
+            csvFiles.add(new File(destination, destinationFilename));
+        }
+
+        // In incremental mode only the workbooks that have changed are
+        // converted. As when converting on several threads, a workbook that
+        // fails does not stop the others, nor the copying of duplicates, and
+        // the manifest is saved regardless, so that those already converted
+        // are not converted again.
+        if (this.incremental) {
+            ConversionManifest manifest = ConversionManifest.load(destination);
+            ConversionManifest.Plan plan = manifest.plan(workbooks, csvFiles, this.settingsFingerprint());
+            System.out.println(plan.getSkippedCount() + " workbooks are current, " + plan.getCopyCount()
+                + " duplicate others");
+            int failures = 0;
+            RuntimeException firstFailure = null;
+            try {
+                for (Integer i : plan.getConversions()) {
+                    try {
+                        plan.converted(i, this.convertFile(workbooks.get(i), csvFiles.get(i)));
+                    } catch (RuntimeException ex) {
+                        System.out.println("Failed to convert [" + workbooks.get(i).getPath() + "]: "
+                            + ex.getMessage());
+                        if (firstFailure == null) {
+                            firstFailure = ex;
+                        }
+                        failures++;
+                    }
+                }
+                plan.complete();
+            } finally {
+                manifest.save();
+            }
+            if (failures > 0) {
+                throw new IllegalStateException(failures + " of " + workbooks.size()
+                    + " workbooks could not be converted.", firstFailure);
+            }
+            return;
+        }
+
+        for (int i = 0; i < workbooks.size(); i++) {
+            this.convertFile(workbooks.get(i), csvFiles.get(i));
+        }
+    }
+
+    /**
+     * Process the contents of a folder, convert each CSV file - whose fields
+     * are separated by commas and escaped in accordance with Excel's
+     * convention - into a SpreadsheetML workbook and save it to the specified
+     * folder using the same name as the CSV file with the .csv or .csv.gz
+     * extension replaced by .xlsx
+     *
+     * @param strSource
+     *            the name of and path to either a folder containing the CSV
+     *            files or an individual CSV file
+     * @param strDestination
+     *            the name of and path to the folder the workbooks are saved
+     *            to
+     */
+    public void convertCSVToExcel(String strSource, String strDestination) {
+        this.convertCSVToExcel(strSource, strDestination, ExcelUtils.DEFAULT_SEPARATOR, ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    /**
+     * Converts CSV files, whose fields are escaped in accordance with Excel's
+     * convention, into workbooks; see
+     * {@link #convertCSVToExcel(String, String, String, int)}.
+     *
+     * @param strSource
+     *            the name of and path to either a folder containing the CSV
+     *            files or an individual CSV file
+     * @param strDestination
+     *            the name of and path to the folder the workbooks are saved
+     *            to
+     * @param separator
+     *            the character or characters that separate the fields
+     */
+    public void convertCSVToExcel(String strSource, String strDestination, String separator) {
+        this.convertCSVToExcel(strSource, strDestination, separator, ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    /**
+     * Process the contents of a folder, convert each CSV file into a
+     * SpreadsheetML workbook of a single sheet named after the file and save
+     * it to the specified folder using the same name as the CSV file with
+     * the .csv or .csv.gz extension replaced by .xlsx; compressed CSV files
+     * are read as they are decompressed. This undoes the conversion made by
+     * convertExcelToCSV() given the same separator, formatting convention and
+     * charset.
+     * <p>
+     * The CSV files are read a line at a time and the workbooks written
+     * through SXSSF, which holds only a window of rows - see
+     * {@link #setRowWindow(int)} - in memory, so files of millions of rows
+     * need no more than a few megabytes of heap. Sheets longer than Excel
+     * allows continue on further sheets.
+     * <p>
+     * Handles {@link IOException} thrown if a CSV file cannot be read or a
+     * workbook cannot be written.
+     *
+     * @param strSource
+     *            the name of and path to either a folder containing the CSV
+     *            files or an individual CSV file
+     * @param strDestination
+     *            the name of and path to the folder the workbooks are saved
+     *            to
+     * @param separator
+     *            the character or characters that separate the fields
+     * @param formattingConvention
+     *            either ExcelUtils.EXCEL_STYLE_ESCAPING or
+     *            ExcelUtils.UNIX_STYLE_ESCAPING
+     */
+    public void convertCSVToExcel(String strSource, String strDestination, String separator, int formattingConvention) {
+        File source = new File(strSource);
+        File destination = new File(strDestination);
+
+        if (!source.exists()) {
+            throw new IllegalArgumentException("The source for the CSV file(s) cannot be found.");
+        }
+        if (!destination.isDirectory()) {
+            throw new IllegalArgumentException("The destination for the Excel workbook(s) is not an existing "
+                + "directory/folder.");
+        }
+        if (separator == null || separator.length() == 0) {
+            throw new IllegalArgumentException("A separator is required to read CSV files.");
+        }
+        if (formattingConvention != ExcelUtils.EXCEL_STYLE_ESCAPING && formattingConvention != ExcelUtils.UNIX_STYLE_ESCAPING) {
+            throw new IllegalArgumentException("The value passed to the " + "formattingConvention parameter is out of range.");
+        }
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+
+        File[] filesList = source.isDirectory() ? source.listFiles(new CsvFilenameFilter()) : new File[] {
+            source
+        };
+        for (File csvFile : filesList) {
+            this.convertCsvFile(csvFile, new File(destination, ExcelUtils.excelFilename(csvFile.getName())));
+        }
+    }
+
+    /**
+     * Convert a single CSV file into a workbook using the separator and
+     * formatting convention already established by a call to one of the
+     * convertCSVToExcel() methods.
+     *
+     * @param csvFile
+     *            the CSV file, compressed if its name ends with .gz
+     * @param excelFile
+     *            the workbook
+     * @return the number of rows written to the workbook
+     */
+    long convertCsvFile(File csvFile, File excelFile) {
+        System.out.println("Converting CSV file [" + csvFile.getName() + "] to [" + excelFile.getName() + "]");
+        CsvRowReader reader = null;
+        CsvWorkbookWriter writer = new CsvWorkbookWriter(excelFile, this.rowWindow, this.inferCellTypes);
+        try {
+            InputStream in = new FileInputStream(csvFile);
+            if (csvFile.getName().endsWith(ExcelUtils.GZIP_FILE_EXTENSION)) {
+                try {
+                    in = new GZIPInputStream(in, ExcelUtils.DEFAULT_INPUT_BUFFER_SIZE);
+                } catch (IOException ex) {
+                    in.close();
+                    throw ex;
+                }
+            }
+            reader = new CsvRowReader(new InputStreamReader(in, this.charset), this.separator,
+                this.formattingConvention);
+
+            writer.startSheet(0, ExcelUtils.baseFilename(csvFile.getName()));
+            List<String> row = null;
+            while ((row = reader.readRow()) != null) {
+                writer.writeRow(row);
+            }
+            writer.endSheet(0);
+
+            System.out.println("Saving the workbook [" + excelFile.getName() + "]");
+            writer.save();
+            return writer.getRowCount();
+        } catch (IOException ex) {
+            handleIOException(ex);
+            return 0;
+        } finally {
+            writer.close();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    handleIOException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert a single Excel workbook into a CSV file using the separator and
+     * formatting convention already established by a call to one of the
+     * convertExcelToCSV() methods.
+     *
+     * @param excelFile
+     *            An instance of the File class that encapsulates a handle to a
+     *            valid Excel workbook.
+     * @param csvFile
+     *            An instance of the File class that encapsulates a handle
+     *            referring to the CSV file.
+     * @return the files actually written; the CSV file, a compressed CSV file
+     *         or a CSV file for each sheet
+     */
+    List<File> convertFile(File excelFile, File csvFile) {
+        if (this.metrics == null) {
+            return this.convertWorkbook(excelFile, csvFile);
+        }
+        long start = System.nanoTime();
+        List<File> csvFiles = null;
+        this.metrics.fileStarted(excelFile);
+        try {
+            csvFiles = this.convertWorkbook(excelFile, csvFile);
+        } catch (RuntimeException ex) {
+            this.metrics.fileFailed(excelFile, ex);
+            throw ex;
+        }
+        this.metrics.fileConverted(excelFile, csvFiles, System.nanoTime() - start);
+        return csvFiles;
+    }
+
+    private List<File> convertWorkbook(File excelFile, File csvFile) {
+        // Workbooks can be streamed straight through to the CSV file
+        // without ever holding the workbook in memory.
+        if (this.streaming) {
+            return this.streamToCSV(excelFile, csvFile);
+        }
+
+        // Open the workbook
+        this.openWorkbook(excelFile);
+        try {
+            // Convert it's contents into a CSV file
+            this.convertToCSV();
+
+            // Save the CSV file away using the newly constricted file name
+            // and to the specified directory.
+            return this.saveCSVFile(csvFile);
+        } finally {
+            this.closeWorkbook();
+        }
+    }
+
+    /**
+     * Opens a sheet of a workbook so that its rows can be consumed one at a
+     * time, in process, rather than through a CSV file. The cells are
+     * formatted exactly as they would be for the CSV file and, should this
+     * converter stream workbooks, the workbook is never loaded into memory.
+     * The iterator must be closed once done with.
+     *
+     * @param workbook
+     *            the path to either a binary (.xls) or a SpreadsheetML (.xlsx)
+     *            workbook
+     * @param sheetIndex
+     *            the zero based index of the sheet
+     * @return the rows of the sheet
+     */
+    public SheetRowIterator iterateSheet(String workbook, int sheetIndex) {
+        if (sheetIndex < 0) {
+            throw new IllegalArgumentException("The sheet index cannot be negative.");
+        }
+        return this.iterateSheet(new File(workbook), sheetIndex, null);
+    }
+
+    /**
+     * Opens a sheet of a workbook so that its rows can be consumed one at a
+     * time; see {@link #iterateSheet(String, int)}.
+     *
+     * @param workbook
+     *            the path to either a binary (.xls) or a SpreadsheetML (.xlsx)
+     *            workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @return the rows of the sheet
+     */
+    public SheetRowIterator iterateSheet(String workbook, String sheetName) {
+        if (sheetName == null) {
+            throw new IllegalArgumentException("A sheet name is required.");
+        }
+        return this.iterateSheet(new File(workbook), -1, sheetName);
+    }
+
+    private SheetRowIterator iterateSheet(File file, int sheetIndex, String sheetName) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("The Excel workbook [" + file.getPath() + "] cannot be found.");
+        }
+        if (!this.streaming) {
+            return SheetRowIterator.loaded(this.copy(), file, sheetIndex, sheetName);
+        }
+        try {
+            return SheetRowIterator.streamed(StreamingWorkbookReader.open(file, this.sharedStringsThreshold),
+                sheetIndex, sheetName, ExcelUtils.STREAMED_ROWS_AHEAD);
+        } catch (IOException ex) {
+            handleIOException(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Establishes the separator and formatting convention without converting
+     * anything, as a call to one of the convertExcelToCSV() methods would.
+     *
+     * @param separator
+     *            the character or characters used to separate fields
+     * @param formattingConvention
+     *            either {@link #EXCEL_STYLE_ESCAPING} or
+     *            {@link #UNIX_STYLE_ESCAPING}
+     */
+    void setCsvFormat(String separator, int formattingConvention) {
+        if (separator == null || separator.length() == 0) {
+            throw new IllegalArgumentException("A separator is required.");
+        }
+        if (formattingConvention != ExcelUtils.EXCEL_STYLE_ESCAPING && formattingConvention != ExcelUtils.UNIX_STYLE_ESCAPING) {
+            throw new IllegalArgumentException("The value passed to the " + "formattingConvention parameter is out of range.");
+        }
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+    }
+
+    /**
+     * Has every workbook opened by this converter formatted with the
+     * DataFormatter of the calling thread, rather than with a new one, so
+     * that the formats parsed for one workbook are reused by the next.
+     *
+     * @param sharedFormatters
+     *            the formatters, one for each thread
+     */
+    void setSharedFormatters(ThreadLocal<DataFormatter> sharedFormatters) {
+        this.sharedFormatters = sharedFormatters;
+    }
+
+    /**
+     * Creates a new converter carrying the same settings as this one, but none
+     * of its per workbook state, so that it can convert workbooks on another
+     * thread. The projection is copied too, so that changes made to this
+     * converter's afterwards do not reach the copy.
+     *
+     * @return the new converter
+     */
+    ExcelUtils copy() {
+        ExcelUtils copy = new ExcelUtils();
+        copy.separator = this.separator;
+        copy.formattingConvention = this.formattingConvention;
+        copy.streaming = this.streaming;
+        copy.fixedRowWidth = this.fixedRowWidth;
+        copy.declaredRowWidth = this.declaredRowWidth;
+        copy.sheetThreads = this.sheetThreads;
+        copy.pipelined = this.pipelined;
+        copy.csvPerSheet = this.csvPerSheet;
+        copy.charset = this.charset;
+        copy.outputBufferSize = this.outputBufferSize;
+        copy.byteOrderMark = this.byteOrderMark;
+        copy.gzip = this.gzip;
+        copy.gzipThreads = this.gzipThreads;
+        copy.evaluateFormulas = this.evaluateFormulas;
+        copy.incremental = this.incremental;
+        copy.sharedStringsThreshold = this.sharedStringsThreshold;
+        copy.projection = this.projection.copy();
+        copy.partRows = this.partRows;
+        copy.partBytes = this.partBytes;
+        copy.partHeader = this.partHeader;
+        copy.sharedFormatters = this.sharedFormatters;
+        copy.metrics = this.metrics;
+        copy.rowWindow = this.rowWindow;
+        copy.inferCellTypes = this.inferCellTypes;
+        return copy;
+    }
+
+    /**
+     * Describes every setting that shapes the contents of the CSV files, so
+     * that files written with different settings are never mistaken for
+     * current ones. Settings that only affect the speed of the conversion are
+     * left out.
+     *
+     * @return the description
+     */
+    String settingsFingerprint() {
+        return "separator=" + this.separator + ";convention=" + this.formattingConvention + ";streaming="
+            + this.streaming + ";rowWidth=" + this.fixedRowWidth + ";declaredRowWidth=" + this.declaredRowWidth
+            + ";csvPerSheet=" + this.csvPerSheet + ";charset=" + this.charset.name() + ";bom="
+            + this.byteOrderMark + ";gzip=" + this.gzip + ";evaluateFormulas=" + this.evaluateFormulas
+            + ";lineSeparator=" + ExcelUtils.LINE_SEPARATOR
+            + (this.projection.isEverything() ? "" : ";projection=" + this.projection)
+            + (this.isPartitioned() ? ";partRows=" + this.partRows + ";partBytes=" + this.partBytes
+                + ";partHeader=" + this.partHeader : "");
+    }
+
+    /**
+     * Derives the name of the CSV file a single sheet is written to from that
+     * of the CSV file for the whole workbook; Book.csv becomes
+     * Book_Sheet1.csv, for example. Any character of the sheet name that
+     * cannot appear in a file name - a separator, wildcard, quote, pipe or
+     * control character - is replaced by an underscore.
+     *
+     * @param csvFile
+     *            the CSV file for the whole workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @return the CSV file for the sheet
+     */
+    static File sheetCsvFile(File csvFile, String sheetName) {
+        String name = csvFile.getName();
+        StringBuilder sheetFileName = new StringBuilder(sheetName.length());
+        for (int i = 0; i < sheetName.length(); i++) {
+            char c = sheetName.charAt(i);
+            boolean illegal = Character.isISOControl(c) || ExcelUtils.ILLEGAL_FILENAME_CHARACTERS.indexOf(c) >= 0;
+            sheetFileName.append(illegal ? '_' : c);
+        }
+        return new File(csvFile.getParentFile(), name.substring(0, name.lastIndexOf(".")) + "_" + sheetFileName
+            + ExcelUtils.CSV_FILE_EXTENSION);
+    }
+
+    /**
+     * Derives the name of a part of a split CSV file from that of the CSV
+     * file; Book.csv becomes Book_part00001.csv, for example.
+     *
+     * @param csvFile
+     *            the CSV file
+     * @param partNumber
+     *            the number of the part, starting from one
+     * @return the part file
+     */
+    static File partCsvFile(File csvFile, int partNumber) {
+        String name = csvFile.getName();
+        return new File(csvFile.getParentFile(), name.substring(0, name.lastIndexOf(".")) + "_part"
+            + String.format("%05d", partNumber) + ExcelUtils.CSV_FILE_EXTENSION);
+    }
 
-            // Convert it's contents into a CSV file
-            this.convertToCSV();
+    /**
+     * Derives the name of the manifest listing the parts of a split CSV file
+     * from that of the CSV file; Book.csv becomes Book.parts.
+     *
+     * @param csvFile
+     *            the CSV file
+     * @return the manifest
+     */
+    static File partsManifestFile(File csvFile) {
+        String name = csvFile.getName();
+        return new File(csvFile.getParentFile(), name.substring(0, name.lastIndexOf("."))
+            + ExcelUtils.PARTS_MANIFEST_EXTENSION);
+    }
 
-            // Build the name of the csv folder from that of the Excel workbook.
-            // Simply replace the .xls or .xlsx file extension with .csv
-            destinationFilename = excelFile.getName();
-            destinationFilename = destinationFilename.substring(0, destinationFilename.lastIndexOf(".")) + ExcelUtils.CSV_FILE_EXTENSION;
+    /**
+     * Derives the name of a CSV file from that of an Excel workbook by
+     * replacing the .xls or .xlsx extension with .csv
+     *
+     * @param excelFilename
+     *            the name of the Excel workbook
+     * @return the name of the CSV file
+     */
+    static String csvFilename(String excelFilename) {
+        return excelFilename.substring(0, excelFilename.lastIndexOf(".")) + ExcelUtils.CSV_FILE_EXTENSION;
+    }
 
-            // Save the CSV file away using the newly constricted file name
-            // and to the specified directory.
-            this.saveCSVFile(new File(destination, destinationFilename));
+    /**
+     * Derives the name of a workbook from that of a CSV file by replacing the
+     * .csv or .csv.gz extension with .xlsx
+     *
+     * @param csvFilename
+     *            the name of the CSV file
+     * @return the name of the workbook
+     */
+    static String excelFilename(String csvFilename) {
+        return ExcelUtils.baseFilename(csvFilename) + ExcelUtils.XLSX_FILE_EXTENSION;
+    }
+
+    /**
+     * @return the name of a file without its extension, nor that of the file
+     *         it was compressed from
+     */
+    private static String baseFilename(String filename) {
+        String name = filename;
+        if (name.endsWith(ExcelUtils.GZIP_FILE_EXTENSION)) {
+            name = name.substring(0, name.length() - ExcelUtils.GZIP_FILE_EXTENSION.length());
         }
+        int extension = name.lastIndexOf(".");
+        return (extension > 0) ? name.substring(0, extension) : name;
     }
 
     /**
@@ -339,8 +1412,11 @@ public class ExcelUtils extends ExceptionUtils {
      * Converts all exceptions to Runtime alternatives thereby removing the need
      * for explicit checks.
      * <p>
-     * Handles {@link FileNotFoundException} thrown if the file cannot be
-     * located.
+     * The workbook is opened, read only, from the file itself rather than
+     * from a stream, so that POI reads the parts of the package, or the
+     * blocks of the OLE2 file system, on demand instead of first copying the
+     * whole file into memory. The file stays open until
+     * {@link #closeWorkbook()} is called.
      * <p>
      * Handles {@link IOException} thrown if a problem occurs in the file
      * system.
@@ -353,68 +1429,219 @@ public class ExcelUtils extends ExceptionUtils {
      *            valid Excel workbook. Note that the workbook can be in either
      *            binary (.xls) or SpreadsheetML (.xlsx) format.
      */
-    private void openWorkbook(File file) {
-        FileInputStream fis = null;
+    void openWorkbook(File file) {
         try {
             System.out.println("Opening workbook [" + file.getName() + "]");
-
-            fis = new FileInputStream(file);
+            long start = System.nanoTime();
 
             // Open the workbook and then create the FormulaEvaluator and
             // DataFormatter instances that will be needed to, respectively,
-            // force evaluation of forumlae found in cells and create a
+            // recover the results of forumlae found in cells and create a
             // formatted String encapsulating the cells contents.
-            this.workbook = WorkbookFactory.create(fis);
-            this.evaluator = this.workbook.getCreationHelper().createFormulaEvaluator();
-            this.formatter = new DataFormatter(true);
+            this.workbook = WorkbookFactory.create(file, null, true);
+            this.evaluator = this.newEvaluator();
+            this.formatter = (this.sharedFormatters != null) ? this.sharedFormatters.get() : new DataFormatter(true);
+            this.workbookFile = file;
+            if (this.metrics != null) {
+                this.metrics.addOpenNanos(System.nanoTime() - start);
+            }
         } catch (InvalidFormatException ex) {
             handleCheckedException(ex);
         } catch (IOException ex) {
             handleIOException(ex);
+        }
+    }
+
+    /**
+     * Releases the file underlying the currently opened workbook, without
+     * saving anything to it.
+     * <p>
+     * Handles {@link IOException} thrown if the file cannot be closed.
+     */
+    void closeWorkbook() {
+        if (this.workbook == null) {
+            return;
+        }
+        try {
+            this.workbook.close();
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } finally {
+            this.workbook = null;
+            this.workbookFile = null;
+            this.evaluator = null;
+        }
+    }
+
+    /**
+     * @return the currently opened workbook
+     */
+    Workbook getWorkbook() {
+        return this.workbook;
+    }
+
+    /**
+     * Creates the FormulaEvaluator used to recover the values of formula
+     * cells of the currently opened workbook. Unless live evaluation has been
+     * asked for, this simply reports the results cached in the workbook.
+     *
+     * @return the evaluator
+     */
+    FormulaEvaluator newEvaluator() {
+        if (this.evaluateFormulas) {
+            return this.workbook.getCreationHelper().createFormulaEvaluator();
+        }
+        return CachedResultEvaluator.INSTANCE;
+    }
+
+    /**
+     * Convert a workbook into a CSV file without loading it into memory. The
+     * cells are formatted and each row is written away to the CSV file as
+     * soon as it has been parsed. Unless the width of the lines is fixed, or
+     * taken from the dimensions the sheets declare, the workbook is first read
+     * once more to discover the width of the widest row.
+     * <p>
+     * Handles {@link IOException} thrown if a problem occurs in the file
+     * system or the workbook cannot be parsed.
+     *
+     * @param excelFile
+     *            An instance of the File class that encapsulates a handle to a
+     *            valid Excel workbook. Note that the workbook can be in either
+     *            binary (.xls) or SpreadsheetML (.xlsx) format.
+     * @param csvFile
+     *            An instance of the File class that encapsulates a handle
+     *            referring to the CSV file.
+     * @return the file written
+     */
+    private List<File> streamToCSV(File excelFile, File csvFile) {
+        StreamingWorkbookReader reader = null;
+        CsvRowWriter writer = null;
+        try {
+            System.out.println("Streaming workbook [" + excelFile.getName() + "] to [" + csvFile.getName() + "]");
+
+            long start = System.nanoTime();
+            reader = StreamingWorkbookReader.open(excelFile, this.sharedStringsThreshold);
+            reader.setProjection(this.projection);
+            int rowWidth = this.fixedRowWidth;
+            if (rowWidth == 0 && this.projection.hasColumns()) {
+                rowWidth = this.projection.getColumnCount();
+            }
+            if (rowWidth == 0 && this.declaredRowWidth) {
+                rowWidth = reader.declaredMaxRowWidth();
+            }
+            if (rowWidth <= 0) {
+                rowWidth = reader.scanMaxRowWidth();
+            }
+            writer = this.newOutputWriter(csvFile, rowWidth);
+            RowHandler handler = (this.metrics == null) ? writer : this.meteredHandler(excelFile, writer);
+            long reading = System.nanoTime();
+            if (this.pipelined) {
+                RowPipeline pipeline = new RowPipeline(reader);
+                pipeline.write(handler);
+                if (this.metrics != null) {
+                    this.metrics.addFormatNanos(pipeline.getReadNanos());
+                }
+            } else {
+                reader.read(handler);
+                if (this.metrics != null) {
+                    // Cells are formatted as they are parsed, so the time
+                    // spent formatting is that spent reading, less the time
+                    // the writer spent escaping and writing.
+                    this.metrics.addFormatNanos(System.nanoTime() - reading - writer.getEscapeNanos()
+                        - writer.getWriteNanos());
+                }
+            }
+            if (this.metrics != null) {
+                this.metrics.addOpenNanos(reading - start);
+                this.metrics.addFormulaCells(reader.getFormulaCellCount());
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
         } finally {
-            if (fis != null) {
+            if (writer != null) {
                 try {
-                    fis.close();
+                    writer.close();
                 } catch (IOException ex) {
                     handleIOException(ex);
                 }
             }
+            if (reader != null) {
+                reader.close();
+            }
         }
+        return this.outputFiles(writer, csvFile);
+    }
+
+    /**
+     * Wraps a handler so that the sheets streamed to it are recorded by the
+     * metrics.
+     */
+    private RowHandler meteredHandler(final File excelFile, final RowHandler handler) {
+        return new RowHandler() {
+            private String sheetName = null;
+            private long rows = 0;
+
+            @Override
+            public void startSheet(int sheetIndex, String sheetName) throws IOException {
+                this.sheetName = sheetName;
+                this.rows = 0;
+                handler.startSheet(sheetIndex, sheetName);
+            }
+
+            @Override
+            public void row(int rowIndex, List<String> cells) throws IOException {
+                this.rows++;
+                handler.row(rowIndex, cells);
+            }
+
+            @Override
+            public void endSheet(int sheetIndex) throws IOException {
+                handler.endSheet(sheetIndex);
+                ExcelUtils.this.metrics.sheetConverted(excelFile, this.sheetName, this.rows);
+            }
+        };
     }
 
     /**
-     * Called to convert the contents of the currently opened workbook into a
-     * CSV file.
+     * Called to prepare the contents of the currently opened workbook for
+     * conversion into a CSV file. No data is copied out of the workbook; the
+     * only thing established here is the number of fields every line of the
+     * CSV file will hold. Unless a fixed row width has been set, or only some
+     * of the columns selected, the selected rows of every selected sheet are
+     * visited to find the right most cell in the workbook.
      */
-    private void convertToCSV() {
+    void convertToCSV() {
         Sheet sheet = null;
         Row row = null;
         int lastRowNum = 0;
-        this.csvData = new ArrayList<ArrayList<String>>();
 
         System.out.println("Converting files contents to CSV format.");
 
+        if (this.fixedRowWidth > 0) {
+            this.maxRowWidth = this.fixedRowWidth;
+            return;
+        }
+        if (this.projection.hasColumns()) {
+            this.maxRowWidth = this.projection.getColumnCount();
+            return;
+        }
+
         // Discover how many sheets there are in the workbook....
         int numSheets = this.workbook.getNumberOfSheets();
 
-        // and then iterate through them.
+        // and then iterate through them making a note of the index number of
+        // the right most cell. This value will later be used to ensure that
+        // the matrix of data in the CSV file is square.
+        this.maxRowWidth = 0;
         for (int i = 0; i < numSheets; i++) {
-
-            // Get a reference to a sheet and check to see if it contains
-            // any rows.
             sheet = this.workbook.getSheetAt(i);
-            if (sheet.getPhysicalNumberOfRows() > 0) {
-
-                // Note down the index number of the bottom-most row and
-                // then iterate through all of the rows on the sheet starting
-                // from the very first row - number 1 - even if it is missing.
-                // Recover a reference to the row and then call another method
-                // which will strip the data from the cells and build lines
-                // for inclusion in the resylting CSV file.
-                lastRowNum = sheet.getLastRowNum();
-                for (int j = 0; j <= lastRowNum; j++) {
+            if (sheet.getPhysicalNumberOfRows() > 0 && this.projection.selectsSheet(i, sheet.getSheetName())) {
+                lastRowNum = Math.min(sheet.getLastRowNum(), this.projection.getLastRow());
+                for (int j = this.projection.getFirstRow(); j <= lastRowNum; j++) {
                     row = sheet.getRow(j);
-                    this.rowToCSV(row);
+                    if (row != null && row.getLastCellNum() > this.maxRowWidth) {
+                        this.maxRowWidth = row.getLastCellNum();
+                    }
                 }
             }
         }
@@ -422,7 +1649,8 @@ public class ExcelUtils extends ExceptionUtils {
 
     /**
      * Called to actually save the data recovered from the Excel workbook as a
-     * CSV file.
+     * CSV file. Each row is converted and written away in turn so that no more
+     * than a single line of the CSV file is ever held in memory.
      * <p>
      * Handles {@link FileNotFoundException} thrown if the file cannot be found.
      * <p>
@@ -432,215 +1660,591 @@ public class ExcelUtils extends ExceptionUtils {
      * @param file
      *            An instance of the File class that encapsulates a handle
      *            referring to the CSV file.
+     * @return the files written
      */
-    private void saveCSVFile(File file) {
-        FileWriter fw = null;
-        BufferedWriter bw = null;
-        ArrayList<String> line = null;
-        StringBuffer buffer = null;
-        String csvLineElement = null;
+    List<File> saveCSVFile(File file) {
+        // Sheets converted on worker threads, or into files of their own, are
+        // handled separately. Sheets converted on worker threads are stitched
+        // together, which a split CSV file cannot be.
+        if ((this.sheetThreads > 0 && !this.isPartitioned()) || this.csvPerSheet) {
+            return this.saveSheets(file);
+        }
+
+        CsvRowWriter writer = null;
         try {
 
             System.out.println("Saving the CSV file [" + file.getName() + "]");
 
-            // Open a writer onto the CSV file.
-            fw = new FileWriter(file);
-            bw = new BufferedWriter(fw);
-
-            // Step through the elements of the ArrayList that was used to hold
-            // all of the data recovered from the Excel workbooks' sheets, rows
-            // and cells.
-            for (int i = 0; i < this.csvData.size(); i++) {
-                buffer = new StringBuffer();
-
-                // Get an element from the ArrayList that contains the data for
-                // the workbook. This element will itself be an ArrayList
-                // containing Strings and each String will hold the data
-                // recovered
-                // from a single cell. The for() loop is used to recover
-                // elements
-                // from this 'row' ArrayList one at a time and to write the
-                // Strings
-                // away to a StringBuffer thus assembling a single line for
-                // inclusion
-                // in the CSV file. If a row was empty or if it was short, then
-                // the ArrayList that contains it's data will also be shorter
-                // than
-                // some of the others. Therefore, it is necessary to check
-                // within
-                // the for loop to ensure that the ArrayList contains data to be
-                // processed. If it does, then an element will be recovered and
-                // appended to the StringBuffer.
-                line = this.csvData.get(i);
-                for (int j = 0; j < this.maxRowWidth; j++) {
-                    if (line.size() > j) {
-                        csvLineElement = line.get(j);
-                        if (csvLineElement != null) {
-                            buffer.append(this.escapeEmbeddedCharacters(csvLineElement));
+            // Open a writer onto the CSV file. It pads every line out to the
+            // width of the longest row and escapes any embedded characters.
+            writer = this.newOutputWriter(file, this.maxRowWidth);
+
+            // Iterate through all of the sheets and write away those that
+            // contain any rows.
+            int numSheets = this.workbook.getNumberOfSheets();
+            for (int i = 0; i < numSheets; i++) {
+                Sheet sheet = this.workbook.getSheetAt(i);
+                SheetProjection sheetProjection = this.projectSheet(i, sheet, this.formatter, this.evaluator);
+                if (sheetProjection != null) {
+                    this.writeSheet(sheet, sheetProjection, writer, this.formatter, this.evaluator);
+                }
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    handleIOException(ex);
+                }
+            }
+        }
+        return this.outputFiles(writer, file);
+    }
+
+    /**
+     * Called to save the sheets of the Excel workbook one per task on a pool
+     * of worker threads. Each task formats the cells of its sheet with a
+     * DataFormatter and FormulaEvaluator of its own, as neither is thread
+     * safe, and writes the lines into a file of its own. Unless a CSV file per
+     * sheet was asked for, those files are then stitched together, in sheet
+     * order, into the CSV file and deleted. Should two sheet names map onto
+     * the same file name, the later sheet's file is told apart by its index.
+     * <p>
+     * The tasks share the workbook itself, which is not thread safe either,
+     * but only ever read it: the rows, cells, styles and strings of a loaded
+     * workbook are not changed by being read, and neither a DataFormatter
+     * nor a FormulaEvaluator writes to the cells it formats or evaluates.
+     * Everything the tasks do write - the formatters, evaluators, writers and
+     * files - is their own.
+     * <p>
+     * Handles {@link IOException} thrown to indicate and error occurred in the
+     * underylying file system.
+     * <p>
+     * Handles {@link InterruptedException} thrown if the calling thread is
+     * interrupted whilst waiting for the sheets.
+     *
+     * @param file
+     *            An instance of the File class that encapsulates a handle
+     *            referring to the CSV file.
+     * @return the files written
+     */
+    private List<File> saveSheets(File file) {
+        List<File> sheetFiles = new ArrayList<File>();
+        Set<String> sheetFileNames = new HashSet<String>();
+        List<File> outputs = new ArrayList<File>();
+        List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+        int numSheets = this.workbook.getNumberOfSheets();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.sheetThreads, numSheets)));
+        try {
+            for (int i = 0; i < numSheets; i++) {
+                Sheet sheet = this.workbook.getSheetAt(i);
+                SheetProjection sheetProjection = this.projectSheet(i, sheet, this.formatter, this.evaluator);
+                if (sheetProjection != null) {
+                    File sheetFile = null;
+                    if (!this.csvPerSheet) {
+                        sheetFile = File.createTempFile(ExcelUtils.csvFilename(file.getName()), ".part",
+                            file.getParentFile());
+                    } else {
+                        // File names are compared without regard to case, as
+                        // some file systems do.
+                        sheetFile = ExcelUtils.sheetCsvFile(file, sheet.getSheetName());
+                        if (!sheetFileNames.add(sheetFile.getName().toLowerCase(Locale.ROOT))) {
+                            sheetFile = ExcelUtils.sheetCsvFile(file, sheet.getSheetName() + "_" + i);
+                            sheetFileNames.add(sheetFile.getName().toLowerCase(Locale.ROOT));
                         }
                     }
-                    if (j < (this.maxRowWidth - 1)) {
-                        buffer.append(this.separator);
-                    }
+                    sheetFiles.add(sheetFile);
+                    results.add(executor.submit(this.newSheetTask(sheet, sheetProjection, sheetFile)));
                 }
+            }
+            executor.shutdown();
 
-                // Once the line is built, write it away to the CSV file.
-                bw.write(buffer.toString().trim());
-
-                // Condition the inclusion of new line characters so as to
-                // avoid an additional, superfluous, new line at the end of
-                // the file.
-                if (i < (this.csvData.size() - 1)) {
-                    bw.newLine();
+            // Wait for every sheet, in order, before stitching them together
+            // so that a failure leaves no partial CSV file behind.
+            for (Future<List<File>> result : results) {
+                try {
+                    outputs.addAll(result.get());
+                } catch (ExecutionException ex) {
+                    rethrowRuntimeException(ex.getCause());
                 }
             }
+            if (!this.csvPerSheet) {
+                System.out.println("Saving the CSV file [" + file.getName() + "]");
+                this.stitch(sheetFiles, file);
+            }
         } catch (IOException ex) {
             handleIOException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            handleCheckedException(ex);
         } finally {
-            if (bw != null) {
+            executor.shutdownNow();
+            if (!this.csvPerSheet) {
+                for (File sheetFile : sheetFiles) {
+                    sheetFile.delete();
+                }
+            }
+        }
+        if (!this.csvPerSheet) {
+            return Collections.singletonList(this.outputFile(file, this.gzip));
+        }
+        return outputs;
+    }
+
+    private Callable<List<File>> newSheetTask(final Sheet sheet, final SheetProjection sheetProjection,
+        final File sheetFile) {
+        return new Callable<List<File>>() {
+            @Override
+            public List<File> call() throws IOException {
+                // Only a file of its own starts with a byte order mark, is
+                // compressed or split into parts; the parts stitched together
+                // are given one, and compressed, when joined.
+                boolean ownFile = ExcelUtils.this.csvPerSheet;
+                CsvRowWriter writer = ownFile ? ExcelUtils.this.newOutputWriter(sheetFile,
+                    ExcelUtils.this.maxRowWidth) : ExcelUtils.this.newCsvWriter(sheetFile,
+                    ExcelUtils.this.maxRowWidth, false, false);
                 try {
-                    bw.flush();
-                } catch (IOException ex) {
-                    handleIOException(ex);
+                    ExcelUtils.this.writeSheet(sheet, sheetProjection, writer, new DataFormatter(true),
+                        ExcelUtils.this.newEvaluator());
+                } finally {
+                    writer.close();
+                }
+                return ExcelUtils.this.outputFiles(writer, sheetFile);
+            }
+        };
+    }
+
+    /**
+     * Concatenates the lines written for each sheet into the CSV file,
+     * separating - not terminating - them just as a single writer would.
+     */
+    private void stitch(List<File> sheetFiles, File file) throws IOException {
+        WritableByteChannel out = this.openChannel(file, this.gzip);
+        try {
+            if (this.byteOrderMark) {
+                this.writeFully(out, String.valueOf(ChannelWriter.BYTE_ORDER_MARK));
+            }
+            for (int i = 0; i < sheetFiles.size(); i++) {
+                if (i > 0) {
+                    this.writeFully(out, ExcelUtils.LINE_SEPARATOR);
                 }
+                FileChannel in = FileChannel.open(sheetFiles.get(i).toPath(), StandardOpenOption.READ);
                 try {
-                    bw.close();
-                } catch (IOException ex) {
-                    handleIOException(ex);
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                } finally {
+                    in.close();
                 }
             }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeFully(WritableByteChannel out, String text) throws IOException {
+        ByteBuffer bytes = this.charset.encode(text);
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Opens a writer onto a CSV file. The lines it writes are padded to the
+     * given width, escaped according to the formatting convention and encoded
+     * in the chosen charset through a channel.
+     */
+    private CsvRowWriter newCsvWriter(File file, int rowWidth, boolean withByteOrderMark, boolean compressed)
+        throws IOException {
+        CsvRowWriter writer = new CsvRowWriter(this.newChannelWriter(file, withByteOrderMark, compressed),
+            this.separator, this.formattingConvention, rowWidth);
+        writer.setMetrics(this.metrics);
+        return writer;
+    }
+
+    private ChannelWriter newChannelWriter(File file, boolean withByteOrderMark, boolean compressed)
+        throws IOException {
+        return new ChannelWriter(this.openChannel(file, compressed), this.charset, this.outputBufferSize,
+            withByteOrderMark);
+    }
+
+    /**
+     * Opens a writer onto a finished CSV file, rather than one about to be
+     * stitched into another; should the files be split, the writer writes
+     * the parts of the file and their manifest instead.
+     */
+    private CsvRowWriter newOutputWriter(final File file, int rowWidth) throws IOException {
+        if (!this.isPartitioned()) {
+            return this.newCsvWriter(file, rowWidth, this.byteOrderMark, this.gzip);
+        }
+        PartitionedCsvWriter.Parts parts = new PartitionedCsvWriter.Parts() {
+            @Override
+            public File getFile(int partNumber) {
+                return ExcelUtils.this.outputFile(ExcelUtils.partCsvFile(file, partNumber), ExcelUtils.this.gzip);
+            }
+
+            @Override
+            public ChannelWriter open(int partNumber) throws IOException {
+                return ExcelUtils.this.newChannelWriter(ExcelUtils.partCsvFile(file, partNumber),
+                    ExcelUtils.this.byteOrderMark, ExcelUtils.this.gzip);
+            }
+        };
+        Writer manifest = Files.newBufferedWriter(ExcelUtils.partsManifestFile(file).toPath(),
+            Charset.forName("UTF-8"));
+        try {
+            CsvRowWriter writer = new PartitionedCsvWriter(parts, manifest, this.separator,
+                this.formattingConvention, rowWidth, this.partRows, this.partBytes, this.partHeader);
+            writer.setMetrics(this.metrics);
+            return writer;
+        } catch (IOException ex) {
+            manifest.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the files actually written for the CSV file given: the file
+     *         itself or, should it be split, its parts and their manifest
+     */
+    private List<File> outputFiles(CsvRowWriter writer, File file) {
+        if (!(writer instanceof PartitionedCsvWriter)) {
+            return Collections.singletonList(this.outputFile(file, this.gzip));
+        }
+        List<File> outputs = new ArrayList<File>(((PartitionedCsvWriter) writer).getFiles());
+        outputs.add(ExcelUtils.partsManifestFile(file));
+        return outputs;
+    }
+
+    private boolean isPartitioned() {
+        return this.partRows > 0 || this.partBytes > 0;
+    }
+
+    /**
+     * @return the file actually written in place of the file given; the same
+     *         file or, when compressed, the file with the .gz extension
+     */
+    private File outputFile(File file, boolean compressed) {
+        return compressed ? new File(file.getPath() + ExcelUtils.GZIP_FILE_EXTENSION) : file;
+    }
+
+    /**
+     * Opens a channel onto the file. A compressed file is given the .gz
+     * extension in addition to its own and its contents are deflated, in
+     * blocks, on the pool of threads shared by every compressed file.
+     */
+    private WritableByteChannel openChannel(File file, boolean compressed) throws IOException {
+        if (!compressed) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return new ParallelGzipChannel(FileChannel.open(this.outputFile(file, true).toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), ParallelGzipChannel.sharedExecutor(),
+            this.gzipThreads, ParallelGzipChannel.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Begins the projection of a sheet, resolving the columns selected by
+     * header against the header row should there be any.
+     *
+     * @param sheetIndex
+     *            the index of the sheet
+     * @param sheet
+     *            the sheet
+     * @param formatter
+     *            formats the contents of the cells of the header row
+     * @param evaluator
+     *            evaluates the formulae found in the header row
+     * @return the projection of the sheet, or null if the sheet is not
+     *         selected or holds no rows
+     * @throws IOException
+     *             if a header cannot be found
+     */
+    SheetProjection projectSheet(int sheetIndex, Sheet sheet, DataFormatter formatter, FormulaEvaluator evaluator)
+        throws IOException {
+        if (sheet.getPhysicalNumberOfRows() == 0) {
+            return null;
+        }
+        SheetProjection sheetProjection = this.projection.startSheet(sheetIndex, sheet.getSheetName());
+        if (sheetProjection != null && sheetProjection.isHeaderPending()) {
+            sheetProjection.resolveHeader(this.rowToCSV(sheet.getRow(sheetProjection.getHeaderRow()), formatter,
+                evaluator));
+        }
+        return sheetProjection;
+    }
+
+    /**
+     * Called to write away the selected rows of a sheet. Every row from the
+     * first selected to the last, or to the last of the sheet, is written
+     * even if it is missing.
+     *
+     * @param sheet
+     *            the sheet
+     * @param sheetProjection
+     *            the rows and columns of the sheet to write
+     * @param writer
+     *            the writer the lines of the CSV file are written to
+     * @param formatter
+     *            formats the contents of the cells
+     * @param evaluator
+     *            evaluates the formulae found in cells
+     * @throws IOException
+     *             if a line cannot be written
+     */
+    private void writeSheet(Sheet sheet, SheetProjection sheetProjection, CsvRowWriter writer,
+        DataFormatter formatter, FormulaEvaluator evaluator) throws IOException {
+        int lastRowNum = Math.min(sheet.getLastRowNum(), this.projection.getLastRow());
+        if (this.metrics == null) {
+            for (int j = this.projection.getFirstRow(); j <= lastRowNum; j++) {
+                writer.writeRow(this.rowToCSV(sheet.getRow(j), sheetProjection, formatter, evaluator));
+            }
+            return;
+        }
+        long formatNanos = 0;
+        for (int j = this.projection.getFirstRow(); j <= lastRowNum; j++) {
+            long start = System.nanoTime();
+            ArrayList<String> line = this.rowToCSV(sheet.getRow(j), sheetProjection, formatter, evaluator);
+            formatNanos += System.nanoTime() - start;
+            writer.writeRow(line);
+        }
+        this.metrics.addFormatNanos(formatNanos);
+        this.sheetConverted(sheet);
+    }
+
+    /**
+     * Records that every selected row of a sheet of the currently opened
+     * workbook has been read, should the conversion be measured.
+     *
+     * @param sheet
+     *            the sheet
+     */
+    void sheetConverted(Sheet sheet) {
+        if (this.metrics != null) {
+            int lastRowNum = Math.min(sheet.getLastRowNum(), this.projection.getLastRow());
+            this.metrics.sheetConverted(this.workbookFile, sheet.getSheetName(),
+                Math.max(0, lastRowNum - this.projection.getFirstRow() + 1));
         }
     }
 
     /**
-     * Called to convert a row of cells into a line of data that can later be
-     * output to the CSV file.
+     * Converts a row of the currently opened workbook with the formatter and
+     * evaluator created when it was opened.
+     *
+     * @param row
+     *            the row, or null if it is missing
+     * @return the formatted contents of the cells of the row
+     */
+    ArrayList<String> rowToCSV(Row row) {
+        return this.rowToCSV(row, this.formatter, this.evaluator);
+    }
+
+    /**
+     * Called to convert a row of cells into a line of data that can be output
+     * to the CSV file.
      *
      * @param row
      *            An instance of either the HSSFRow or XSSFRow classes that
      *            encapsulates information about a row of cells recovered from
      *            an Excel workbook.
+     * @param formatter
+     *            formats the contents of the cells
+     * @param evaluator
+     *            evaluates the formulae found in cells
+     * @return the formatted contents of the cells of the row
      */
-    private void rowToCSV(Row row) {
+    ArrayList<String> rowToCSV(Row row, DataFormatter formatter, FormulaEvaluator evaluator) {
         Cell cell = null;
         int lastCellNum = 0;
-        ArrayList<String> csvLine = new ArrayList<String>();
 
         // Check to ensure that a row was recovered from the sheet as it is
         // possible that one or more rows between other populated rows could be
         // missing - blank. If the row does contain cells then...
-        if (row != null) {
-
-            // Get the index for the right most cell on the row and then
-            // step along the row from left to right recovering the contents
-            // of each cell, converting that into a formatted String and
-            // then storing the String into the csvLine ArrayList.
-            lastCellNum = row.getLastCellNum();
-            for (int i = 0; i <= lastCellNum; i++) {
-                cell = row.getCell(i);
-                if (cell == null) {
-                    csvLine.add("");
-                } else {
-                    if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
-                        csvLine.add(this.formatter.formatCellValue(cell));
-                    } else {
-                        csvLine.add(this.formatter.formatCellValue(cell, this.evaluator));
-                    }
-                }
+        if (row == null) {
+            return new ArrayList<String>();
+        }
+
+        // Get the index for the right most cell on the row and then walk
+        // the cells the row actually holds, from left to right, converting
+        // the contents of each into a formatted String and storing it into
+        // the csvLine ArrayList. Rather than asking the row for every index
+        // in turn, the gaps between populated cells - and the field beyond
+        // the last cell - are filled with empty Strings as they are found,
+        // so a sparse row costs no more than the cells it holds. Both HSSF
+        // and XSSF rows hand their cells out in column order.
+        lastCellNum = row.getLastCellNum();
+        ArrayList<String> csvLine = new ArrayList<String>(Math.max(0, lastCellNum + 1));
+        Iterator<Cell> cells = row.cellIterator();
+        while (cells.hasNext()) {
+            cell = cells.next();
+            int column = cell.getColumnIndex();
+            while (csvLine.size() < column) {
+                csvLine.add("");
             }
-            // Make a note of the index number of the right most cell. This
-            // value
-            // will later be used to ensure that the matrix of data in the CSV
-            // file
-            // is square.
-            if (lastCellNum > this.maxRowWidth) {
-                this.maxRowWidth = lastCellNum;
-            }
-        }
-        this.csvData.add(csvLine);
-    }
-
-    /**
-     * Checks to see whether the field - which consists of the formatted
-     * contents of an Excel worksheet cell encapsulated within a String -
-     * contains any embedded characters that must be escaped. The method is able
-     * to comply with either Excel's or UNIX formatting conventions in the
-     * following manner;
-     *
-     * With regard to UNIX conventions, if the field contains any embedded field
-     * separator or EOL characters they will each be escaped by prefixing a
-     * leading backspace character. These are the only changes that have yet
-     * emerged following some research as being required.
-     *
-     * Excel has other embedded character escaping requirements, some that
-     * emerged from empirical testing, other through research. Firstly, with
-     * regards to any embedded speech marks ("), each occurrence should be
-     * escaped with another speech mark and the whole field then surrounded with
-     * speech marks. Thus if a field holds <em>"Hello" he said</em> then it
-     * should be modified to appear as <em>"""Hello"" he said"</em>.
-     * Furthermore, if the field contains either embedded separator or EOL
-     * characters, it should also be surrounded with speech marks. As a result
-     * <em>1,400</em> would become <em>"1,400"</em> assuming that the comma is
-     * the required field separator. This has one consequence in, if a field
-     * contains embedded speech marks and embedded separator characters, checks
-     * for both are not required as the additional set of speech marks that
-     * should be placed around ay field containing embedded speech marks will
-     * also account for the embedded separator.
-     *
-     * It is worth making one further note with regard to embedded EOL
-     * characters. If the data in a worksheet is exported as a CSV file using
-     * Excel itself, then the field will be surounded with speech marks. If the
-     * resulting CSV file is then re-imports into another worksheet, the EOL
-     * character will result in the original simgle field occupying more than
-     * one cell. This same 'feature' is replicated in this classes behaviour.
-     *
-     * @param field
-     *            An instance of the String class encapsulating the formatted
-     *            contents of a cell on an Excel worksheet.
-     * @return A String that encapsulates the formatted contents of that Excel
-     *         worksheet cell but with any embedded separator, EOL or speech
-     *         mark characters correctly escaped.
-     */
-    private String escapeEmbeddedCharacters(String field) {
-        StringBuffer buffer = null;
-
-        // If the fields contents should be formatted to confrom with Excel's
-        // convention....
-        if (this.formattingConvention == ExcelUtils.EXCEL_STYLE_ESCAPING) {
-
-            // Firstly, check if there are any speech marks (") in the field;
-            // each occurrence must be escaped with another set of spech marks
-            // and then the entire field should be enclosed within another
-            // set of speech marks. Thus, "Yes" he said would become
-            // """Yes"" he said"
-            if (field.contains("\"")) {
-                buffer = new StringBuffer(field.replaceAll("\"", "\\\"\\\""));
-                buffer.insert(0, "\"");
-                buffer.append("\"");
-            } else {
-                // If the field contains either embedded separator or EOL
-                // characters, then escape the whole field by surrounding it
-                // with speech marks.
-                buffer = new StringBuffer(field);
-                if ((buffer.indexOf(this.separator)) > -1 || (buffer.indexOf("\n")) > -1) {
-                    buffer.insert(0, "\"");
-                    buffer.append("\"");
-                }
+            csvLine.add(this.formatCell(cell, formatter, evaluator));
+        }
+        while (csvLine.size() <= lastCellNum) {
+            csvLine.add("");
+        }
+        return csvLine;
+    }
+
+    /**
+     * Converts the selected cells of a row into a line of data; only those
+     * cells are formatted. Once its header has been resolved the projection
+     * of a sheet knows the position of every selected column.
+     *
+     * @param row
+     *            the row, or null if it is missing
+     * @param sheetProjection
+     *            the columns to convert
+     * @param formatter
+     *            formats the contents of the cells
+     * @param evaluator
+     *            evaluates the formulae found in cells
+     * @return the formatted contents of the selected cells, in the order the
+     *         columns were selected
+     */
+    ArrayList<String> rowToCSV(Row row, SheetProjection sheetProjection, DataFormatter formatter,
+        FormulaEvaluator evaluator) {
+        int[] columns = sheetProjection.getColumnIndexes();
+        if (columns == null) {
+            return this.rowToCSV(row, formatter, evaluator);
+        }
+        ArrayList<String> csvLine = new ArrayList<String>(columns.length);
+        for (int column : columns) {
+            csvLine.add((row == null) ? "" : this.formatCell(row.getCell(column), formatter, evaluator));
+        }
+        return csvLine;
+    }
+
+    /**
+     * @return the formatted contents of the cell, or an empty String if the
+     *         cell is missing
+     */
+    private String formatCell(Cell cell, DataFormatter formatter, FormulaEvaluator evaluator) {
+        if (cell == null) {
+            return "";
+        }
+        if (cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return formatter.formatCellValue(cell);
+        }
+        if (this.metrics != null) {
+            this.metrics.addFormulaCells(1);
+        }
+        return formatter.formatCellValue(cell, evaluator);
+    }
+
+    /**
+     * Watches a folder, converting the workbooks dropped into it with these
+     * settings, until the JVM is shut down; the conversions under way are
+     * allowed to finish first. Should the conversions be measured, the
+     * figures are published over JMX under the name of the folder.
+     * <p>
+     * Handles {@link JMException} thrown if the figures cannot be published.
+     */
+    private void watchFolder(String strSource, String strDestination, String separator, int formattingConvention) {
+        final ExcelFolderWatcher watcher = new ExcelFolderWatcher(new ExcelConverter(this, separator,
+            formattingConvention), Math.max(1, this.threads));
+        watcher.setSettleMillis(this.settleMillis);
+        if (this.metrics != null) {
+            try {
+                this.metrics.register(new File(strSource).getAbsoluteFile().getName());
+            } catch (JMException ex) {
+                handleCheckedException(ex);
             }
-            return (buffer.toString().trim());
         }
-        // The only other formatting convention this class obeys is the UNIX one
-        // where any occurrence of the field separator or EOL character will
-        // be escaped by preceding it with a backslash.
-        else {
-            if (field.contains(this.separator)) {
-                field = field.replaceAll(this.separator, ("\\\\" + this.separator));
+
+        final Thread watching = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                watcher.stop();
+                try {
+                    watching.join();
+                } catch (InterruptedException ex) {
+                    // Shutting down regardless.
+                }
             }
-            if (field.contains("\n")) {
-                field = field.replaceAll("\n", "\\\\\n");
+        });
+        watcher.watch(new File(strSource), new File(strDestination));
+    }
+
+    /**
+     * Applies the options - arguments beginning with a double hyphen - passed
+     * on the command line to this converter.
+     *
+     * @param args
+     *            the arguments passed to the main() method
+     * @return the remaining, positional, arguments
+     */
+    private String[] applyOptions(String[] args) {
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args) {
+            if (ExcelUtils.STREAMING_OPTION.equals(arg)) {
+                this.setStreaming(true);
+            } else if (arg.startsWith(ExcelUtils.ROW_WIDTH_OPTION)) {
+                this.setFixedRowWidth(Integer.parseInt(arg.substring(ExcelUtils.ROW_WIDTH_OPTION.length())));
+            } else if (ExcelUtils.DECLARED_ROW_WIDTH_OPTION.equals(arg)) {
+                this.setDeclaredRowWidth(true);
+            } else if (arg.startsWith(ExcelUtils.THREADS_OPTION)) {
+                this.setThreads(Integer.parseInt(arg.substring(ExcelUtils.THREADS_OPTION.length())));
+            } else if (arg.startsWith(ExcelUtils.SHEET_THREADS_OPTION)) {
+                this.setSheetThreads(Integer.parseInt(arg.substring(ExcelUtils.SHEET_THREADS_OPTION.length())));
+            } else if (ExcelUtils.PIPELINE_OPTION.equals(arg)) {
+                this.setPipelined(true);
+            } else if (ExcelUtils.CSV_PER_SHEET_OPTION.equals(arg)) {
+                this.setCsvPerSheet(true);
+            } else if (arg.startsWith(ExcelUtils.CHARSET_OPTION)) {
+                this.setCharset(Charset.forName(arg.substring(ExcelUtils.CHARSET_OPTION.length())));
+            } else if (arg.startsWith(ExcelUtils.BUFFER_SIZE_OPTION)) {
+                this.setOutputBufferSize(Integer.parseInt(arg.substring(ExcelUtils.BUFFER_SIZE_OPTION.length())));
+            } else if (ExcelUtils.BYTE_ORDER_MARK_OPTION.equals(arg)) {
+                this.setByteOrderMark(true);
+            } else if (ExcelUtils.EVALUATE_FORMULAS_OPTION.equals(arg)) {
+                this.setEvaluateFormulas(true);
+            } else if (arg.startsWith(ExcelUtils.SHARED_STRINGS_THRESHOLD_OPTION)) {
+                this.setSharedStringsThreshold(Long.parseLong(arg.substring(ExcelUtils.SHARED_STRINGS_THRESHOLD_OPTION
+                    .length())));
+            } else if (arg.startsWith(ExcelUtils.SHEETS_OPTION)) {
+                this.projection.selectSheets(arg.substring(ExcelUtils.SHEETS_OPTION.length()));
+            } else if (arg.startsWith(ExcelUtils.COLUMNS_OPTION)) {
+                this.projection.selectColumns(arg.substring(ExcelUtils.COLUMNS_OPTION.length()));
+            } else if (arg.startsWith(ExcelUtils.ROWS_OPTION)) {
+                this.projection.selectRows(arg.substring(ExcelUtils.ROWS_OPTION.length()));
+            } else if (arg.startsWith(ExcelUtils.PART_ROWS_OPTION)) {
+                this.setPartRows(Long.parseLong(arg.substring(ExcelUtils.PART_ROWS_OPTION.length())));
+            } else if (arg.startsWith(ExcelUtils.PART_BYTES_OPTION)) {
+                this.setPartBytes(Long.parseLong(arg.substring(ExcelUtils.PART_BYTES_OPTION.length())));
+            } else if (ExcelUtils.PART_HEADER_OPTION.equals(arg)) {
+                this.setPartHeader(true);
+            } else if (ExcelUtils.METRICS_OPTION.equals(arg)) {
+                this.setMetrics(new ConversionMetrics());
+            } else if (ExcelUtils.TO_EXCEL_OPTION.equals(arg)) {
+                this.toExcel = true;
+            } else if (arg.startsWith(ExcelUtils.ROW_WINDOW_OPTION)) {
+                this.setRowWindow(Integer.parseInt(arg.substring(ExcelUtils.ROW_WINDOW_OPTION.length())));
+            } else if (ExcelUtils.TEXT_CELLS_OPTION.equals(arg)) {
+                this.setInferCellTypes(false);
+            } else if (ExcelUtils.WATCH_OPTION.equals(arg)) {
+                this.watch = true;
+            } else if (arg.startsWith(ExcelUtils.SETTLE_MILLIS_OPTION)) {
+                this.settleMillis = Long.parseLong(arg.substring(ExcelUtils.SETTLE_MILLIS_OPTION.length()));
+            } else if (ExcelUtils.INCREMENTAL_OPTION.equals(arg)) {
+                this.setIncremental(true);
+            } else if (ExcelUtils.GZIP_OPTION.equals(arg)) {
+                this.setGzip(true);
+            } else if (arg.startsWith(ExcelUtils.GZIP_THREADS_OPTION)) {
+                this.setGzipThreads(Integer.parseInt(arg.substring(ExcelUtils.GZIP_THREADS_OPTION.length())));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                positional.add(arg);
             }
-            return (field);
         }
+        return positional.toArray(new String[positional.size()]);
     }
 
     /**
@@ -675,7 +2279,19 @@ public class ExcelUtils extends ExceptionUtils {
         long startTime = System.currentTimeMillis();
         try {
             converter = new ExcelUtils();
-            if (args.length == 2) {
+            args = converter.applyOptions(args);
+            if (converter.watch && args.length >= 2 && args.length <= 4) {
+                // The source folder is watched, and the workbooks dropped
+                // into it converted, until the JVM is stopped.
+                converter.watchFolder(args[0], args[1], (args.length > 2) ? args[2] : ExcelUtils.DEFAULT_SEPARATOR,
+                    (args.length > 3) ? Integer.parseInt(args[3]) : ExcelUtils.EXCEL_STYLE_ESCAPING);
+            } else if (converter.toExcel && args.length >= 2 && args.length <= 4) {
+                // The CSV files in the source are converted back into
+                // workbooks, taking the same positional arguments.
+                converter.convertCSVToExcel(args[0], args[1], (args.length > 2) ? args[2]
+                    : ExcelUtils.DEFAULT_SEPARATOR, (args.length > 3) ? Integer.parseInt(args[3])
+                    : ExcelUtils.EXCEL_STYLE_ESCAPING);
+            } else if (args.length == 2) {
                 // Just the Source File/Folder and Destination Folder were
                 // passed to the main method.
                 converter.convertExcelToCSV(args[0], args[1]);
@@ -691,7 +2307,7 @@ public class ExcelUtils extends ExceptionUtils {
                 // None or more than four parameters were passed so display
                 // a Usage message.
                 System.out.println("Usage: java ExcelUtils [Source File/Folder] "
-                    + "[Destination Folder] [Separator] [Formatting Convention]\n"
+                    + "[Destination Folder] [Separator] [Formatting Convention] [Options]\n"
                     + "\tSource File/Folder\tThis argument should contain the name of and\n"
                     + "\t\t\t\tpath to either a single Excel workbook or a\n"
                     + "\t\t\t\tfolder containing one or more Excel workbooks.\n"
@@ -709,7 +2325,58 @@ public class ExcelUtils extends ExceptionUtils {
                     + "\t\t\t\twhilst passing 1 (one) will result in a file\n"
                     + "\t\t\t\tthat obeys UNIX formatting conventions. If no\n"
                     + "\t\t\t\tvalue is passed, then the CSV file produced\n"
-                    + "\t\t\t\twill obey Excel's formatting conventions.");
+                    + "\t\t\t\twill obey Excel's formatting conventions.\n"
+                    + "Options:\n"
+                    + "\t" + ExcelUtils.STREAMING_OPTION + "\t\tStream the workbooks, sheet XML through a SAX\n"
+                    + "\t\t\t\tparser and BIFF records through the HSSF event\n"
+                    + "\t\t\t\tmodel, instead of loading them into memory.\n"
+                    + "\t" + ExcelUtils.ROW_WIDTH_OPTION + "N\t\tPad every line to N fields instead of measuring\n"
+                    + "\t\t\t\tthe widest row of the workbook.\n"
+                    + "\t" + ExcelUtils.DECLARED_ROW_WIDTH_OPTION + "\tPad every line to the width the sheets declare\n"
+                    + "\t\t\t\tso streaming needs a single pass.\n"
+                    + "\t" + ExcelUtils.THREADS_OPTION + "N\t\tConvert N workbooks at a time, largest first,\n"
+                    + "\t\t\t\tdescending into sub folders of the source.\n"
+                    + "\t" + ExcelUtils.SHEET_THREADS_OPTION + "N\tConvert N sheets of a workbook at a time.\n"
+                    + "\t" + ExcelUtils.PIPELINE_OPTION + "\t\tParse a streamed workbook on one thread whilst\n"
+                    + "\t\t\t\twriting the CSV file on another.\n"
+                    + "\t" + ExcelUtils.CSV_PER_SHEET_OPTION + "\t\tWrite each sheet to a CSV file of its own.\n"
+                    + "\t" + ExcelUtils.CHARSET_OPTION + "NAME\t\tEncode the CSV files in the named charset\n"
+                    + "\t\t\t\trather than UTF-8.\n"
+                    + "\t" + ExcelUtils.BUFFER_SIZE_OPTION + "N\t\tGather N bytes of output between writes.\n"
+                    + "\t" + ExcelUtils.BYTE_ORDER_MARK_OPTION + "\t\t\tStart every CSV file with a byte order mark.\n"
+                    + "\t" + ExcelUtils.GZIP_OPTION + "\t\t\tCompress the CSV files, as .csv.gz, whilst\n"
+                    + "\t\t\t\tthey are written.\n"
+                    + "\t" + ExcelUtils.GZIP_THREADS_OPTION + "N\t\tCompress N blocks of a CSV file at a time.\n"
+                    + "\t" + ExcelUtils.EVALUATE_FORMULAS_OPTION + "\tEvaluate formulae afresh rather than writing\n"
+                    + "\t\t\t\tthe results cached in the workbook.\n"
+                    + "\t" + ExcelUtils.INCREMENTAL_OPTION + "\t\tConvert only the workbooks that have changed\n"
+                    + "\t\t\t\tsince the last run.\n"
+                    + "\t" + ExcelUtils.SHARED_STRINGS_THRESHOLD_OPTION + "N\tMap the shared strings of a streamed\n"
+                    + "\t\t\t\tworkbook to a file once they reach N\n"
+                    + "\t\t\t\tcharacters.\n"
+                    + "\t" + ExcelUtils.SHEETS_OPTION + "LIST\t\tConvert only the sheets listed, by name or\n"
+                    + "\t\t\t\tzero based index, separated by commas.\n"
+                    + "\t" + ExcelUtils.COLUMNS_OPTION + "LIST\t\tConvert only the columns listed, by header or\n"
+                    + "\t\t\t\tzero based index, separated by commas.\n"
+                    + "\t" + ExcelUtils.ROWS_OPTION + "FIRST-LAST\tConvert only the rows in the zero based,\n"
+                    + "\t\t\t\tinclusive, range.\n"
+                    + "\t" + ExcelUtils.PART_ROWS_OPTION + "N\t\tSplit every CSV file into parts of N rows,\n"
+                    + "\t\t\t\tlisted in a .parts manifest.\n"
+                    + "\t" + ExcelUtils.PART_BYTES_OPTION + "N\t\tSplit every CSV file into parts of N bytes.\n"
+                    + "\t" + ExcelUtils.PART_HEADER_OPTION + "\t\tRepeat the first row at the head of every\n"
+                    + "\t\t\t\tpart.\n"
+                    + "\t" + ExcelUtils.METRICS_OPTION + "\t\tReport what was converted and the time spent\n"
+                    + "\t\t\t\topening, formatting, escaping and writing.\n"
+                    + "\t" + ExcelUtils.TO_EXCEL_OPTION + "\t\tConvert the CSV files in the source back into\n"
+                    + "\t\t\t\t.xlsx workbooks in the destination.\n"
+                    + "\t" + ExcelUtils.ROW_WINDOW_OPTION + "N\t\tHold N rows in memory whilst writing a\n"
+                    + "\t\t\t\tworkbook, spooling the rest to disk.\n"
+                    + "\t" + ExcelUtils.TEXT_CELLS_OPTION + "\t\tWrite every field to the workbook as a string.\n"
+                    + "\t" + ExcelUtils.WATCH_OPTION + "\t\t\tKeep running, converting workbooks as they are\n"
+                    + "\t\t\t\tdropped into the source folder, on the number\n"
+                    + "\t\t\t\tof threads given by " + ExcelUtils.THREADS_OPTION + "\n"
+                    + "\t" + ExcelUtils.SETTLE_MILLIS_OPTION + "N\tWait until a dropped workbook has not changed\n"
+                    + "\t\t\t\tfor N milliseconds before converting it.");
                 converted = false;
             }
         }
@@ -729,6 +2396,24 @@ public class ExcelUtils extends ExceptionUtils {
 
         if (converted) {
             System.out.println("Conversion took " + (int) ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+            if (converter.getMetrics() != null) {
+                System.out.println(converter.getMetrics());
+            }
+        }
+    }
+
+    /**
+     * Selects the CSV files, compressed or not, of a folder to be converted
+     * into workbooks.
+     */
+    static class CsvFilenameFilter implements FilenameFilter {
+        /**
+         * @return true if the name of the file ends with either '.csv' or
+         *         '.csv.gz'
+         */
+        public boolean accept(File file, String name) {
+            return (name.endsWith(ExcelUtils.CSV_FILE_EXTENSION) || name.endsWith(ExcelUtils.CSV_FILE_EXTENSION
+                + ExcelUtils.GZIP_FILE_EXTENSION));
         }
     }
 
@@ -737,7 +2422,7 @@ public class ExcelUtils extends ExceptionUtils {
      * call to the listFiles() method when made on an instance of the File class
      * and that object refers to a folder/directory
      */
-    class ExcelFilenameFilter implements FilenameFilter {
+    static class ExcelFilenameFilter implements FilenameFilter {
         /**
          * Determine those files that will be returned by a call to the
          * listFiles() method. In this case, the name of the file must end with
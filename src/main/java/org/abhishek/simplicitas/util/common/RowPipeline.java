@@ -0,0 +1,208 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.abhishek.simplicitas.util.excel.RowHandler;
+import org.abhishek.simplicitas.util.excel.StreamingWorkbookReader;
+
+/**
+ * Streams the rows of a workbook to a handler in two stages that run at the
+ * same time: a reader thread parses the workbook, formatting the cells of
+ * each row as it goes, and gathers the rows into batches, whilst the calling
+ * thread hands the batches to the handler - which escapes the fields and
+ * writes the lines away - in the order they were read.
+ * <p>
+ * The stages are joined by a bounded queue of batches. Once it is full the
+ * reader waits for the writer, so however far the reader runs ahead no more
+ * than a fixed number of rows are ever held in memory. A batch never spans
+ * two sheets, and the handler is told of the start and end of every sheet on
+ * the calling thread, just as it would be were it handed to the reader
+ * directly.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+class RowPipeline extends ExceptionUtils {
+    /** The number of rows handed from the reader to the writer at a time. */
+    static final int BATCH_SIZE = 256;
+
+    /** The number of batches the reader may run ahead of the writer. */
+    static final int CAPACITY = 16;
+
+    private static final Batch END = new Batch(-1);
+
+    private final StreamingWorkbookReader reader;
+    private volatile long readNanos = 0;
+
+    /**
+     * @param reader
+     *            the reader, whose projection has been set, that parses the
+     *            workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    RowPipeline(StreamingWorkbookReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Streams every selected row of the workbook to the handler, just as the
+     * reader would on the calling thread. Should either stage fail, the other
+     * is stopped and the failure rethrown.
+     * <p>
+     * Handles {@link InterruptedException} thrown if the calling thread is
+     * interrupted whilst waiting for a batch.
+     *
+     * @param handler
+     *            the receiver of the rows
+     * @throws IOException
+     *             if the workbook cannot be read or parsed, or the handler
+     *             fails
+     * @author abhishek
+     * @since 1.0
+     */
+    void write(RowHandler handler) throws IOException {
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<Batch>(RowPipeline.CAPACITY);
+        try {
+            Future<Void> reading = thread.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException, IOException {
+                    BatchingHandler batching = new BatchingHandler(batches);
+                    long start = System.nanoTime();
+                    boolean stopped = false;
+                    try {
+                        RowPipeline.this.reader.read(batching);
+                    } catch (InterruptedIOException ex) {
+                        stopped = true;
+                        throw ex;
+                    } finally {
+                        RowPipeline.this.readNanos = System.nanoTime() - start - batching.waitNanos;
+                        // The writer must learn that no more batches will
+                        // follow, unless it has itself stopped the reader.
+                        if (!stopped) {
+                            batches.put(RowPipeline.END);
+                        }
+                    }
+                    return null;
+                }
+            });
+
+            Batch batch = null;
+            while ((batch = batches.take()) != RowPipeline.END) {
+                batch.deliver(handler);
+            }
+            reading.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            handleCheckedException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            rethrowRuntimeException(ex.getCause());
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the time, in nanoseconds, the reader spent parsing the workbook
+     *         and formatting its cells, leaving out the time it spent waiting
+     *         for the writer to catch up
+     * @author abhishek
+     * @since 1.0
+     */
+    long getReadNanos() {
+        return this.readNanos;
+    }
+
+    /**
+     * Gathers the rows delivered by the reader into batches and queues them
+     * for the writer.
+     */
+    private static class BatchingHandler implements RowHandler {
+        private final BlockingQueue<Batch> batches;
+        private Batch batch = null;
+        private long waitNanos = 0;
+
+        BatchingHandler(BlockingQueue<Batch> batches) {
+            this.batches = batches;
+        }
+
+        @Override
+        public void startSheet(int sheetIndex, String sheetName) {
+            this.batch = new Batch(sheetIndex);
+            this.batch.sheetName = sheetName;
+        }
+
+        @Override
+        public void row(int rowIndex, List<String> cells) throws IOException {
+            // The reader reuses the list for the next row.
+            this.batch.rowIndexes.add(rowIndex);
+            this.batch.rows.add(new ArrayList<String>(cells));
+            if (this.batch.rows.size() == RowPipeline.BATCH_SIZE) {
+                this.put(this.batch);
+                this.batch = new Batch(this.batch.sheetIndex);
+            }
+        }
+
+        @Override
+        public void endSheet(int sheetIndex) throws IOException {
+            this.batch.endsSheet = true;
+            this.put(this.batch);
+            this.batch = null;
+        }
+
+        private void put(Batch full) throws InterruptedIOException {
+            long start = System.nanoTime();
+            try {
+                this.batches.put(full);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted whilst waiting for the writer");
+            }
+            this.waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Some of the rows of a sheet, along with the start and end of the sheet
+     * should they fall at either end of the batch.
+     */
+    private static class Batch {
+        private final int sheetIndex;
+        private String sheetName = null;
+        private final List<Integer> rowIndexes = new ArrayList<Integer>(RowPipeline.BATCH_SIZE);
+        private final List<List<String>> rows = new ArrayList<List<String>>(RowPipeline.BATCH_SIZE);
+        private boolean endsSheet = false;
+
+        Batch(int sheetIndex) {
+            this.sheetIndex = sheetIndex;
+        }
+
+        void deliver(RowHandler handler) throws IOException {
+            if (this.sheetName != null) {
+                handler.startSheet(this.sheetIndex, this.sheetName);
+            }
+            for (int i = 0; i < this.rows.size(); i++) {
+                handler.row(this.rowIndexes.get(i), this.rows.get(i));
+            }
+            if (this.endsSheet) {
+                handler.endSheet(this.sheetIndex);
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.abhishek.simplicitas.util.excel.RowHandler;
+import org.abhishek.simplicitas.util.excel.SheetDimensions;
+import org.abhishek.simplicitas.util.excel.StreamingWorkbookReader;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Hands out the rows of a single sheet of a workbook one at a time, as they
+ * are asked for, so that they can be consumed in process rather than through
+ * a CSV file. Each row is an array holding the formatted contents of its
+ * cells, formatted exactly as they would be for the CSV file, with an empty
+ * String for every missing cell; a missing row is an empty array. Rows are
+ * not padded to a common width.
+ * <p>
+ * Iterators are obtained from {@link ExcelUtils#iterateSheet(String, int)} or
+ * {@link ExcelUtils#iterateSheet(String, String)}. Unless the converter
+ * streams workbooks, the workbook is loaded when the iterator is created and
+ * the rows formatted on demand. A streamed workbook is parsed on a thread of
+ * its own that stays no more than a fixed number of rows ahead of the caller.
+ * <p>
+ * The workbook stays open until the iterator is closed, which should always
+ * be done; an iterator that runs to the end does not close itself. Failures
+ * to read the workbook surface as an {@link IllegalStateException} from
+ * {@link #hasNext()} or {@link #next()}. Instances are not thread safe.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public abstract class SheetRowIterator extends ExceptionUtils implements Iterator<String[]>, Closeable {
+    private static final String[] EMPTY_ROW = new String[0];
+
+    /**
+     * Not supported; the workbook is never altered.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows cannot be removed from a workbook.");
+    }
+
+    /**
+     * Releases the workbook.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public abstract void close();
+
+    /**
+     * Creates an iterator over the rows of a workbook loaded by the converter.
+     *
+     * @param converter
+     *            a converter of its own, whose workbook is opened here and
+     *            closed along with the iterator
+     * @param file
+     *            the workbook
+     * @param sheetIndex
+     *            the index of the sheet, or -1 to find it by name
+     * @param sheetName
+     *            the name of the sheet, if the index is -1
+     * @return the iterator
+     */
+    static SheetRowIterator loaded(ExcelUtils converter, File file, int sheetIndex, String sheetName) {
+        return new LoadedRows(converter, file, sheetIndex, sheetName);
+    }
+
+    /**
+     * Creates an iterator over the rows of a workbook read by a streaming
+     * reader.
+     *
+     * @param reader
+     *            the reader, which is closed along with the iterator
+     * @param sheetIndex
+     *            the index of the sheet, or -1 to find it by name
+     * @param sheetName
+     *            the name of the sheet, if the index is -1
+     * @param capacity
+     *            the number of rows the reader may parse ahead of the caller
+     * @return the iterator
+     */
+    static SheetRowIterator streamed(StreamingWorkbookReader reader, int sheetIndex, String sheetName,
+        int capacity) {
+        try {
+            return new StreamedRows(reader, resolveSheet(reader.declaredDimensions(), sheetIndex, sheetName),
+                capacity);
+        } catch (IOException ex) {
+            reader.close();
+            handleIOException(ex);
+            return null;
+        } catch (RuntimeException ex) {
+            reader.close();
+            throw ex;
+        }
+    }
+
+    private static int resolveSheet(List<SheetDimensions> sheets, int sheetIndex, String sheetName) {
+        if (sheetIndex < 0) {
+            for (int i = 0; i < sheets.size(); i++) {
+                if (sheets.get(i).getSheetName().equals(sheetName)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("The workbook has no sheet named [" + sheetName + "].");
+        }
+        if (sheetIndex >= sheets.size()) {
+            throw new IllegalArgumentException("The workbook has no sheet " + sheetIndex + ".");
+        }
+        return sheetIndex;
+    }
+
+    /**
+     * Formats the rows of a loaded workbook as they are asked for.
+     */
+    private static class LoadedRows extends SheetRowIterator {
+        private final ExcelUtils converter;
+        private final Sheet sheet;
+        private final int lastRowNum;
+        private int rowNum = 0;
+
+        LoadedRows(ExcelUtils converter, File file, int sheetIndex, String sheetName) {
+            this.converter = converter;
+            converter.openWorkbook(file);
+            try {
+                List<SheetDimensions> names = new ArrayList<SheetDimensions>();
+                for (Sheet each : converter.getWorkbook()) {
+                    names.add(SheetDimensions.undeclared(each.getSheetName()));
+                }
+                this.sheet = converter.getWorkbook().getSheetAt(resolveSheet(names, sheetIndex, sheetName));
+            } catch (RuntimeException ex) {
+                converter.closeWorkbook();
+                throw ex;
+            }
+            this.lastRowNum = (this.sheet.getPhysicalNumberOfRows() > 0) ? this.sheet.getLastRowNum() : -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.rowNum <= this.lastRowNum;
+        }
+
+        @Override
+        public String[] next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = this.sheet.getRow(this.rowNum++);
+            if (row == null || row.getLastCellNum() <= 0) {
+                return EMPTY_ROW;
+            }
+
+            // The line for the CSV file carries an empty field beyond the
+            // last cell, which the padding of the line absorbs; the row does
+            // not.
+            List<String> cells = this.converter.rowToCSV(row);
+            return cells.subList(0, row.getLastCellNum()).toArray(new String[row.getLastCellNum()]);
+        }
+
+        @Override
+        public void close() {
+            this.converter.closeWorkbook();
+        }
+    }
+
+    /**
+     * Takes the rows of a streamed workbook from the thread parsing it. The
+     * queue between the two holds no more than a fixed number of rows, so
+     * the parser waits whenever it gets that far ahead.
+     */
+    private static class StreamedRows extends SheetRowIterator {
+        private final BlockingQueue<String[]> rows;
+        private final String[] end = new String[0];
+        private final Thread parser;
+        private volatile boolean closed = false;
+        private volatile IOException failure = null;
+        private String[] next = null;
+        private boolean finished = false;
+
+        StreamedRows(final StreamingWorkbookReader reader, final int sheetIndex, int capacity) {
+            this.rows = new ArrayBlockingQueue<String[]>(capacity);
+            this.parser = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reader.read(new SheetHandler(sheetIndex));
+                    } catch (StopReading ex) {
+                        // The last row of the sheet has been delivered.
+                    } catch (IOException ex) {
+                        StreamedRows.this.failure = ex;
+                    } finally {
+                        reader.close();
+                        StreamedRows.this.deliver(StreamedRows.this.end);
+                    }
+                }
+            }, "sheet-rows");
+            this.parser.setDaemon(true);
+            this.parser.start();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null && !this.finished) {
+                try {
+                    this.next = this.rows.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    handleCheckedException(ex);
+                }
+                if (this.next == this.end) {
+                    this.next = null;
+                    this.finished = true;
+                    if (this.failure != null) {
+                        handleIOException(this.failure);
+                    }
+                }
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String[] row = this.next;
+            this.next = null;
+            return row;
+        }
+
+        /**
+         * Stops the parser, should it still be running, and waits for it to
+         * close the reader.
+         */
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.parser.interrupt();
+            try {
+                this.parser.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Hands a row over to the caller, giving up should the iterator be
+         * closed whilst waiting for room.
+         */
+        private void deliver(String[] row) {
+            try {
+                if (this.closed) {
+                    this.rows.offer(row);
+                } else {
+                    this.rows.put(row);
+                }
+            } catch (InterruptedException ex) {
+                // The iterator has been closed; nobody is waiting for rows.
+            }
+        }
+
+        /**
+         * Passes the rows of the chosen sheet on and stops the parser once
+         * they have all been delivered.
+         */
+        private class SheetHandler implements RowHandler {
+            private final int sheetIndex;
+            private boolean selected = false;
+
+            SheetHandler(int sheetIndex) {
+                this.sheetIndex = sheetIndex;
+            }
+
+            @Override
+            public void startSheet(int index, String name) {
+                this.selected = (index == this.sheetIndex);
+            }
+
+            @Override
+            public void row(int rowIndex, List<String> cells) throws IOException {
+                if (!this.selected) {
+                    return;
+                }
+                if (StreamedRows.this.closed) {
+                    throw new InterruptedIOException("The iterator has been closed.");
+                }
+                try {
+                    StreamedRows.this.rows.put(cells.toArray(new String[cells.size()]));
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException("The iterator has been closed.");
+                }
+            }
+
+            @Override
+            public void endSheet(int index) throws IOException {
+                if (this.selected) {
+                    throw new StopReading();
+                }
+            }
+        }
+    }
+
+    /**
+     * Raised to abandon parsing once the rows of the sheet have all been
+     * read.
+     */
+    private static class StopReading extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
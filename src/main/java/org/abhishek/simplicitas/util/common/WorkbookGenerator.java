@@ -0,0 +1,416 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.common;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Generates synthetic SpreadsheetML (.xlsx) workbooks of any size, so that
+ * the conversion can be tried against workbooks as large as those met in
+ * production without sharing them.
+ * <p>
+ * The workbook is written through POI's streaming SXSSF writer, which holds
+ * no more than a window of rows in memory and spools the rest, compressed,
+ * to temporary files; even workbooks of several gigabytes need little heap.
+ * The one exception is the shared strings table, which SXSSF keeps in memory
+ * in full, so its size follows the number of distinct strings rather than
+ * the size of the workbook.
+ * <p>
+ * Every sheet starts with a row of headers - Column 1, Column 2 and so on -
+ * followed by the data rows. The first column of every data row holds a
+ * whole number that the formulae refer to. Every other cell is, in the given
+ * proportions, blank, a formula or, of the rest, a string or a number. The
+ * strings are drawn from a fixed number of distinct strings, some of which
+ * hold separators, speech marks or line breaks. The numbers are left in the
+ * General format or given one of a number of number and date formats. The
+ * formulae - products, roundings and remainders of the first column - are
+ * saved along with their results, just as Excel would save them.
+ * <p>
+ * Every choice is made by a Random seeded with the given seed, so the same
+ * settings always generate a workbook with the same contents.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class WorkbookGenerator extends ExceptionUtils {
+    private static final String[] FORMATS = {
+        "0", "#,##0.00", "dd/mm/yyyy", "0.00%", "yyyy-mm-dd hh:mm:ss", "#,##0", "0.00E+00", "d-mmm-yy",
+        "h:mm AM/PM", "$#,##0.00;[Red]-$#,##0.00", "# ?/?", "mmm yyyy"
+    };
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie, delta", "echo \"foxtrot\"", "golf\nhotel", "india", "juliet; kilo", "lima"
+    };
+    private static final int[] DIVISORS = {
+        3, 7, 11
+    };
+    private static final int MAX_ROWS = 1048575;
+    private static final int MAX_COLUMNS = 16384;
+    private static final int FIRST_DATE = 36526;
+    private static final int PROGRESS_ROWS = 100000;
+
+    private static final String ROWS_OPTION = "--rows=";
+    private static final String COLUMNS_OPTION = "--columns=";
+    private static final String SHEETS_OPTION = "--sheets=";
+    private static final String SEED_OPTION = "--seed=";
+    private static final String BLANK_RATIO_OPTION = "--blank-ratio=";
+    private static final String FORMULA_RATIO_OPTION = "--formula-ratio=";
+    private static final String STRING_RATIO_OPTION = "--string-ratio=";
+    private static final String FORMATS_OPTION = "--formats=";
+    private static final String STRINGS_OPTION = "--strings=";
+    private static final String ROW_WINDOW_OPTION = "--row-window=";
+
+    private long seed = 0;
+    private int rows = 1000;
+    private int columns = 10;
+    private int sheets = 1;
+    private double blankRatio = 0.1;
+    private double formulaRatio = 0.05;
+    private double stringRatio = 0.3;
+    private int formatCount = 4;
+    private int stringCount = 1000;
+    private int rowWindow = 100;
+
+    /**
+     * @param seed
+     *            the seed of the Random every value is drawn from
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param rows
+     *            the number of data rows of every sheet, not counting the row
+     *            of headers
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setRows(int rows) {
+        if (rows < 0 || rows > MAX_ROWS) {
+            throw new IllegalArgumentException("The number of rows must lie between 0 and " + MAX_ROWS + ".");
+        }
+        this.rows = rows;
+    }
+
+    /**
+     * @param columns
+     *            the number of columns of every sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setColumns(int columns) {
+        if (columns < 1 || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("The number of columns must lie between 1 and " + MAX_COLUMNS + ".");
+        }
+        this.columns = columns;
+    }
+
+    /**
+     * @param sheets
+     *            the number of sheets
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setSheets(int sheets) {
+        if (sheets < 1) {
+            throw new IllegalArgumentException("At least one sheet is required.");
+        }
+        this.sheets = sheets;
+    }
+
+    /**
+     * @param blankRatio
+     *            the proportion of the cells, besides those of the first
+     *            column, left blank
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setBlankRatio(double blankRatio) {
+        this.blankRatio = checkRatio(blankRatio);
+    }
+
+    /**
+     * @param formulaRatio
+     *            the proportion of the cells, besides those of the first
+     *            column, holding formulae; together with the blank ratio no
+     *            more than one
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setFormulaRatio(double formulaRatio) {
+        this.formulaRatio = checkRatio(formulaRatio);
+    }
+
+    /**
+     * @param stringRatio
+     *            the proportion of the cells neither blank nor formulae that
+     *            hold strings rather than numbers
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setStringRatio(double stringRatio) {
+        this.stringRatio = checkRatio(stringRatio);
+    }
+
+    /**
+     * @param formatCount
+     *            the number of distinct number and date formats given to the
+     *            numbers, besides the General format
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setFormatCount(int formatCount) {
+        if (formatCount < 0 || formatCount > FORMATS.length) {
+            throw new IllegalArgumentException("The number of formats must lie between 0 and " + FORMATS.length
+                + ".");
+        }
+        this.formatCount = formatCount;
+    }
+
+    /**
+     * @param stringCount
+     *            the number of distinct strings the strings are drawn from,
+     *            and so the size of the shared strings table
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setStringCount(int stringCount) {
+        if (stringCount < 1) {
+            throw new IllegalArgumentException("At least one distinct string is required.");
+        }
+        this.stringCount = stringCount;
+    }
+
+    /**
+     * @param rowWindow
+     *            the number of rows SXSSF holds in memory before spooling
+     *            them to a temporary file
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setRowWindow(int rowWindow) {
+        if (rowWindow < 1) {
+            throw new IllegalArgumentException("The row window must hold at least one row.");
+        }
+        this.rowWindow = rowWindow;
+    }
+
+    /**
+     * Generates a workbook and saves it to a file.
+     * <p>
+     * Handles {@link IOException} thrown if the workbook, or one of the
+     * temporary files SXSSF spools rows to, cannot be written.
+     *
+     * @param file
+     *            the file, whose name should end with .xlsx
+     * @author abhishek
+     * @since 1.0
+     */
+    public void generate(File file) {
+        if (this.blankRatio + this.formulaRatio > 1) {
+            throw new IllegalArgumentException("The blank and formula ratios cannot add up to more than one.");
+        }
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, this.rowWindow, true, true);
+        try {
+            Random random = new Random(this.seed);
+            ArrayList<CellStyle> styles = this.createStyles(workbook);
+            for (int i = 0; i < this.sheets; i++) {
+                this.generateSheet(workbook.createSheet("Sheet" + (i + 1)), styles, random);
+            }
+
+            System.out.println("Saving the workbook [" + file.getName() + "]");
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                workbook.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            handleIOException(ex);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private ArrayList<CellStyle> createStyles(SXSSFWorkbook workbook) {
+        DataFormat dataFormat = workbook.createDataFormat();
+        ArrayList<CellStyle> styles = new ArrayList<CellStyle>(this.formatCount);
+        for (int i = 0; i < this.formatCount; i++) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(dataFormat.getFormat(FORMATS[i]));
+            styles.add(style);
+        }
+        return styles;
+    }
+
+    private void generateSheet(Sheet sheet, ArrayList<CellStyle> styles, Random random) {
+        Row header = sheet.createRow(0);
+        for (int j = 0; j < this.columns; j++) {
+            header.createCell(j).setCellValue("Column " + (j + 1));
+        }
+
+        for (int i = 1; i <= this.rows; i++) {
+            Row row = sheet.createRow(i);
+            int id = random.nextInt(1000000);
+            row.createCell(0).setCellValue(id);
+            for (int j = 1; j < this.columns; j++) {
+                double kind = random.nextDouble();
+                if (kind < this.blankRatio) {
+                    continue;
+                }
+                Cell cell = row.createCell(j);
+                if (kind < this.blankRatio + this.formulaRatio) {
+                    this.setFormula(cell, i + 1, id, random);
+                } else if (random.nextDouble() < this.stringRatio) {
+                    int string = random.nextInt(this.stringCount);
+                    cell.setCellValue(WORDS[string % WORDS.length] + " " + string);
+                } else {
+                    int format = random.nextInt(styles.size() + 1);
+                    if (format < styles.size()) {
+                        cell.setCellStyle(styles.get(format));
+                        this.setNumber(cell, FORMATS[format], random);
+                    } else {
+                        cell.setCellValue(random.nextInt(100000) / 100.0);
+                    }
+                }
+            }
+            if (i % PROGRESS_ROWS == 0) {
+                System.out.println("Generated " + i + " rows of [" + sheet.getSheetName() + "]");
+            }
+        }
+    }
+
+    /**
+     * Sets a formula over the first column of the row, along with the result
+     * Excel would have cached for it.
+     */
+    private void setFormula(Cell cell, int rowNumber, int id, Random random) {
+        int divisor = DIVISORS[random.nextInt(DIVISORS.length)];
+        String first = "A" + rowNumber;
+        switch (random.nextInt(3)) {
+        case 0:
+            cell.setCellFormula(first + "*" + divisor);
+            cell.setCellValue((double) id * divisor);
+            break;
+        case 1:
+            cell.setCellFormula("ROUND(" + first + "/" + divisor + ",2)");
+            cell.setCellValue(BigDecimal.valueOf(id).divide(BigDecimal.valueOf(divisor), 2, RoundingMode.HALF_UP)
+                .doubleValue());
+            break;
+        default:
+            cell.setCellFormula("MOD(" + first + "," + divisor + ")");
+            cell.setCellValue(id % divisor);
+            break;
+        }
+    }
+
+    private void setNumber(Cell cell, String format, Random random) {
+        if (DateUtil.isADateFormat(-1, format)) {
+            cell.setCellValue(FIRST_DATE + random.nextInt(7300) + random.nextInt(86400) / 86400.0);
+        } else if (format.indexOf('%') >= 0) {
+            cell.setCellValue(random.nextInt(10000) / 10000.0);
+        } else {
+            cell.setCellValue(random.nextInt(100000000) / 100.0);
+        }
+    }
+
+    private static double checkRatio(double ratio) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("A ratio must lie between 0 and 1.");
+        }
+        return ratio;
+    }
+
+    private String[] applyOptions(String[] args) {
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith(ROWS_OPTION)) {
+                this.setRows(Integer.parseInt(arg.substring(ROWS_OPTION.length())));
+            } else if (arg.startsWith(COLUMNS_OPTION)) {
+                this.setColumns(Integer.parseInt(arg.substring(COLUMNS_OPTION.length())));
+            } else if (arg.startsWith(SHEETS_OPTION)) {
+                this.setSheets(Integer.parseInt(arg.substring(SHEETS_OPTION.length())));
+            } else if (arg.startsWith(SEED_OPTION)) {
+                this.setSeed(Long.parseLong(arg.substring(SEED_OPTION.length())));
+            } else if (arg.startsWith(BLANK_RATIO_OPTION)) {
+                this.setBlankRatio(Double.parseDouble(arg.substring(BLANK_RATIO_OPTION.length())));
+            } else if (arg.startsWith(FORMULA_RATIO_OPTION)) {
+                this.setFormulaRatio(Double.parseDouble(arg.substring(FORMULA_RATIO_OPTION.length())));
+            } else if (arg.startsWith(STRING_RATIO_OPTION)) {
+                this.setStringRatio(Double.parseDouble(arg.substring(STRING_RATIO_OPTION.length())));
+            } else if (arg.startsWith(FORMATS_OPTION)) {
+                this.setFormatCount(Integer.parseInt(arg.substring(FORMATS_OPTION.length())));
+            } else if (arg.startsWith(STRINGS_OPTION)) {
+                this.setStringCount(Integer.parseInt(arg.substring(STRINGS_OPTION.length())));
+            } else if (arg.startsWith(ROW_WINDOW_OPTION)) {
+                this.setRowWindow(Integer.parseInt(arg.substring(ROW_WINDOW_OPTION.length())));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                positional.add(arg);
+            }
+        }
+        return positional.toArray(new String[positional.size()]);
+    }
+
+    /**
+     * Generates a workbook from the command line.
+     *
+     * @param args
+     *            the name of and path to the workbook, followed by any options
+     * @author abhishek
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        long startTime = System.currentTimeMillis();
+        try {
+            WorkbookGenerator generator = new WorkbookGenerator();
+            args = generator.applyOptions(args);
+            if (args.length != 1) {
+                System.out.println("Usage: java WorkbookGenerator [Workbook] [Options]\n"
+                    + "\tWorkbook\t\tThe name of and path to the .xlsx file to\n"
+                    + "\t\t\t\tgenerate.\n"
+                    + "Options:\n"
+                    + "\t" + ROWS_OPTION + "N\t\tN data rows in every sheet; 1000 by default.\n"
+                    + "\t" + COLUMNS_OPTION + "N\t\tN columns in every sheet; 10 by default.\n"
+                    + "\t" + SHEETS_OPTION + "N\t\tN sheets; 1 by default.\n"
+                    + "\t" + SEED_OPTION + "N\t\tSeed the values with N; 0 by default.\n"
+                    + "\t" + BLANK_RATIO_OPTION + "R\t\tLeave the proportion R of the cells blank.\n"
+                    + "\t" + FORMULA_RATIO_OPTION + "R\tPut formulae in the proportion R of the cells.\n"
+                    + "\t" + STRING_RATIO_OPTION + "R\tPut strings in the proportion R of the other\n"
+                    + "\t\t\t\tcells, and numbers in the rest.\n"
+                    + "\t" + FORMATS_OPTION + "N\t\tGive the numbers N distinct number and date\n"
+                    + "\t\t\t\tformats, at most " + FORMATS.length + ".\n"
+                    + "\t" + STRINGS_OPTION + "N\t\tDraw the strings from N distinct strings.\n"
+                    + "\t" + ROW_WINDOW_OPTION + "N\t\tHold N rows in memory whilst writing.");
+                return;
+            }
+            generator.generate(new File(args[0]));
+            System.out.println("Generation took " + (int) ((System.currentTimeMillis() - startTime) / 1000)
+                + " seconds");
+        } catch (Exception ex) {
+            System.out.println("Caught an: " + ex.getClass().getName());
+            System.out.println("Message: " + ex.getMessage());
+            System.out.println("Stacktrace follows:.....");
+            ex.printStackTrace(System.out);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+
+/**
+ * A FormulaEvaluator that evaluates nothing. It reports the result Excel
+ * stored along with each formula when the workbook was last saved, so that a
+ * DataFormatter formats that cached value exactly as it would the result of a
+ * live evaluation, at none of the cost.
+ * <p>
+ * Holding no state, a single instance may be shared by any number of threads
+ * and workbooks.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class CachedResultEvaluator implements FormulaEvaluator {
+    /** The shared instance. */
+    public static final CachedResultEvaluator INSTANCE = new CachedResultEvaluator();
+
+    /**
+     * Reports the type of the result cached with a formula cell; the
+     * DataFormatter then reads the cached value from the cell itself.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.apache.poi.ss.usermodel.FormulaEvaluator#evaluateFormulaCell(org.apache.poi.ss.usermodel.Cell)
+     */
+    @Override
+    public int evaluateFormulaCell(Cell cell) {
+        if (cell == null || cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return -1;
+        }
+        return cell.getCachedFormulaResultType();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.apache.poi.ss.usermodel.FormulaEvaluator#evaluate(org.apache.poi.ss.usermodel.Cell)
+     */
+    @Override
+    public CellValue evaluate(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        int cellType = cell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA) {
+            cellType = cell.getCachedFormulaResultType();
+        }
+        switch (cellType) {
+            case Cell.CELL_TYPE_NUMERIC:
+                return new CellValue(cell.getNumericCellValue());
+            case Cell.CELL_TYPE_STRING:
+                return new CellValue(cell.getRichStringCellValue().getString());
+            case Cell.CELL_TYPE_BOOLEAN:
+                return CellValue.valueOf(cell.getBooleanCellValue());
+            case Cell.CELL_TYPE_ERROR:
+                return CellValue.getError(cell.getErrorCellValue());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Not supported; the cells are never altered.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.apache.poi.ss.usermodel.FormulaEvaluator#evaluateInCell(org.apache.poi.ss.usermodel.Cell)
+     */
+    @Override
+    public Cell evaluateInCell(Cell cell) {
+        throw new UnsupportedOperationException("Cached results cannot be written into cells.");
+    }
+
+    @Override
+    public void evaluateAll() {
+        // The cached results are already in place.
+    }
+
+    @Override
+    public void clearAllCachedResultValues() {
+        // Nothing is cached by this evaluator.
+    }
+
+    @Override
+    public void notifySetFormula(Cell cell) {
+        // Nothing is cached by this evaluator.
+    }
+
+    @Override
+    public void notifyDeleteCell(Cell cell) {
+        // Nothing is cached by this evaluator.
+    }
+
+    @Override
+    public void notifyUpdateCell(Cell cell) {
+        // Nothing is cached by this evaluator.
+    }
+
+    @Override
+    public void setupReferencedWorkbooks(Map<String, FormulaEvaluator> evaluators) {
+        // Other workbooks are never consulted.
+    }
+
+    @Override
+    public void setIgnoreMissingWorkbooks(boolean ignore) {
+        // Other workbooks are never consulted.
+    }
+
+    @Override
+    public void setDebugEvaluationOutputForNextEval(boolean value) {
+        // There is no evaluation to debug.
+    }
+}
@@ -0,0 +1,233 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes characters to a file through a {@link FileChannel}, or to any other
+ * writable channel, encoding them with an explicit charset into a single
+ * direct buffer that is handed to the channel whenever it fills. Large
+ * buffers turn the output into a few big sequential writes, and the encoding
+ * no longer depends on the default charset of the JVM.
+ * <p>
+ * Characters that cannot be encoded are replaced, just as they are by an
+ * OutputStreamWriter. Instances are not thread safe.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ChannelWriter extends Writer {
+    /** The byte order mark, written first when requested. */
+    public static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private boolean closed = false;
+    private long drained = 0;
+
+    /**
+     * Creates, or truncates, the file and opens a channel onto it.
+     *
+     * @param file
+     *            the file written to
+     * @param charset
+     *            the encoding of the characters
+     * @param bufferSize
+     *            the size, in bytes, of the buffer handed to the channel
+     * @param byteOrderMark
+     *            true to start the file with a byte order mark
+     * @throws IOException
+     *             if the file cannot be opened or written to
+     * @author abhishek
+     * @since 1.0
+     */
+    public ChannelWriter(File file, Charset charset, int bufferSize, boolean byteOrderMark) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING), charset, bufferSize, byteOrderMark);
+    }
+
+    /**
+     * Writes to a channel that is already open, a
+     * {@link ParallelGzipChannel} for example. The channel is closed along
+     * with the writer.
+     *
+     * @param channel
+     *            the channel written to
+     * @param charset
+     *            the encoding of the characters
+     * @param bufferSize
+     *            the size, in bytes, of the buffer handed to the channel
+     * @param byteOrderMark
+     *            true to start the output with a byte order mark
+     * @throws IOException
+     *             if the byte order mark cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize, boolean byteOrderMark)
+        throws IOException {
+        if (bufferSize < 16) {
+            channel.close();
+            throw new IllegalArgumentException("The buffer must hold at least 16 bytes.");
+        }
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+            CodingErrorAction.REPLACE);
+        if (byteOrderMark && !this.encoder.canEncode(BYTE_ORDER_MARK)) {
+            channel.close();
+            throw new IllegalArgumentException("A byte order mark cannot be encoded in " + charset.name());
+        }
+        this.chars = CharBuffer.allocate(bufferSize);
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.channel = channel;
+        if (byteOrderMark) {
+            this.write(BYTE_ORDER_MARK);
+        }
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Writer#write(int)
+     */
+    @Override
+    public void write(int c) throws IOException {
+        if (!this.chars.hasRemaining()) {
+            this.encode(false);
+        }
+        this.chars.put((char) c);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, this.chars.remaining());
+            this.chars.put(cbuf, off, count);
+            off += count;
+            len -= count;
+            if (!this.chars.hasRemaining()) {
+                this.encode(false);
+            }
+        }
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Writer#write(java.lang.String, int, int)
+     */
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, this.chars.remaining());
+            this.chars.put(str, off, off + count);
+            off += count;
+            len -= count;
+            if (!this.chars.hasRemaining()) {
+                this.encode(false);
+            }
+        }
+    }
+
+    /**
+     * Encodes any characters held, so that the figure returned takes in
+     * every character written so far; the bytes are not handed to the
+     * channel until the buffer fills.
+     *
+     * @return the number of bytes the characters written so far encode to,
+     *         including any byte order mark
+     * @throws IOException
+     *             if the buffer fills and cannot be drained
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getByteCount() throws IOException {
+        this.encode(false);
+        return this.drained + this.bytes.position();
+    }
+
+    /**
+     * Encodes any characters held and hands all of the bytes to the channel.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Writer#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        this.encode(false);
+        this.drain();
+    }
+
+    /**
+     * Encodes the last of the characters, hands all of the bytes to the
+     * channel and closes it.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Writer#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.encode(true);
+            while (this.encoder.flush(this.bytes).isOverflow()) {
+                this.drain();
+            }
+            this.drain();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Moves the characters held into the byte buffer, draining it into the
+     * channel each time it fills. A high surrogate whose partner has not yet
+     * arrived is kept back.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        this.chars.flip();
+        while (true) {
+            CoderResult result = this.encoder.encode(this.chars, this.bytes, endOfInput);
+            if (result.isOverflow()) {
+                this.drain();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+        this.chars.compact();
+    }
+
+    private void drain() throws IOException {
+        this.bytes.flip();
+        this.drained += this.bytes.remaining();
+        while (this.bytes.hasRemaining()) {
+            this.channel.write(this.bytes);
+        }
+        this.bytes.clear();
+    }
+}
@@ -0,0 +1,68 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Follows the progress of the conversions recorded by a
+ * {@link ConversionMetrics}. Workbooks may be converted on several threads
+ * at once, so the methods may be called concurrently and should return
+ * quickly; the conversion waits for them.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public interface ConversionListener {
+
+    /**
+     * Called as the conversion of a workbook begins.
+     *
+     * @param workbook
+     *            the workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    void fileStarted(File workbook);
+
+    /**
+     * Called once every selected row of a sheet has been read.
+     *
+     * @param workbook
+     *            the workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @param rows
+     *            the number of rows read from the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    void sheetConverted(File workbook, String sheetName, long rows);
+
+    /**
+     * Called once a workbook has been converted.
+     *
+     * @param workbook
+     *            the workbook
+     * @param csvFiles
+     *            the files written
+     * @param elapsedMillis
+     *            the time taken to convert the workbook, in milliseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    void fileConverted(File workbook, List<File> csvFiles, long elapsedMillis);
+
+    /**
+     * Called should a workbook fail to convert.
+     *
+     * @param workbook
+     *            the workbook
+     * @param failure
+     *            the reason it failed
+     * @author abhishek
+     * @since 1.0
+     */
+    void fileFailed(File workbook, RuntimeException failure);
+}
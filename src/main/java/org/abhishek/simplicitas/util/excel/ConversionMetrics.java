@@ -0,0 +1,407 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts the workbooks, sheets, rows, cells and bytes converted and the time
+ * spent in each phase of the conversion - opening the workbook, formatting
+ * the cells, escaping the fields and writing the lines away - and tells any
+ * {@link ConversionListener listeners} of the progress of every workbook.
+ * <p>
+ * A single instance may be shared by any number of conversions running at
+ * the same time; the figures are then the totals across all of them. The
+ * CSV writers gather their own figures and add them in as they are closed,
+ * so the rows, cells and escape and write times of a workbook are counted
+ * once it has been written. The figures can be published over JMX by
+ * {@link #register(String)}.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ConversionMetrics implements ConversionMetricsMBean {
+    /** The domain of the names the figures are published under over JMX. */
+    public static final String JMX_DOMAIN = "org.abhishek.simplicitas";
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong sheets = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong formulaCells = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong openNanos = new AtomicLong();
+    private final AtomicLong formatNanos = new AtomicLong();
+    private final AtomicLong escapeNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final List<ConversionListener> listeners = new CopyOnWriteArrayList<ConversionListener>();
+    private volatile ObjectName objectName = null;
+
+    /**
+     * @param listener
+     *            told of the progress of every workbook from now on
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addListener(ConversionListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("A listener is required.");
+        }
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @param listener
+     *            no longer told of the progress of the workbooks
+     * @author abhishek
+     * @since 1.0
+     */
+    public void removeListener(ConversionListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Records that the conversion of a workbook has begun.
+     *
+     * @param workbook
+     *            the workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    public void fileStarted(File workbook) {
+        for (ConversionListener listener : this.listeners) {
+            listener.fileStarted(workbook);
+        }
+    }
+
+    /**
+     * Records that every selected row of a sheet has been read.
+     *
+     * @param workbook
+     *            the workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @param sheetRows
+     *            the number of rows read from the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public void sheetConverted(File workbook, String sheetName, long sheetRows) {
+        this.sheets.incrementAndGet();
+        for (ConversionListener listener : this.listeners) {
+            listener.sheetConverted(workbook, sheetName, sheetRows);
+        }
+    }
+
+    /**
+     * Records that a workbook has been converted, counting the bytes read
+     * from it and written to its CSV files.
+     *
+     * @param workbook
+     *            the workbook
+     * @param csvFiles
+     *            the files written
+     * @param elapsedNanos
+     *            the time taken to convert the workbook, in nanoseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    public void fileConverted(File workbook, List<File> csvFiles, long elapsedNanos) {
+        this.files.incrementAndGet();
+        this.bytesRead.addAndGet(workbook.length());
+        for (File csvFile : csvFiles) {
+            this.bytesWritten.addAndGet(csvFile.length());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        for (ConversionListener listener : this.listeners) {
+            listener.fileConverted(workbook, csvFiles, elapsedMillis);
+        }
+    }
+
+    /**
+     * Records that a workbook failed to convert.
+     *
+     * @param workbook
+     *            the workbook
+     * @param failure
+     *            the reason it failed
+     * @author abhishek
+     * @since 1.0
+     */
+    public void fileFailed(File workbook, RuntimeException failure) {
+        this.failedFiles.incrementAndGet();
+        for (ConversionListener listener : this.listeners) {
+            listener.fileFailed(workbook, failure);
+        }
+    }
+
+    /**
+     * @param count
+     *            the number of lines written
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addRows(long count) {
+        this.rows.addAndGet(count);
+    }
+
+    /**
+     * @param count
+     *            the number of non empty fields written
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addCells(long count) {
+        this.cells.addAndGet(count);
+    }
+
+    /**
+     * @param count
+     *            the number of formula cells read, whether their cached
+     *            results were written or they were evaluated afresh
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addFormulaCells(long count) {
+        this.formulaCells.addAndGet(count);
+    }
+
+    /**
+     * @param nanos
+     *            the time spent opening a workbook, in nanoseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addOpenNanos(long nanos) {
+        this.openNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            the time spent formatting cells, in nanoseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addFormatNanos(long nanos) {
+        this.formatNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            the time spent escaping fields, in nanoseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addEscapeNanos(long nanos) {
+        this.escapeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param nanos
+     *            the time spent writing lines, in nanoseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    public void addWriteNanos(long nanos) {
+        this.writeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getFiles()
+     */
+    @Override
+    public long getFiles() {
+        return this.files.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getFailedFiles()
+     */
+    @Override
+    public long getFailedFiles() {
+        return this.failedFiles.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getSheets()
+     */
+    @Override
+    public long getSheets() {
+        return this.sheets.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getRows()
+     */
+    @Override
+    public long getRows() {
+        return this.rows.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getCells()
+     */
+    @Override
+    public long getCells() {
+        return this.cells.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getFormulaCells()
+     */
+    @Override
+    public long getFormulaCells() {
+        return this.formulaCells.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getBytesRead()
+     */
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getBytesWritten()
+     */
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getOpenMillis()
+     */
+    @Override
+    public long getOpenMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.openNanos.get());
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getFormatMillis()
+     */
+    @Override
+    public long getFormatMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.formatNanos.get());
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getEscapeMillis()
+     */
+    @Override
+    public long getEscapeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.escapeNanos.get());
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#getWriteMillis()
+     */
+    @Override
+    public long getWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.writeNanos.get());
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.ConversionMetricsMBean#reset()
+     */
+    @Override
+    public void reset() {
+        for (AtomicLong figure : new AtomicLong[] {
+            this.files, this.failedFiles, this.sheets, this.rows, this.cells, this.formulaCells,
+            this.bytesRead, this.bytesWritten, this.openNanos, this.formatNanos, this.escapeNanos, this.writeNanos
+        }) {
+            figure.set(0);
+        }
+    }
+
+    /**
+     * Publishes the figures on the platform MBean server, under the name
+     * org.abhishek.simplicitas:type=ConversionMetrics,name=<em>name</em>.
+     *
+     * @param name
+     *            distinguishes these figures from any others published
+     * @return the name the figures are published under
+     * @throws JMException
+     *             if the figures cannot be published, perhaps because the
+     *             name is taken
+     * @author abhishek
+     * @since 1.0
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (this.objectName != null) {
+            throw new IllegalStateException("The metrics are already published as [" + this.objectName + "].");
+        }
+        ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=ConversionMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+        this.objectName = candidate;
+        return candidate;
+    }
+
+    /**
+     * Withdraws the figures from the platform MBean server, should they have
+     * been published.
+     *
+     * @throws JMException
+     *             if the figures cannot be withdrawn
+     * @author abhishek
+     * @since 1.0
+     */
+    public synchronized void unregister() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.getFiles() + " workbooks (" + this.getFailedFiles() + " failed), " + this.getSheets()
+            + " sheets, " + this.getRows() + " rows, " + this.getCells() + " cells, "
+            + this.getFormulaCells() + " formula cells, " + this.getBytesRead() + " bytes read, "
+            + this.getBytesWritten() + " bytes written; open " + this.getOpenMillis() + " ms, format "
+            + this.getFormatMillis() + " ms, escape " + this.getEscapeMillis() + " ms, write "
+            + this.getWriteMillis() + " ms";
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+/**
+ * The figures of a {@link ConversionMetrics} as they are published over JMX.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public interface ConversionMetricsMBean {
+
+    /**
+     * @return the number of workbooks converted
+     * @author abhishek
+     * @since 1.0
+     */
+    long getFiles();
+
+    /**
+     * @return the number of workbooks that failed to convert
+     * @author abhishek
+     * @since 1.0
+     */
+    long getFailedFiles();
+
+    /**
+     * @return the number of sheets converted
+     * @author abhishek
+     * @since 1.0
+     */
+    long getSheets();
+
+    /**
+     * @return the number of lines written to CSV files
+     * @author abhishek
+     * @since 1.0
+     */
+    long getRows();
+
+    /**
+     * @return the number of non empty fields written to CSV files
+     * @author abhishek
+     * @since 1.0
+     */
+    long getCells();
+
+    /**
+     * @return the number of formula cells read. Unless formulae are
+     *         evaluated afresh, which only the conversions that load the
+     *         workbook do, this counts the results Excel cached in the
+     *         workbook and is no measure of the cost of evaluating them
+     * @author abhishek
+     * @since 1.0
+     */
+    long getFormulaCells();
+
+    /**
+     * @return the size of the workbooks converted, in bytes
+     * @author abhishek
+     * @since 1.0
+     */
+    long getBytesRead();
+
+    /**
+     * @return the size of the files written, in bytes
+     * @author abhishek
+     * @since 1.0
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the time spent opening workbooks, and measuring their rows
+     *         whilst streaming, in milliseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    long getOpenMillis();
+
+    /**
+     * @return the time spent formatting cells, in milliseconds; whilst
+     *         streaming, this includes parsing the workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    long getFormatMillis();
+
+    /**
+     * @return the time spent escaping fields and assembling lines, in
+     *         milliseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    long getEscapeMillis();
+
+    /**
+     * @return the time spent writing lines away, encoding and compressing
+     *         them included, in milliseconds
+     * @author abhishek
+     * @since 1.0
+     */
+    long getWriteMillis();
+
+    /**
+     * Sets every figure back to zero.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    void reset();
+}
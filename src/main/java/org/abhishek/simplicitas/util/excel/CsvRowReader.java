@@ -0,0 +1,253 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the lines of a CSV file back into rows of field values, one line at
+ * a time, undoing the escaping applied by {@link CsvRowWriter} under either
+ * formatting convention.
+ * <p>
+ * Under Excel's convention a field may be enclosed in speech marks, within
+ * which separators and EOL characters are taken literally and a doubled
+ * speech mark stands for a single one. Under the UNIX convention a backslash
+ * escapes the separator or EOL character that follows it; any other
+ * backslash is taken literally. Lines may be separated by either LF or CR LF
+ * and a byte order mark at the head of the file is skipped.
+ * <p>
+ * Characters are read through a buffer of their own, so only the current
+ * line is ever held in memory however large the file.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class CsvRowReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+    private final String separator;
+    private final char separatorStart;
+    private final int formattingConvention;
+    private final char[] buffer = new char[CsvRowReader.BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean started = false;
+    private long lineCount = 0;
+
+    // The field being assembled; reused from one field to the next.
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * @param reader
+     *            the reader the CSV lines are read from
+     * @param separator
+     *            the character or characters that separate fields
+     * @param formattingConvention
+     *            either {@link CsvRowWriter#EXCEL_STYLE_ESCAPING} or
+     *            {@link CsvRowWriter#UNIX_STYLE_ESCAPING}
+     * @author abhishek
+     * @since 1.0
+     */
+    public CsvRowReader(Reader reader, String separator, int formattingConvention) {
+        if (separator == null || separator.length() == 0) {
+            throw new IllegalArgumentException("A separator is required to read a CSV file.");
+        }
+        if (formattingConvention != CsvRowWriter.EXCEL_STYLE_ESCAPING
+            && formattingConvention != CsvRowWriter.UNIX_STYLE_ESCAPING) {
+            throw new IllegalArgumentException("The formatting convention is out of range.");
+        }
+        this.reader = reader;
+        this.separator = separator;
+        this.separatorStart = separator.charAt(0);
+        this.formattingConvention = formattingConvention;
+    }
+
+    /**
+     * Reads the next line of the CSV file. A line terminator at the very end
+     * of the file does not begin another, empty, line.
+     *
+     * @return the values of the fields of the line, or null once every line
+     *         has been read
+     * @throws IOException
+     *             if the file cannot be read
+     * @author abhishek
+     * @since 1.0
+     */
+    public List<String> readRow() throws IOException {
+        if (!this.started) {
+            this.started = true;
+            if (this.fill(1) && this.buffer[this.position] == CsvRowReader.BYTE_ORDER_MARK) {
+                this.position++;
+            }
+        }
+        if (!this.fill(1)) {
+            return null;
+        }
+        List<String> row = new ArrayList<String>();
+        boolean more = true;
+        while (more) {
+            more = (this.formattingConvention == CsvRowWriter.EXCEL_STYLE_ESCAPING) ? this.readExcelField()
+                : this.readUnixField();
+            row.add(this.field.toString());
+            this.field.setLength(0);
+        }
+        this.lineCount++;
+        return row;
+    }
+
+    /**
+     * @return the number of lines read so far
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Reads a field obeying Excel's convention into the field buffer.
+     *
+     * @return true if another field of the same line follows
+     */
+    private boolean readExcelField() throws IOException {
+        if (this.fill(1) && this.buffer[this.position] == '"') {
+            this.position++;
+            while (true) {
+                if (!this.fill(1)) {
+                    // An unterminated quoted field runs to the end of the file.
+                    return false;
+                }
+                char c = this.buffer[this.position++];
+                if (c == '"') {
+                    if (this.fill(1) && this.buffer[this.position] == '"') {
+                        this.position++;
+                    } else {
+                        break;
+                    }
+                }
+                this.field.append(c);
+            }
+        }
+        // Anything between a closing speech mark and the next separator, and
+        // the whole of an unquoted field, is taken literally.
+        while (this.fill(1)) {
+            char c = this.buffer[this.position];
+            if (c == this.separatorStart && this.skip(this.separator)) {
+                return true;
+            }
+            if (this.skipLineEnd()) {
+                return false;
+            }
+            this.field.append(c);
+            this.position++;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a field obeying the UNIX convention into the field buffer.
+     *
+     * @return true if another field of the same line follows
+     */
+    private boolean readUnixField() throws IOException {
+        while (this.fill(1)) {
+            char c = this.buffer[this.position];
+            if (c == '\\') {
+                this.position++;
+                if (this.fill(1) && this.buffer[this.position] == this.separatorStart && this.skip(this.separator)) {
+                    this.field.append(this.separator);
+                } else if (this.fill(1) && this.buffer[this.position] == '\n') {
+                    this.field.append('\n');
+                    this.position++;
+                } else {
+                    this.field.append('\\');
+                }
+            } else if (c == this.separatorStart && this.skip(this.separator)) {
+                return true;
+            } else if (this.skipLineEnd()) {
+                return false;
+            } else {
+                this.field.append(c);
+                this.position++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the text given should it come next.
+     *
+     * @return true if the text was consumed
+     */
+    private boolean skip(String text) throws IOException {
+        int length = text.length();
+        if (!this.fill(length)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.buffer[this.position + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        this.position += length;
+        return true;
+    }
+
+    /**
+     * Consumes a LF or CR LF line terminator should one come next; a lone CR
+     * is taken literally.
+     *
+     * @return true if a terminator was consumed
+     */
+    private boolean skipLineEnd() throws IOException {
+        char c = this.buffer[this.position];
+        if (c == '\n') {
+            this.position++;
+            return true;
+        }
+        if (c == '\r' && this.fill(2) && this.buffer[this.position + 1] == '\n') {
+            this.position += 2;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ensures that at least the given number of characters are buffered,
+     * moving those not yet consumed to the head of the buffer first.
+     *
+     * @return false if the file ends before that many are available
+     */
+    private boolean fill(int count) throws IOException {
+        if (this.limit - this.position >= count) {
+            return true;
+        }
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+        this.limit -= this.position;
+        this.position = 0;
+        while (this.limit < count) {
+            int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) {
+                return false;
+            }
+            this.limit += read;
+        }
+        return true;
+    }
+}
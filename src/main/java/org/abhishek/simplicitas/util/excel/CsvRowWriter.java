@@ -0,0 +1,450 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes rows of formatted cell values away as lines of a CSV file.
+ * <p>
+ * Every line is padded with empty fields up to the row width supplied at
+ * construction so that the data matrix in the CSV file is square, embedded
+ * separator, EOL and speech mark characters are escaped according to the
+ * chosen formatting convention and lines are separated - not terminated - by
+ * the platform line separator. The output is therefore the same whether the
+ * rows are held in memory first or handed over one by one by a streaming
+ * reader.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class CsvRowWriter implements RowHandler, Closeable {
+
+    /**
+     * Identifies that the CSV file should obey Excel's formatting conventions
+     * with regard to escaping certain embedded characters - the field
+     * separator, speech mark and end of line (EOL) character
+     */
+    public static final int EXCEL_STYLE_ESCAPING = 0;
+
+    /**
+     * Identifies that the CSV file should obey UNIX formatting conventions with
+     * regard to escaping certain embedded characters - the field separator and
+     * end of line (EOL) character
+     */
+    public static final int UNIX_STYLE_ESCAPING = 1;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private Writer writer;
+    private final String separator;
+    private final int formattingConvention;
+    private final int rowWidth;
+    private final char separatorStart;
+    private long rowCount = 0;
+    private long lineCount = 0;
+    private ConversionMetrics metrics = null;
+    private long cellCount = 0;
+    private long publishedRows = 0;
+    private long escapeNanos = 0;
+    private long writeNanos = 0;
+
+    // The line being assembled; reused from one row to the next.
+    private char[] buffer = new char[256];
+    private int length = 0;
+
+    /**
+     * @param writer
+     *            the writer the CSV lines are written to
+     * @param separator
+     *            the character or characters used to separate fields
+     * @param formattingConvention
+     *            either {@link #EXCEL_STYLE_ESCAPING} or
+     *            {@link #UNIX_STYLE_ESCAPING}
+     * @param rowWidth
+     *            the number of fields every line is padded to
+     * @author abhishek
+     * @since 1.0
+     */
+    public CsvRowWriter(Writer writer, String separator, int formattingConvention, int rowWidth) {
+        this.writer = writer;
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+        this.rowWidth = rowWidth;
+        this.separatorStart = (separator.length() > 0) ? separator.charAt(0) : 0;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#startSheet(int, java.lang.String)
+     */
+    @Override
+    public void startSheet(int sheetIndex, String sheetName) {
+        // Sheets are not delimited in the CSV file.
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#row(int, java.util.List)
+     */
+    @Override
+    public void row(int rowIndex, List<String> cells) throws IOException {
+        this.writeRow(cells);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#endSheet(int)
+     */
+    @Override
+    public void endSheet(int sheetIndex) {
+        // Sheets are not delimited in the CSV file.
+    }
+
+    /**
+     * Assembles a single line of the CSV file from the formatted contents of
+     * the cells of a row and writes it away. If the row is short, then it is
+     * padded with empty fields up to the row width. Should the row be wider -
+     * possible when the width was fixed up front rather than measured - then
+     * the line is extended as far as its last non empty field so that no data
+     * is lost.
+     *
+     * @param line
+     *            the formatted cell values of the row
+     * @throws IOException
+     *             if the line cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    public void writeRow(List<String> line) throws IOException {
+        this.writeLine(line);
+        this.rowCount++;
+    }
+
+    /**
+     * Writes a line away, as {@link #writeRow(List)} does, without counting
+     * it as a row.
+     *
+     * @param line
+     *            the formatted cell values of the row
+     * @throws IOException
+     *             if the line cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    protected void writeLine(List<String> line) throws IOException {
+        long assembling = (this.metrics != null) ? System.nanoTime() : 0;
+        String csvLineElement = null;
+        int width = this.rowWidth;
+        for (int j = line.size() - 1; j >= width; j--) {
+            csvLineElement = line.get(j);
+            if (csvLineElement != null && csvLineElement.length() > 0) {
+                width = j + 1;
+                break;
+            }
+        }
+        this.length = 0;
+        for (int j = 0; j < width; j++) {
+            if (line.size() > j) {
+                csvLineElement = line.get(j);
+                if (csvLineElement != null) {
+                    this.appendEscaped(csvLineElement);
+                    if (csvLineElement.length() > 0) {
+                        this.cellCount++;
+                    }
+                }
+            }
+            if (j < (width - 1)) {
+                this.append(this.separator, 0, this.separator.length());
+            }
+        }
+
+        long escaped = (this.metrics != null) ? System.nanoTime() : 0;
+        this.escapeNanos += escaped - assembling;
+
+        // Separate, rather than terminate, the lines so as to avoid an
+        // additional, superfluous, new line at the end of the file.
+        if (this.lineCount > 0) {
+            this.writer.write(LINE_SEPARATOR);
+        }
+
+        // Leading and trailing white space is dropped from the line as a
+        // whole, just as String.trim() would, without copying it.
+        int start = 0;
+        int end = this.length;
+        while (start < end && this.buffer[start] <= ' ') {
+            start++;
+        }
+        while (start < end && this.buffer[end - 1] <= ' ') {
+            end--;
+        }
+        this.writer.write(this.buffer, start, end - start);
+        this.lineCount++;
+        if (this.metrics != null) {
+            this.writeNanos += System.nanoTime() - escaped;
+        }
+    }
+
+    /**
+     * Has the rows, cells and time spent escaping and writing counted; the
+     * figures are added to the metrics as the writer is closed. Unless set,
+     * no time is measured.
+     *
+     * @param metrics
+     *            the metrics, or null
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the time spent escaping fields and assembling lines so far, in
+     *         nanoseconds; only measured once metrics have been set
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getEscapeNanos() {
+        return this.escapeNanos;
+    }
+
+    /**
+     * @return the time spent writing lines away so far, in nanoseconds; only
+     *         measured once metrics have been set
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getWriteNanos() {
+        return this.writeNanos;
+    }
+
+    /**
+     * Adds the figures gathered so far to the metrics, should any have been
+     * set, and starts counting afresh.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    protected void publishMetrics() {
+        if (this.metrics == null) {
+            return;
+        }
+        this.metrics.addRows(this.rowCount - this.publishedRows);
+        this.metrics.addCells(this.cellCount);
+        this.metrics.addEscapeNanos(this.escapeNanos);
+        this.metrics.addWriteNanos(this.writeNanos);
+        this.publishedRows = this.rowCount;
+        this.cellCount = 0;
+        this.escapeNanos = 0;
+        this.writeNanos = 0;
+    }
+
+    /**
+     * Carries on writing to another writer, as though it were a file of its
+     * own; its first line is not preceded by a line separator. The writer
+     * given up is left open.
+     *
+     * @param writer
+     *            the writer the CSV lines are written to from now on
+     * @author abhishek
+     * @since 1.0
+     */
+    protected void setWriter(Writer writer) {
+        this.writer = writer;
+        this.lineCount = 0;
+    }
+
+    /**
+     * @return the number of lines written so far
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Checks to see whether the field - which consists of the formatted
+     * contents of an Excel worksheet cell encapsulated within a String -
+     * contains any embedded characters that must be escaped. The method is able
+     * to comply with either Excel's or UNIX formatting conventions in the
+     * following manner;
+     *
+     * With regard to UNIX conventions, if the field contains any embedded field
+     * separator or EOL characters they will each be escaped by prefixing a
+     * leading backspace character. These are the only changes that have yet
+     * emerged following some research as being required.
+     *
+     * Excel has other embedded character escaping requirements, some that
+     * emerged from empirical testing, other through research. Firstly, with
+     * regards to any embedded speech marks ("), each occurrence should be
+     * escaped with another speech mark and the whole field then surrounded with
+     * speech marks. Thus if a field holds <em>"Hello" he said</em> then it
+     * should be modified to appear as <em>"""Hello"" he said"</em>.
+     * Furthermore, if the field contains either embedded separator or EOL
+     * characters, it should also be surrounded with speech marks. As a result
+     * <em>1,400</em> would become <em>"1,400"</em> assuming that the comma is
+     * the required field separator. This has one consequence in, if a field
+     * contains embedded speech marks and embedded separator characters, checks
+     * for both are not required as the additional set of speech marks that
+     * should be placed around ay field containing embedded speech marks will
+     * also account for the embedded separator.
+     *
+     * It is worth making one further note with regard to embedded EOL
+     * characters. If the data in a worksheet is exported as a CSV file using
+     * Excel itself, then the field will be surounded with speech marks. If the
+     * resulting CSV file is then re-imports into another worksheet, the EOL
+     * character will result in the original simgle field occupying more than
+     * one cell. This same 'feature' is replicated in this classes behaviour.
+     *
+     * @param field
+     *            An instance of the String class encapsulating the formatted
+     *            contents of a cell on an Excel worksheet.
+     * @return A String that encapsulates the formatted contents of that Excel
+     *         worksheet cell but with any embedded separator, EOL or speech
+     *         mark characters correctly escaped.
+     */
+    public String escapeEmbeddedCharacters(String field) {
+        int start = this.length;
+        this.appendEscaped(field);
+        String escaped = new String(this.buffer, start, this.length - start);
+        this.length = start;
+        return escaped;
+    }
+
+    /**
+     * Escapes the field, as described for
+     * {@link #escapeEmbeddedCharacters(String)}, straight into the line
+     * buffer. The field is scanned only once, being copied as it is scanned;
+     * the separator is matched literally, however many characters it has.
+     */
+    private void appendEscaped(String field) {
+        int fieldLength = field.length();
+
+        // If the fields contents should be formatted to confrom with Excel's
+        // convention....
+        if (this.formattingConvention == CsvRowWriter.EXCEL_STYLE_ESCAPING) {
+            // The field is copied as it is scanned, on the assumption that it
+            // need not be enclosed, with room for every speech mark to be
+            // doubled.
+            this.ensureCapacity(fieldLength * 2 + 2);
+            char[] buffer = this.buffer;
+            int start = this.length;
+            int end = start;
+            boolean enclose = (this.separator.length() == 0);
+            for (int i = 0; i < fieldLength; i++) {
+                char c = field.charAt(i);
+                // Firstly, check if there are any speech marks (") in the
+                // field; each occurrence must be escaped with another set of
+                // spech marks and then the entire field should be enclosed
+                // within another set of speech marks. Thus, "Yes" he said
+                // would become """Yes"" he said"
+                if (c == '"') {
+                    buffer[end++] = '"';
+                    enclose = true;
+                }
+                // If the field contains either embedded separator or EOL
+                // characters, then escape the whole field by surrounding it
+                // with speech marks.
+                else if (c == '\n' || (c == this.separatorStart && field.startsWith(this.separator, i))) {
+                    enclose = true;
+                }
+                buffer[end++] = c;
+            }
+
+            // Should the field have to be enclosed after all, it is moved
+            // along to make way for the opening speech mark.
+            if (enclose) {
+                System.arraycopy(buffer, start, buffer, start + 1, end - start);
+                buffer[start] = '"';
+                buffer[end + 1] = '"';
+                this.length = end + 2;
+            }
+            // Otherwise the field is kept without any leading or trailing
+            // white space.
+            else {
+                int first = start;
+                while (first < end && buffer[first] <= ' ') {
+                    first++;
+                }
+                while (first < end && buffer[end - 1] <= ' ') {
+                    end--;
+                }
+                if (first > start) {
+                    System.arraycopy(buffer, first, buffer, start, end - first);
+                }
+                this.length = start + (end - first);
+            }
+        }
+        // The only other formatting convention this class obeys is the UNIX one
+        // where any occurrence of the field separator or EOL character will
+        // be escaped by preceding it with a backslash.
+        else {
+            int separatorLength = this.separator.length();
+            int i = 0;
+            while (i < fieldLength) {
+                char c = field.charAt(i);
+                if (separatorLength > 0 && c == this.separatorStart && field.startsWith(this.separator, i)) {
+                    this.append('\\');
+                    this.append(this.separator, 0, separatorLength);
+                    i += separatorLength;
+                } else {
+                    if (c == '\n') {
+                        this.append('\\');
+                    }
+                    this.append(c);
+                    i++;
+                }
+            }
+        }
+    }
+
+    private void append(char c) {
+        if (this.length == this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+        this.buffer[this.length++] = c;
+    }
+
+    private void append(String text, int start, int end) {
+        int count = end - start;
+        this.ensureCapacity(count);
+        text.getChars(start, end, this.buffer, this.length);
+        this.length += count;
+    }
+
+    /**
+     * Grows the line buffer, if need be, so that at least the given number of
+     * characters can be appended.
+     */
+    private void ensureCapacity(int count) {
+        if (this.length + count > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + count));
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.writer.flush();
+        } finally {
+            this.writer.close();
+            this.publishMetrics();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Writes rows of field values, typically read back from a CSV file by a
+ * {@link CsvRowReader}, away as the sheets of a SpreadsheetML (.xlsx)
+ * workbook.
+ * <p>
+ * The workbook is written through POI's streaming SXSSF writer, which holds
+ * no more than a window of rows in memory and spools the rest, compressed,
+ * to temporary files. Strings are written inline rather than to a shared
+ * strings table, which SXSSF would hold in memory in full, so the heap
+ * needed does not grow with the number of rows. A sheet holds at most
+ * 1,048,576 rows; further rows continue on a sheet of the same name
+ * followed by its number - Data (2), Data (3) and so on.
+ * <p>
+ * Unless told otherwise the writer recognises the values DataFormatter
+ * renders numbers and booleans as, and writes them as numeric and boolean
+ * cells: whole and decimal numbers, with or without thousands separators,
+ * percentages and numbers in scientific notation. The number of decimal
+ * places and the other trappings of the text are kept by giving the cell a
+ * matching number format - 1,234.50 becomes 1234.5 formatted as #,##0.00 -
+ * and the cell style for each format is created once and shared by every
+ * cell using it. Numbers that would lose precision as a double, or that
+ * start with a zero, such as account numbers and postal codes, are written
+ * as strings. Empty fields are left blank.
+ * <p>
+ * Rows are written, then the workbook saved by {@link #save()}; the writer
+ * must always be closed afterwards to delete its temporary files.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class CsvWorkbookWriter implements RowHandler, Closeable {
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final int MAX_SIGNIFICANT_DIGITS = 15;
+    private static final String GENERAL_NUMBER_FORMAT = "0";
+
+    private final File file;
+    private final SXSSFWorkbook workbook;
+    private final DataFormat dataFormat;
+    private final boolean inferTypes;
+    private final Map<String, CellStyle> styles = new HashMap<String, CellStyle>();
+    private Sheet sheet = null;
+    private String sheetName = null;
+    private int sheetCount = 0;
+    private int rowIndex = 0;
+    private long rowCount = 0;
+
+    /**
+     * @param file
+     *            the file the workbook is saved to
+     * @param rowWindow
+     *            the number of rows held in memory before they are spooled
+     *            to a temporary file
+     * @param inferTypes
+     *            true to write numbers and booleans as such, false to write
+     *            every value as a string
+     * @author abhishek
+     * @since 1.0
+     */
+    public CsvWorkbookWriter(File file, int rowWindow, boolean inferTypes) {
+        if (rowWindow < 1) {
+            throw new IllegalArgumentException("The row window must hold at least one row.");
+        }
+        this.file = file;
+        this.workbook = new SXSSFWorkbook(null, rowWindow, true, false);
+        this.dataFormat = this.workbook.createDataFormat();
+        this.inferTypes = inferTypes;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#startSheet(int, java.lang.String)
+     */
+    @Override
+    public void startSheet(int sheetIndex, String sheetName) {
+        this.sheetName = sheetName;
+        this.sheetCount = 0;
+        this.newSheet();
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#row(int, java.util.List)
+     */
+    @Override
+    public void row(int rowIndex, List<String> cells) {
+        this.writeRow(cells);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.RowHandler#endSheet(int)
+     */
+    @Override
+    public void endSheet(int sheetIndex) {
+        this.sheet = null;
+    }
+
+    /**
+     * Writes the values of a row to the next row of the current sheet,
+     * continuing on a new sheet should the current one be full.
+     *
+     * @param values
+     *            the values of the fields of the row
+     * @author abhishek
+     * @since 1.0
+     */
+    public void writeRow(List<String> values) {
+        if (this.sheet == null) {
+            throw new IllegalStateException("No sheet has been started.");
+        }
+        if (this.rowIndex == CsvWorkbookWriter.MAX_ROWS) {
+            this.newSheet();
+        }
+        Row row = this.sheet.createRow(this.rowIndex++);
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value.length() > 0) {
+                this.writeCell(row.createCell(i), value);
+            }
+        }
+        this.rowCount++;
+    }
+
+    /**
+     * @return the number of rows written so far
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * @return the number of distinct cell styles created for the number
+     *         formats met so far
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getStyleCount() {
+        return this.styles.size();
+    }
+
+    /**
+     * Saves the workbook to its file.
+     *
+     * @throws IOException
+     *             if the workbook cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    public void save() throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(this.file));
+        try {
+            this.workbook.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the temporary files the rows were spooled to.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        this.workbook.dispose();
+    }
+
+    private void newSheet() {
+        this.sheetCount++;
+        // The name of a continuation sheet is shortened, if need be, so that
+        // its number survives the limit on the length of sheet names.
+        String name = WorkbookUtil.createSafeSheetName(this.sheetName);
+        if (this.sheetCount > 1) {
+            String suffix = " (" + this.sheetCount + ")";
+            name = name.substring(0, Math.min(name.length(), CsvWorkbookWriter.MAX_SHEET_NAME_LENGTH
+                - suffix.length())) + suffix;
+        }
+        this.sheet = this.workbook.createSheet(name);
+        this.rowIndex = 0;
+    }
+
+    private void writeCell(Cell cell, String value) {
+        if (!this.inferTypes) {
+            cell.setCellValue(value);
+            return;
+        }
+        if ("TRUE".equals(value) || "FALSE".equals(value)) {
+            cell.setCellValue(Boolean.parseBoolean(value));
+            return;
+        }
+        String numberFormat = CsvWorkbookWriter.numberFormat(value);
+        if (numberFormat == null) {
+            cell.setCellValue(value);
+            return;
+        }
+        double number = Double.parseDouble(value.replace(",", "").replace("%", ""));
+        if (numberFormat.endsWith("%")) {
+            number /= 100;
+        }
+        cell.setCellValue(number);
+        if (!CsvWorkbookWriter.GENERAL_NUMBER_FORMAT.equals(numberFormat)) {
+            cell.setCellStyle(this.cellStyle(numberFormat));
+        }
+    }
+
+    /**
+     * @return the cell style for a number format, created the first time the
+     *         format is met
+     */
+    private CellStyle cellStyle(String numberFormat) {
+        CellStyle style = this.styles.get(numberFormat);
+        if (style == null) {
+            style = this.workbook.createCellStyle();
+            style.setDataFormat(this.dataFormat.getFormat(numberFormat));
+            this.styles.put(numberFormat, style);
+        }
+        return style;
+    }
+
+    /**
+     * Recognises a number as DataFormatter would render it: an optional
+     * minus sign, a whole part - with or without thousands separators - an
+     * optional decimal part, an optional exponent and an optional percent
+     * sign.
+     *
+     * @param value
+     *            the text of a field
+     * @return the number format that renders the number as the text does, or
+     *         null if the text is not such a number
+     */
+    private static String numberFormat(String value) {
+        int length = value.length();
+        int i = (length > 0 && value.charAt(0) == '-') ? 1 : 0;
+
+        // The whole part, in which thousands separators must fall every
+        // three digits.
+        int start = i;
+        int digits = 0;
+        int group = 0;
+        boolean grouped = false;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                group++;
+            } else if (c == ',' && group > 0 && (grouped ? group == 3 : group <= 3)) {
+                grouped = true;
+                group = 0;
+            } else {
+                break;
+            }
+            i++;
+        }
+        if (digits == 0 || (grouped && group != 3)) {
+            return null;
+        }
+        if (value.charAt(start) == '0' && i - start > 1) {
+            return null;
+        }
+
+        int decimals = 0;
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                decimals++;
+                i++;
+            }
+            if (decimals == 0) {
+                return null;
+            }
+        }
+        if (digits + decimals > CsvWorkbookWriter.MAX_SIGNIFICANT_DIGITS) {
+            return null;
+        }
+
+        boolean exponent = false;
+        if (i + 2 < length && value.charAt(i) == 'E' && (value.charAt(i + 1) == '+' || value.charAt(i + 1) == '-')) {
+            i += 2;
+            int exponentStart = i;
+            while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                i++;
+            }
+            exponent = (i > exponentStart);
+            if (!exponent) {
+                return null;
+            }
+        }
+        boolean percent = (i < length && value.charAt(i) == '%');
+        if (percent) {
+            i++;
+        }
+        if (i != length) {
+            return null;
+        }
+
+        StringBuilder format = new StringBuilder(grouped ? "#,##0" : "0");
+        if (decimals > 0) {
+            format.append('.');
+            for (int j = 0; j < decimals; j++) {
+                format.append('0');
+            }
+        }
+        if (exponent) {
+            format.append("E+00");
+        }
+        if (percent) {
+            format.append('%');
+        }
+        return format.toString();
+    }
+}
@@ -0,0 +1,250 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.text.Format;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFDataFormat;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelStyleDateFormatter;
+
+/**
+ * Remembers the number format of every cell style of a workbook, so that the
+ * style of each numeric cell is resolved to a java.text.Format only once
+ * rather than once per cell. A workbook has a few dozen styles at most, but
+ * may have millions of numeric cells.
+ * <p>
+ * Styles are identified by their index - the <em>s</em> attribute of a
+ * SpreadsheetML cell or the XF index of a BIFF cell record - and cached
+ * against the data format index and string they resolve to. Numbers are
+ * rendered exactly as {@link DataFormatter#formatCellValue(org.apache.poi.ss.usermodel.Cell)}
+ * renders the cells of a loaded workbook: the zero section of the format is
+ * picked for zeroes, General renders whole and decimal numbers differently,
+ * numbers formatted as dates are rendered as dates only if they are valid
+ * dates and each Format is compiled from the first number it is needed for,
+ * then kept for the format string. The Format of each style is held by the
+ * style itself, so formatting a number costs no more than a lookup in an
+ * array.
+ * <p>
+ * Formats are compiled by the DataFormatter from a cell of a scratch
+ * workbook, which is only needed the first time a format string is met.
+ * Styles without a format are rendered in the General format, as the unstyled
+ * cells of a loaded workbook are.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class FormatCache {
+    private static final String GENERAL_FORMAT = "General";
+    private static final String TEXT_FORMAT = "@";
+
+    private final DataFormatter formatter;
+    private final boolean emulateCsv;
+    private CachedFormat[] formats = new CachedFormat[64];
+
+    // The Formats compiled so far, by format string, and the means to
+    // compile more.
+    private final Map<String, Format> compiled = new HashMap<String, Format>();
+    private final Format generalWholeNumber;
+    private final Format generalDecimalNumber;
+    private HSSFWorkbook scratch;
+    private HSSFCell scratchCell;
+    private Map<String, HSSFCellStyle> scratchStyles;
+
+    /**
+     * @param emulateCsv
+     *            true to format numbers as a DataFormatter emulating CSV
+     *            output does, as every conversion does
+     * @author abhishek
+     * @since 1.0
+     */
+    public FormatCache(boolean emulateCsv) {
+        this.formatter = new DataFormatter(emulateCsv);
+        this.emulateCsv = emulateCsv;
+        this.generalWholeNumber = this.compile(1, FormatCache.GENERAL_FORMAT);
+        this.generalDecimalNumber = this.compile(0.5, FormatCache.GENERAL_FORMAT);
+    }
+
+    /**
+     * @param styleIndex
+     *            the index of a cell style
+     * @return true if the format of the style is known
+     * @author abhishek
+     * @since 1.0
+     */
+    public boolean isCached(int styleIndex) {
+        return styleIndex < this.formats.length && this.formats[styleIndex] != null;
+    }
+
+    /**
+     * Records the format a cell style resolves to.
+     *
+     * @param styleIndex
+     *            the index of the cell style
+     * @param formatIndex
+     *            the index of the data format of the style
+     * @param formatString
+     *            the data format string of the style, null or blank if the
+     *            style has no format
+     * @author abhishek
+     * @since 1.0
+     */
+    public void cache(int styleIndex, int formatIndex, String formatString) {
+        if (styleIndex >= this.formats.length) {
+            this.formats = Arrays.copyOf(this.formats, Math.max(this.formats.length * 2, styleIndex + 1));
+        }
+        if (formatString == null || formatString.trim().length() == 0) {
+            this.formats[styleIndex] = new CachedFormat(0, FormatCache.GENERAL_FORMAT, this.emulateCsv);
+        } else {
+            this.formats[styleIndex] = new CachedFormat(formatIndex, formatString, this.emulateCsv);
+        }
+    }
+
+    /**
+     * Formats a number according to the format of a cell style, which must
+     * already have been cached.
+     *
+     * @param styleIndex
+     *            the index of the cell style
+     * @param value
+     *            the number
+     * @param date1904
+     *            true if dates are counted from 1904 rather than 1900
+     * @return the formatted number
+     * @author abhishek
+     * @since 1.0
+     */
+    public String format(int styleIndex, double value, boolean date1904) {
+        CachedFormat cached = this.formats[styleIndex];
+        Format format = this.resolve(cached, value);
+        if (cached.date && DateUtil.isValidExcelDate(value)) {
+            if (format instanceof ExcelStyleDateFormatter) {
+                // Hint about the raw value, which elapsed times are
+                // rendered from.
+                ((ExcelStyleDateFormatter) format).setDateToBeFormatted(value);
+            }
+            Date date = DateUtil.getJavaDate(value, date1904);
+            return (format == null) ? date.toString() : format.format(date);
+        }
+        return (format == null) ? String.valueOf(value) : format.format(Double.valueOf(value));
+    }
+
+    /**
+     * @return the Format for a number in the format of a style
+     */
+    private Format resolve(CachedFormat cached, double value) {
+        if (value == 0.0) {
+            if (cached.zeroGeneral) {
+                return this.generalWholeNumber;
+            }
+            if (cached.zeroFormat == null) {
+                cached.zeroFormat = this.lookUp(value, cached.zeroString);
+            }
+            return cached.zeroFormat;
+        }
+        if (cached.general) {
+            return (value == Math.floor(value)) ? this.generalWholeNumber : this.generalDecimalNumber;
+        }
+        if (cached.format == null) {
+            cached.format = this.lookUp(value, cached.formatString);
+        }
+        return cached.format;
+    }
+
+    /**
+     * @return the Format already compiled for a format string, or one newly
+     *         compiled for it from the number given
+     */
+    private Format lookUp(double value, String formatString) {
+        if (this.compiled.containsKey(formatString)) {
+            return this.compiled.get(formatString);
+        }
+        Format format = this.compile(value, formatString);
+        this.compiled.put(formatString, format);
+        return format;
+    }
+
+    /**
+     * Has the formatter compile a format string, just as it would for a cell
+     * holding the number given.
+     */
+    private Format compile(double value, String formatString) {
+        if (this.scratch == null) {
+            this.scratch = new HSSFWorkbook();
+            this.scratchCell = this.scratch.createSheet().createRow(0).createCell(0);
+            this.scratchStyles = new HashMap<String, HSSFCellStyle>();
+        }
+        HSSFCellStyle style = this.scratchStyles.get(formatString);
+        if (style == null) {
+            HSSFDataFormat dataFormat = this.scratch.createDataFormat();
+            style = this.scratch.createCellStyle();
+            style.setDataFormat(dataFormat.getFormat(formatString));
+            this.scratchStyles.put(formatString, style);
+        }
+        this.scratchCell.setCellStyle(style);
+        // A cell cannot hold a number that is not finite, but Excel would
+        // not have written one.
+        this.scratchCell.setCellValue((Double.isNaN(value) || Double.isInfinite(value)) ? 0 : value);
+        return this.formatter.createFormat(this.scratchCell);
+    }
+
+    /**
+     * The format of a cell style, split as DataFormatter splits it into the
+     * sections for zero and for every other number, and the Formats of those
+     * sections once they have been resolved.
+     */
+    private static class CachedFormat {
+        private final boolean date;
+        private final String formatString;
+        private final boolean general;
+        private final String zeroString;
+        private final boolean zeroGeneral;
+        private Format format;
+        private Format zeroFormat;
+
+        CachedFormat(int formatIndex, String formatString, boolean emulateCsv) {
+            this.date = DateUtil.isADateFormat(formatIndex, formatString);
+
+            // Excel supports sections for positive, negative and zero numbers
+            // and text, but java.text.Format does not.
+            String nonZero = formatString;
+            String zero = formatString;
+            int firstAt = formatString.indexOf(';');
+            int lastAt = formatString.lastIndexOf(';');
+            if (firstAt != -1 && firstAt != lastAt) {
+                int secondAt = formatString.indexOf(';', firstAt + 1);
+                if (secondAt == lastAt) {
+                    zero = formatString.substring(lastAt + 1);
+                    nonZero = formatString.substring(0, lastAt);
+                } else {
+                    zero = formatString.substring(secondAt + 1, lastAt);
+                    nonZero = formatString.substring(0, secondAt);
+                }
+            }
+            // Excel renders a zero as nothing at all where the format has a
+            // # but no 0.
+            if (emulateCsv && zero.contains("#") && !zero.contains("0")) {
+                zero = zero.replaceAll("#", "");
+            }
+            this.formatString = nonZero;
+            this.general = FormatCache.isGeneral(nonZero);
+            this.zeroString = zero;
+            this.zeroGeneral = FormatCache.isGeneral(zero);
+        }
+    }
+
+    private static boolean isGeneral(String formatString) {
+        return FormatCache.GENERAL_FORMAT.equalsIgnoreCase(formatString)
+            || FormatCache.TEXT_FORMAT.equals(formatString);
+    }
+}
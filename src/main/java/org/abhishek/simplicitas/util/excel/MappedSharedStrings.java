@@ -0,0 +1,211 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A shared strings table kept in a pair of memory mapped temporary files
+ * rather than on the heap. The entries are appended, UTF-8 encoded, to a data
+ * file while an index file records the offset at which each one starts. Once
+ * {@link #finish() finished}, both files are mapped read only and an entry is
+ * decoded from the data file whenever it is looked up, leaving the operating
+ * system to decide how much of the table stays in memory.
+ * <p>
+ * The files are mapped in segments of at most a gigabyte, so tables larger
+ * than a single MappedByteBuffer can address are supported. Entries are added
+ * by a single thread; once finished, lookups may be made from any number of
+ * threads. The files are deleted when the table is closed.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class MappedSharedStrings extends SharedStringsStore {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    private final File dataFile;
+    private final File indexFile;
+    private OutputStream data;
+    private DataOutputStream index;
+    private long position = 0;
+    private int count = 0;
+    private MappedByteBuffer[] dataSegments;
+    private MappedByteBuffer[] indexSegments;
+
+    /**
+     * Creates an empty table, ready for entries to be added.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be created
+     * @author abhishek
+     * @since 1.0
+     */
+    public MappedSharedStrings() throws IOException {
+        // The files are not registered for deletion on exit up front, as the
+        // list of such files is never trimmed and a long lived converter
+        // creates a pair for every large workbook.
+        this.dataFile = File.createTempFile("shared-strings", ".dat");
+        try {
+            this.indexFile = File.createTempFile("shared-strings", ".idx");
+        } catch (IOException ex) {
+            delete(this.dataFile);
+            throw ex;
+        }
+        try {
+            this.data = new BufferedOutputStream(new FileOutputStream(this.dataFile), 64 * 1024);
+            this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.indexFile),
+                64 * 1024));
+        } catch (IOException ex) {
+            this.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends an entry to the table.
+     *
+     * @param entry
+     *            the text of the entry
+     * @throws IOException
+     *             if the entry cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    public void add(String entry) throws IOException {
+        if (this.data == null) {
+            throw new IllegalStateException("No entries can be added to a finished table.");
+        }
+        byte[] bytes = entry.getBytes(UTF_8);
+        this.index.writeLong(this.position);
+        this.data.write(bytes);
+        this.position += bytes.length;
+        this.count++;
+    }
+
+    /**
+     * Completes the files and maps them, ready for the entries to be looked
+     * up.
+     *
+     * @throws IOException
+     *             if the files cannot be written or mapped
+     * @author abhishek
+     * @since 1.0
+     */
+    public void finish() throws IOException {
+        // The offset one beyond the last entry marks where it ends.
+        this.index.writeLong(this.position);
+        this.index.close();
+        this.index = null;
+        this.data.close();
+        this.data = null;
+        this.dataSegments = map(this.dataFile);
+        this.indexSegments = map(this.indexFile);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.SharedStringsStore#getEntryAt(int)
+     */
+    @Override
+    public String getEntryAt(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+        }
+        long start = this.readOffset(index);
+        byte[] bytes = new byte[(int) (this.readOffset(index + 1) - start)];
+        int copied = 0;
+        while (copied < bytes.length) {
+            long offset = start + copied;
+            ByteBuffer segment = this.dataSegments[(int) (offset >>> SEGMENT_SHIFT)].duplicate();
+            segment.position((int) (offset & (SEGMENT_SIZE - 1)));
+            int length = Math.min(bytes.length - copied, segment.remaining());
+            segment.get(bytes, copied, length);
+            copied += length;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.SharedStringsStore#size()
+     */
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Deletes the files. Should the platform refuse to delete a file that is
+     * still mapped, it is deleted when the virtual machine exits instead.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.SharedStringsStore#close()
+     */
+    @Override
+    public void close() {
+        try {
+            if (this.data != null) {
+                this.data.close();
+            }
+            if (this.index != null) {
+                this.index.close();
+            }
+        } catch (IOException ex) {
+            // The files are about to be deleted.
+        }
+        this.dataSegments = null;
+        this.indexSegments = null;
+        delete(this.dataFile);
+        delete(this.indexFile);
+    }
+
+    /**
+     * Deletes a file now or, should that fail, when the virtual machine
+     * exits.
+     */
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private long readOffset(int index) {
+        long offset = (long) index * 8;
+        return this.indexSegments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Maps the whole of a file, a segment at a time. Offsets in the index
+     * file are eight bytes long and the segment size a multiple of eight, so
+     * no offset straddles two segments.
+     */
+    private static MappedByteBuffer[] map(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            return segments;
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the bytes written to it on several threads at once, in the
+ * manner of pigz. The stream is cut into blocks of a fixed size; each block is
+ * deflated by a worker into a complete gzip member of its own and the members
+ * are written to the underlying channel in the order the blocks were cut. The
+ * result is a valid multi-member gzip file, which gunzip and
+ * java.util.zip.GZIPInputStream read back as one stream.
+ * <p>
+ * The workers are either a pool of the channel's own or the
+ * {@link #sharedExecutor() shared} pool, which has one thread per processor
+ * however many files are being compressed at the same time, so that files
+ * converted side by side do not each bring a pool of their own. Only a
+ * bounded number of blocks are ever in flight, and the blocks, together with
+ * the buffer and Deflater each is compressed with, are reused once their
+ * members have been written, so the memory used does not depend upon the
+ * amount of data written. Instances are not thread safe; a single thread
+ * writes while the workers compress.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class ParallelGzipChannel implements WritableByteChannel {
+    /** The size of the blocks compressed independently, unless specified. */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static ExecutorService sharedExecutor = null;
+
+    private final WritableByteChannel channel;
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int blockSize;
+    private final int maxPending;
+    private final Deque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+    private final Deque<Block> free = new ArrayDeque<Block>();
+    private Block block;
+    private boolean blockWritten = false;
+    private boolean open = true;
+
+    /**
+     * Compresses on a pool of threads of the channel's own, shut down when
+     * it is closed.
+     *
+     * @param channel
+     *            the channel the compressed members are written to; it is
+     *            closed along with this channel
+     * @param threads
+     *            the number of blocks compressed at the same time
+     * @param blockSize
+     *            the number of bytes compressed into each member
+     * @author abhishek
+     * @since 1.0
+     */
+    public ParallelGzipChannel(WritableByteChannel channel, int threads, int blockSize) {
+        this(channel, ParallelGzipChannel.newExecutor(threads), true, threads, blockSize);
+    }
+
+    /**
+     * Compresses on a pool of threads that may be shared with other channels
+     * and is left running when this one is closed.
+     *
+     * @param channel
+     *            the channel the compressed members are written to; it is
+     *            closed along with this channel
+     * @param executor
+     *            compresses the blocks
+     * @param blocks
+     *            the number of blocks handed to the executor at the same
+     *            time
+     * @param blockSize
+     *            the number of bytes compressed into each member
+     * @author abhishek
+     * @since 1.0
+     */
+    public ParallelGzipChannel(WritableByteChannel channel, ExecutorService executor, int blocks, int blockSize) {
+        this(channel, executor, false, blocks, blockSize);
+    }
+
+    private ParallelGzipChannel(WritableByteChannel channel, ExecutorService executor, boolean ownExecutor,
+        int blocks, int blockSize) {
+        if (executor == null) {
+            throw new IllegalArgumentException("An executor is required.");
+        }
+        if (blocks < 1) {
+            throw new IllegalArgumentException("At least one block must be compressed at a time.");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive.");
+        }
+        this.channel = channel;
+        this.out = Channels.newOutputStream(channel);
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.blockSize = blockSize;
+        this.maxPending = blocks * 2;
+        this.block = new Block(blockSize);
+    }
+
+    /**
+     * @return the pool, of one daemon thread per available processor, that
+     *         every channel given it compresses on
+     * @author abhishek
+     * @since 1.0
+     */
+    public static synchronized ExecutorService sharedExecutor() {
+        if (ParallelGzipChannel.sharedExecutor == null) {
+            ParallelGzipChannel.sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+                .availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "gzip-" + this.count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return ParallelGzipChannel.sharedExecutor;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!this.open) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            if (this.block == null) {
+                this.block = this.free.isEmpty() ? new Block(this.blockSize) : this.free.poll();
+                this.block.length = 0;
+            }
+            int count = Math.min(src.remaining(), this.blockSize - this.block.length);
+            src.get(this.block.data, this.block.length, count);
+            this.block.length += count;
+            if (this.block.length == this.blockSize) {
+                this.submitBlock();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * Compresses the last, partial, block, waits for every member to be
+     * written and closes the underlying channel. Should nothing have been
+     * written at all, a single empty member is, so the file is still valid.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.open) {
+            return;
+        }
+        this.open = false;
+        try {
+            if (this.block != null && (this.block.length > 0 || !this.blockWritten)) {
+                this.submitBlock();
+            }
+            while (!this.pending.isEmpty()) {
+                this.writeOldest();
+            }
+        } finally {
+            // Blocks still in flight after a failure are abandoned to the
+            // garbage collector, as a worker may yet be deflating them.
+            for (Future<Block> member : this.pending) {
+                member.cancel(true);
+            }
+            for (Block unused : this.free) {
+                unused.deflater.end();
+            }
+            if (this.block != null) {
+                this.block.deflater.end();
+            }
+            if (this.ownExecutor) {
+                this.executor.shutdownNow();
+            }
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Hands the current block to a worker, first writing away the oldest
+     * member should too many be in flight. A free block is taken up once
+     * there is more to write.
+     */
+    private void submitBlock() throws IOException {
+        while (this.pending.size() >= this.maxPending) {
+            this.writeOldest();
+        }
+        this.pending.add(this.executor.submit(this.block));
+        this.blockWritten = true;
+        this.block = null;
+    }
+
+    private void writeOldest() throws IOException {
+        Block done = null;
+        try {
+            done = this.pending.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst compressing");
+        } catch (ExecutionException ex) {
+            throw new IOException("Compression failed: " + ex.getCause().getMessage(), ex.getCause());
+        }
+        done.member.writeTo(this.out);
+        this.free.add(done);
+    }
+
+    /**
+     * A block of the stream and the means to compress it into a complete
+     * gzip member, laid out as java.util.zip.GZIPOutputStream lays it out.
+     */
+    private static class Block implements Callable<Block> {
+        private static final byte[] HEADER = new byte[] {
+            (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+        };
+
+        private final byte[] data;
+        private int length = 0;
+        private final ByteArrayOutputStream member;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[64 * 1024];
+
+        Block(int size) {
+            this.data = new byte[size];
+            this.member = new ByteArrayOutputStream(size / 2 + 64);
+        }
+
+        @Override
+        public Block call() {
+            this.member.reset();
+            this.member.write(Block.HEADER, 0, Block.HEADER.length);
+            this.deflater.reset();
+            this.deflater.setInput(this.data, 0, this.length);
+            this.deflater.finish();
+            while (!this.deflater.finished()) {
+                this.member.write(this.buffer, 0, this.deflater.deflate(this.buffer));
+            }
+            this.crc.reset();
+            this.crc.update(this.data, 0, this.length);
+            this.writeInt((int) this.crc.getValue());
+            this.writeInt(this.length);
+            return this;
+        }
+
+        /**
+         * Writes an integer in little endian byte order.
+         */
+        private void writeInt(int value) {
+            for (int i = 0; i < 4; i++) {
+                this.member.write(value >>> (8 * i));
+            }
+        }
+    }
+}
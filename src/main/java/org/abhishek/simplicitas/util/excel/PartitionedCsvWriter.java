@@ -0,0 +1,229 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes the lines of a CSV file into a series of part files, moving on to a
+ * new part once the current one holds a given number of rows or bytes, so
+ * that the output can be loaded by several threads at once. Each part is a
+ * CSV file in its own right; should the header be repeated, every part after
+ * the first starts with a copy of the very first row written.
+ * <p>
+ * A manifest lists the parts. A line is appended, and flushed, as soon as a
+ * part has been closed, so a loader may pick each part up whilst the next is
+ * still being written. Every line holds the name of the part file, the zero
+ * based indexes of the first and last rows it holds - counting the rows
+ * handed to {@link #writeRow(List)}, so the rows of the parts join up without
+ * gaps - the number of those rows and the size of the part in bytes, before
+ * any compression, separated by tabs. The manifest ends with a line reading
+ * <em># complete</em> once the last part is closed.
+ * <p>
+ * Rows are never split; a part grows beyond the byte limit by at most the
+ * last row written to it. Instances are not thread safe.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class PartitionedCsvWriter extends CsvRowWriter {
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String MANIFEST_COMPLETE = "# complete";
+
+    private final Parts parts;
+    private final long maxRows;
+    private final long maxBytes;
+    private final boolean repeatHeader;
+    private final Writer manifest;
+    private final List<File> files = new ArrayList<File>();
+    private ChannelWriter current;
+    private int partNumber = 0;
+    private long partFirstRow = 0;
+    private long partRows = 0;
+    private List<String> header = null;
+    private boolean closed = false;
+
+    /**
+     * Opens the part files of a single CSV file as they are needed.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    public interface Parts {
+
+        /**
+         * @param partNumber
+         *            the number of the part, starting from one
+         * @return the file the part is written to
+         * @author abhishek
+         * @since 1.0
+         */
+        File getFile(int partNumber);
+
+        /**
+         * Creates, or truncates, the file of a part and opens a writer onto
+         * it.
+         *
+         * @param partNumber
+         *            the number of the part, starting from one
+         * @return the writer
+         * @throws IOException
+         *             if the file cannot be opened
+         * @author abhishek
+         * @since 1.0
+         */
+        ChannelWriter open(int partNumber) throws IOException;
+    }
+
+    /**
+     * Opens the first part.
+     *
+     * @param parts
+     *            opens the part files
+     * @param manifest
+     *            the writer the manifest is written to; closed along with
+     *            this writer
+     * @param separator
+     *            the character or characters used to separate fields
+     * @param formattingConvention
+     *            either {@link #EXCEL_STYLE_ESCAPING} or
+     *            {@link #UNIX_STYLE_ESCAPING}
+     * @param rowWidth
+     *            the number of fields every line is padded to
+     * @param maxRows
+     *            the number of rows after which a new part is started, not
+     *            counting a repeated header; zero for no limit
+     * @param maxBytes
+     *            the number of bytes after which a new part is started; zero
+     *            for no limit
+     * @param repeatHeader
+     *            true to start every part with the first row written
+     * @throws IOException
+     *             if the first part cannot be opened
+     * @author abhishek
+     * @since 1.0
+     */
+    public PartitionedCsvWriter(Parts parts, Writer manifest, String separator, int formattingConvention,
+        int rowWidth, long maxRows, long maxBytes, boolean repeatHeader) throws IOException {
+        this(parts, parts.open(1), manifest, separator, formattingConvention, rowWidth, maxRows, maxBytes,
+            repeatHeader);
+    }
+
+    private PartitionedCsvWriter(Parts parts, ChannelWriter first, Writer manifest, String separator,
+        int formattingConvention, int rowWidth, long maxRows, long maxBytes, boolean repeatHeader)
+        throws IOException {
+        super(first, separator, formattingConvention, rowWidth);
+        if (maxRows < 0 || maxBytes < 0) {
+            first.close();
+            throw new IllegalArgumentException("The size of a part cannot be negative.");
+        }
+        this.current = first;
+        this.parts = parts;
+        this.manifest = manifest;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.repeatHeader = repeatHeader;
+        this.partNumber = 1;
+        this.manifest.write("# part" + FIELD_SEPARATOR + "first row" + FIELD_SEPARATOR + "last row"
+            + FIELD_SEPARATOR + "rows" + FIELD_SEPARATOR + "bytes\n");
+        this.manifest.flush();
+    }
+
+    /**
+     * Writes the row away, first moving on to a new part should the current
+     * one be full.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.CsvRowWriter#writeRow(java.util.List)
+     */
+    @Override
+    public void writeRow(List<String> line) throws IOException {
+        if (this.isFull()) {
+            this.closePart();
+            this.openPart();
+        }
+        super.writeRow(line);
+        if (this.repeatHeader && this.header == null) {
+            this.header = new ArrayList<String>(line);
+        } else {
+            this.partRows++;
+        }
+    }
+
+    /**
+     * @return the part files written so far, in order; once the writer is
+     *         closed, every part file
+     * @author abhishek
+     * @since 1.0
+     */
+    public List<File> getFiles() {
+        return Collections.unmodifiableList(this.files);
+    }
+
+    /**
+     * Closes the last part and completes the manifest.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.CsvRowWriter#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.closePart();
+            this.manifest.write(MANIFEST_COMPLETE + "\n");
+        } finally {
+            this.manifest.close();
+            this.publishMetrics();
+        }
+    }
+
+    private boolean isFull() throws IOException {
+        if (this.partRows == 0) {
+            return false;
+        }
+        if (this.maxRows > 0 && this.partRows >= this.maxRows) {
+            return true;
+        }
+        return this.maxBytes > 0 && this.current.getByteCount() >= this.maxBytes;
+    }
+
+    /**
+     * Closes the current part and lists it in the manifest.
+     */
+    private void closePart() throws IOException {
+        long bytes = this.current.getByteCount();
+        this.current.close();
+        File file = this.parts.getFile(this.partNumber);
+        this.files.add(file);
+        this.manifest.write(file.getName() + FIELD_SEPARATOR + this.partFirstRow + FIELD_SEPARATOR
+            + (this.getRowCount() - 1) + FIELD_SEPARATOR + (this.getRowCount() - this.partFirstRow)
+            + FIELD_SEPARATOR + bytes + "\n");
+        this.manifest.flush();
+    }
+
+    /**
+     * Opens the next part, starting it with the header should it be
+     * repeated.
+     */
+    private void openPart() throws IOException {
+        this.partNumber++;
+        this.current = this.parts.open(this.partNumber);
+        this.setWriter(this.current);
+        this.partFirstRow = this.getRowCount();
+        this.partRows = 0;
+        if (this.header != null) {
+            this.writeLine(this.header);
+        }
+    }
+}
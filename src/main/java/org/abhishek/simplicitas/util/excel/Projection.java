@@ -0,0 +1,481 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Narrows a conversion down to some of the sheets, rows and columns of a
+ * workbook. The readers consult the projection as they parse, so that cells
+ * falling outside it are never formatted - nor, where the format allows,
+ * even parsed - and the cost of a narrow extract follows the size of the
+ * extract rather than that of the workbook.
+ * <p>
+ * Sheets are selected by name or by zero based index; with none selected,
+ * every sheet is. Rows are selected as a single, inclusive, zero based range
+ * applying to every sheet. Columns are selected by zero based index or by
+ * the text of their header - the cell in the first row of the range - and
+ * are written in the order they were selected in. A projection must not be
+ * changed whilst it is being applied; converters that run on several threads
+ * apply a {@link #copy() copy} taken when they were configured.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class Projection {
+    private final List<String> sheetNames = new ArrayList<String>();
+    private final List<Integer> sheetIndexes = new ArrayList<Integer>();
+    private final List<Object> columns = new ArrayList<Object>();
+    private int firstRow = 0;
+    private int lastRow = Integer.MAX_VALUE;
+
+    /**
+     * Selects a sheet by name.
+     *
+     * @param name
+     *            the name of the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectSheet(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("A sheet name is required.");
+        }
+        this.sheetNames.add(name);
+    }
+
+    /**
+     * Selects a sheet by position.
+     *
+     * @param index
+     *            the zero based index of the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectSheet(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("The sheet index cannot be negative.");
+        }
+        this.sheetIndexes.add(index);
+    }
+
+    /**
+     * Selects a column by position.
+     *
+     * @param index
+     *            the zero based index of the column
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectColumn(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("The column index cannot be negative.");
+        }
+        this.columns.add(index);
+    }
+
+    /**
+     * Selects a column by the text of its header, the cell in the first row
+     * of the selected range.
+     *
+     * @param header
+     *            the text of the header
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectColumn(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("A column header is required.");
+        }
+        this.columns.add(header);
+    }
+
+    /**
+     * Selects a range of rows of every sheet.
+     *
+     * @param first
+     *            the zero based index of the first row
+     * @param last
+     *            the zero based index of the last row, inclusive
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectRows(int first, int last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException("The row range " + first + "-" + last + " is invalid.");
+        }
+        this.firstRow = first;
+        this.lastRow = last;
+    }
+
+    /**
+     * @return true if the projection selects the whole of the workbook
+     * @author abhishek
+     * @since 1.0
+     */
+    public boolean isEverything() {
+        return this.sheetNames.isEmpty() && this.sheetIndexes.isEmpty() && this.columns.isEmpty()
+            && this.firstRow == 0 && this.lastRow == Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true if only some of the columns are selected
+     * @author abhishek
+     * @since 1.0
+     */
+    public boolean hasColumns() {
+        return !this.columns.isEmpty();
+    }
+
+    /**
+     * @return the number of columns selected, and so the width of every line
+     *         written; zero if every column is
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getColumnCount() {
+        return this.columns.size();
+    }
+
+    /**
+     * @return the zero based index of the first row selected
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getFirstRow() {
+        return this.firstRow;
+    }
+
+    /**
+     * @return the zero based index of the last row selected, inclusive
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getLastRow() {
+        return this.lastRow;
+    }
+
+    /**
+     * @param index
+     *            the zero based index of a sheet
+     * @param name
+     *            the name of the sheet
+     * @return true if the sheet is selected
+     * @author abhishek
+     * @since 1.0
+     */
+    public boolean selectsSheet(int index, String name) {
+        if (this.sheetNames.isEmpty() && this.sheetIndexes.isEmpty()) {
+            return true;
+        }
+        return this.sheetIndexes.contains(index) || this.sheetNames.contains(name);
+    }
+
+    /**
+     * Begins the projection of a sheet.
+     *
+     * @param index
+     *            the zero based index of the sheet
+     * @param name
+     *            the name of the sheet
+     * @return the projection of the sheet, or null if the sheet is not
+     *         selected
+     * @author abhishek
+     * @since 1.0
+     */
+    public SheetProjection startSheet(int index, String name) {
+        return this.selectsSheet(index, name) ? new SheetProjection(name) : null;
+    }
+
+    /**
+     * Parses the sheets selected on the command line; a comma separated list
+     * of names and indexes. An entry made up of digits alone is taken to be
+     * an index.
+     *
+     * @param sheets
+     *            the list of sheets
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectSheets(String sheets) {
+        for (String sheet : sheets.split(",")) {
+            if (isIndex(sheet)) {
+                this.selectSheet(Integer.parseInt(sheet));
+            } else {
+                this.selectSheet(sheet);
+            }
+        }
+    }
+
+    /**
+     * Parses the columns selected on the command line; a comma separated list
+     * of headers and indexes. An entry made up of digits alone is taken to be
+     * an index.
+     *
+     * @param columns
+     *            the list of columns
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectColumns(String columns) {
+        for (String column : columns.split(",")) {
+            if (isIndex(column)) {
+                this.selectColumn(Integer.parseInt(column));
+            } else {
+                this.selectColumn(column);
+            }
+        }
+    }
+
+    /**
+     * Parses the rows selected on the command line; FIRST-LAST, either of
+     * which may be omitted to select from the first row or to the last.
+     *
+     * @param rows
+     *            the range of rows
+     * @author abhishek
+     * @since 1.0
+     */
+    public void selectRows(String rows) {
+        int hyphen = rows.indexOf('-');
+        if (hyphen < 0) {
+            throw new IllegalArgumentException("The row range [" + rows + "] should read FIRST-LAST.");
+        }
+        String first = rows.substring(0, hyphen).trim();
+        String last = rows.substring(hyphen + 1).trim();
+        this.selectRows((first.length() == 0) ? 0 : Integer.parseInt(first), (last.length() == 0) ? Integer.MAX_VALUE
+            : Integer.parseInt(last));
+    }
+
+    /**
+     * @return a projection selecting the same sheets, rows and columns, which
+     *         later changes to this one leave untouched
+     * @author abhishek
+     * @since 1.0
+     */
+    public Projection copy() {
+        Projection copy = new Projection();
+        copy.sheetNames.addAll(this.sheetNames);
+        copy.sheetIndexes.addAll(this.sheetIndexes);
+        copy.columns.addAll(this.columns);
+        copy.firstRow = this.firstRow;
+        copy.lastRow = this.lastRow;
+        return copy;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "sheets=" + this.sheetNames + this.sheetIndexes + ",columns=" + this.columns + ",rows="
+            + this.firstRow + "-" + this.lastRow;
+    }
+
+    private static boolean isIndex(String text) {
+        if (text.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The projection of a single sheet. Columns selected by header are
+     * resolved to positions once the header row has been read; until then
+     * every cell of the header row is wanted.
+     *
+     * @author abhishek
+     * @since 1.0
+     */
+    public class SheetProjection {
+        private final String sheetName;
+        private int[] columnIndexes;
+        private boolean[] wanted;
+
+        SheetProjection(String sheetName) {
+            this.sheetName = sheetName;
+            if (!Projection.this.columns.isEmpty()) {
+                List<Integer> indexes = new ArrayList<Integer>();
+                for (Object column : Projection.this.columns) {
+                    if (!(column instanceof Integer)) {
+                        return;
+                    }
+                    indexes.add((Integer) column);
+                }
+                this.resolve(indexes);
+            }
+        }
+
+        /**
+         * @return true if the positions of the columns selected by header are
+         *         not yet known
+         * @author abhishek
+         * @since 1.0
+         */
+        public boolean isHeaderPending() {
+            return !Projection.this.columns.isEmpty() && this.columnIndexes == null;
+        }
+
+        /**
+         * @return the zero based index of the row holding the column headers
+         * @author abhishek
+         * @since 1.0
+         */
+        public int getHeaderRow() {
+            return Projection.this.firstRow;
+        }
+
+        /**
+         * Resolves the columns selected by header against the cells of the
+         * header row.
+         *
+         * @param headerCells
+         *            the formatted cells of the header row
+         * @throws IOException
+         *             if a header cannot be found
+         * @author abhishek
+         * @since 1.0
+         */
+        public void resolveHeader(List<String> headerCells) throws IOException {
+            List<Integer> indexes = new ArrayList<Integer>();
+            for (Object column : Projection.this.columns) {
+                if (column instanceof Integer) {
+                    indexes.add((Integer) column);
+                } else {
+                    int index = headerCells.indexOf(column);
+                    if (index < 0) {
+                        throw new IOException("The sheet [" + this.sheetName + "] has no column headed [" + column
+                            + "].");
+                    }
+                    indexes.add(index);
+                }
+            }
+            this.resolve(indexes);
+        }
+
+        private void resolve(List<Integer> indexes) {
+            this.columnIndexes = new int[indexes.size()];
+            int width = 0;
+            for (int i = 0; i < this.columnIndexes.length; i++) {
+                this.columnIndexes[i] = indexes.get(i);
+                width = Math.max(width, this.columnIndexes[i] + 1);
+            }
+            this.wanted = new boolean[width];
+            for (int index : this.columnIndexes) {
+                this.wanted[index] = true;
+            }
+        }
+
+        /**
+         * @param row
+         *            the zero based index of a row
+         * @return true if the row is selected
+         * @author abhishek
+         * @since 1.0
+         */
+        public boolean wantsRow(int row) {
+            return row >= Projection.this.firstRow && row <= Projection.this.lastRow;
+        }
+
+        /**
+         * @param row
+         *            the zero based index of a row
+         * @return true if the row, and every row after it, lies beyond the
+         *         selected range
+         * @author abhishek
+         * @since 1.0
+         */
+        public boolean isPastLastRow(int row) {
+            return row > Projection.this.lastRow;
+        }
+
+        /**
+         * @param row
+         *            the zero based index of the row of a cell
+         * @param column
+         *            the zero based index of the column of the cell
+         * @return true if the cell has to be formatted
+         * @author abhishek
+         * @since 1.0
+         */
+        public boolean wantsCell(int row, int column) {
+            if (!this.wantsRow(row)) {
+                return false;
+            }
+            if (Projection.this.columns.isEmpty() || this.isHeaderPending()) {
+                return true;
+            }
+            return column < this.wanted.length && this.wanted[column];
+        }
+
+        /**
+         * @return the zero based indexes of the selected columns, in the order
+         *         they are written, or null if every column is selected; only
+         *         known once the header has been resolved
+         * @author abhishek
+         * @since 1.0
+         */
+        public int[] getColumnIndexes() {
+            return this.columnIndexes;
+        }
+
+        /**
+         * Picks the selected columns out of the cells of a row.
+         *
+         * @param cells
+         *            the formatted cells of the row, by position
+         * @return the cells of the selected columns, in order
+         * @author abhishek
+         * @since 1.0
+         */
+        public List<String> project(List<String> cells) {
+            if (this.columnIndexes == null) {
+                return cells;
+            }
+            if (this.columnIndexes.length == 0) {
+                return Collections.emptyList();
+            }
+            List<String> projected = new ArrayList<String>(this.columnIndexes.length);
+            for (int index : this.columnIndexes) {
+                projected.add((index < cells.size()) ? cells.get(index) : "");
+            }
+            return projected;
+        }
+
+        /**
+         * Hands a row over to the handler, provided it is selected, narrowed
+         * down to the selected columns. The columns selected by header are
+         * resolved against the first row selected.
+         *
+         * @param handler
+         *            the receiver of the rows
+         * @param rowIndex
+         *            the zero based index of the row
+         * @param cells
+         *            the formatted cells of the row, by position
+         * @throws IOException
+         *             if a header cannot be found or the handler fails
+         * @author abhishek
+         * @since 1.0
+         */
+        public void row(RowHandler handler, int rowIndex, List<String> cells) throws IOException {
+            if (!this.wantsRow(rowIndex)) {
+                return;
+            }
+            if (this.isHeaderPending()) {
+                this.resolveHeader(cells);
+            }
+            handler.row(rowIndex, this.project(cells));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the rows recovered from an Excel workbook, one at a time and in
+ * workbook order, as they are parsed by one of the streaming readers.
+ * <p>
+ * Rows that are missing from a sheet - blank rows lying between populated
+ * ones - are delivered as empty lists so that the receiver sees exactly the
+ * same sequence of rows as the user model based conversion would produce.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public interface RowHandler {
+
+    /**
+     * Called before the first row of a sheet is delivered.
+     *
+     * @param sheetIndex
+     *            zero based index of the sheet within the workbook
+     * @param sheetName
+     *            the name of the sheet
+     * @throws IOException
+     *             if the receiver fails to process the event
+     * @author abhishek
+     * @since 1.0
+     */
+    void startSheet(int sheetIndex, String sheetName) throws IOException;
+
+    /**
+     * Called once for every row of the sheet, including missing rows.
+     * <p>
+     * The list holds the formatted contents of the cells of the row, an empty
+     * String standing in for every missing cell. It is only valid for the
+     * duration of the call; readers are free to reuse it for the next row.
+     *
+     * @param rowIndex
+     *            zero based index of the row within the sheet
+     * @param cells
+     *            the formatted cell values
+     * @throws IOException
+     *             if the receiver fails to process the row
+     * @author abhishek
+     * @since 1.0
+     */
+    void row(int rowIndex, List<String> cells) throws IOException;
+
+    /**
+     * Called after the last row of a sheet has been delivered.
+     *
+     * @param sheetIndex
+     *            zero based index of the sheet within the workbook
+     * @throws IOException
+     *             if the receiver fails to process the event
+     * @author abhishek
+     * @since 1.0
+     */
+    void endSheet(int sheetIndex) throws IOException;
+}
@@ -0,0 +1,206 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The shared strings table of a SpreadsheetML workbook, as read by the
+ * streaming reader. Every string cell of a sheet refers to an entry of this
+ * table by its index.
+ * <p>
+ * A modest table is simply held on the heap, just as POI's
+ * ReadOnlySharedStringsTable holds it. Once the text of the entries read so
+ * far reaches a threshold, every entry is instead moved into a
+ * {@link MappedSharedStrings} file and decoded afresh on each lookup, so that
+ * tables with tens of millions of entries no longer have to fit on the heap.
+ * The entries recovered are the same either way.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public abstract class SharedStringsStore implements Closeable {
+    /**
+     * The number of characters of shared strings at which, unless specified,
+     * the table is moved from the heap into a memory mapped file.
+     */
+    public static final long DEFAULT_THRESHOLD = 16L * 1024 * 1024;
+
+    /**
+     * Reads the shared strings table of a workbook.
+     *
+     * @param pkg
+     *            the workbook package
+     * @param threshold
+     *            the number of characters of text at which the table is
+     *            moved from the heap into a memory mapped file; zero to map
+     *            any table with entries
+     * @return the table, empty if the workbook has none
+     * @throws IOException
+     *             if the table cannot be read or parsed, or the mapped file
+     *             cannot be written
+     * @author abhishek
+     * @since 1.0
+     */
+    public static SharedStringsStore load(OPCPackage pkg, long threshold) throws IOException {
+        Loader loader = new Loader(threshold);
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        try {
+            if (!parts.isEmpty()) {
+                InputStream part = parts.get(0).getInputStream();
+                try {
+                    XlsxStreamingReader.parse(part, loader);
+                } finally {
+                    part.close();
+                }
+            }
+            return loader.finish();
+        } catch (IOException ex) {
+            loader.abandon();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param index
+     *            the index of an entry
+     * @return the text of the entry
+     * @throws IndexOutOfBoundsException
+     *             if there is no such entry
+     * @author abhishek
+     * @since 1.0
+     */
+    public abstract String getEntryAt(int index);
+
+    /**
+     * @return the number of entries
+     * @author abhishek
+     * @since 1.0
+     */
+    public abstract int size();
+
+    /**
+     * Releases whatever holds the entries.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public abstract void close();
+
+    /**
+     * A table held on the heap.
+     */
+    private static class HeapSharedStrings extends SharedStringsStore {
+        private final List<String> entries;
+
+        HeapSharedStrings(List<String> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public String getEntryAt(int index) {
+            return this.entries.get(index);
+        }
+
+        @Override
+        public int size() {
+            return this.entries.size();
+        }
+
+        @Override
+        public void close() {
+            // Left to the garbage collector.
+        }
+    }
+
+    /**
+     * Collects the entries of the <em>sst</em> part, moving them into a
+     * mapped file once there are too many. The text of an entry is that of
+     * all of its <em>t</em> elements, exactly as ReadOnlySharedStringsTable
+     * recovers it.
+     */
+    private static class Loader extends DefaultHandler {
+        private final long threshold;
+        private final StringBuilder characters = new StringBuilder();
+        private List<String> entries = new ArrayList<String>();
+        private long heldCharacters = 0;
+        private MappedSharedStrings mapped = null;
+        private boolean textOpen = false;
+
+        Loader(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes) {
+            if ("si".equals(name)) {
+                this.characters.setLength(0);
+            } else if ("t".equals(name)) {
+                this.textOpen = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            if ("t".equals(name)) {
+                this.textOpen = false;
+            } else if ("si".equals(name)) {
+                try {
+                    this.add(this.characters.toString());
+                } catch (IOException ex) {
+                    throw new SAXException(ex);
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (this.textOpen) {
+                this.characters.append(ch, start, length);
+            }
+        }
+
+        private void add(String entry) throws IOException {
+            if (this.mapped != null) {
+                this.mapped.add(entry);
+                return;
+            }
+            this.entries.add(entry);
+            this.heldCharacters += entry.length();
+            if (this.heldCharacters >= this.threshold) {
+                this.mapped = new MappedSharedStrings();
+                for (String held : this.entries) {
+                    this.mapped.add(held);
+                }
+                this.entries = null;
+            }
+        }
+
+        SharedStringsStore finish() throws IOException {
+            if (this.mapped == null) {
+                return new HeapSharedStrings(this.entries);
+            }
+            this.mapped.finish();
+            return this.mapped;
+        }
+
+        void abandon() {
+            if (this.mapped != null) {
+                this.mapped.close();
+            }
+        }
+    }
+}
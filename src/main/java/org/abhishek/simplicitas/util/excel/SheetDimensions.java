@@ -0,0 +1,153 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+/**
+ * The name of a sheet and the extent of the cells it declares, as recorded by
+ * the application that wrote the workbook - the DIMENSIONS record of a binary
+ * sheet or the <em>dimension</em> element of a SpreadsheetML one. Rows and
+ * columns are zero based; the last row and column are exclusive, so the
+ * dimensions of a sheet whose only cell is B3 run from row 2 to row 3 and
+ * from column 1 to column 2.
+ * <p>
+ * Declared dimensions are only as reliable as the application that wrote the
+ * workbook; some understate them and some omit them altogether.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class SheetDimensions {
+    private final String sheetName;
+    private final boolean declared;
+    private final int firstRow;
+    private final int lastRow;
+    private final int firstColumn;
+    private final int lastColumn;
+
+    /**
+     * @param sheetName
+     *            the name of the sheet
+     * @param firstRow
+     *            the first row holding cells
+     * @param lastRow
+     *            one beyond the last row holding cells
+     * @param firstColumn
+     *            the first column holding cells
+     * @param lastColumn
+     *            one beyond the last column holding cells
+     * @author abhishek
+     * @since 1.0
+     */
+    public SheetDimensions(String sheetName, int firstRow, int lastRow, int firstColumn, int lastColumn) {
+        this(sheetName, true, firstRow, lastRow, firstColumn, lastColumn);
+    }
+
+    private SheetDimensions(String sheetName, boolean declared, int firstRow, int lastRow, int firstColumn,
+        int lastColumn) {
+        this.sheetName = sheetName;
+        this.declared = declared;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.firstColumn = firstColumn;
+        this.lastColumn = lastColumn;
+    }
+
+    /**
+     * @param sheetName
+     *            the name of the sheet
+     * @return the dimensions of a sheet that declares none
+     * @author abhishek
+     * @since 1.0
+     */
+    public static SheetDimensions undeclared(String sheetName) {
+        return new SheetDimensions(sheetName, false, 0, 0, 0, 0);
+    }
+
+    /**
+     * @return the name of the sheet
+     * @author abhishek
+     * @since 1.0
+     */
+    public String getSheetName() {
+        return this.sheetName;
+    }
+
+    /**
+     * @return true if the sheet declares its dimensions; if not, every other
+     *         figure is zero
+     * @author abhishek
+     * @since 1.0
+     */
+    public boolean isDeclared() {
+        return this.declared;
+    }
+
+    /**
+     * @return the first row holding cells
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getFirstRow() {
+        return this.firstRow;
+    }
+
+    /**
+     * @return one beyond the last row holding cells; the number of lines the
+     *         sheet contributes to a CSV file
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getLastRow() {
+        return this.lastRow;
+    }
+
+    /**
+     * @return the first column holding cells
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getFirstColumn() {
+        return this.firstColumn;
+    }
+
+    /**
+     * @return one beyond the last column holding cells; the number of fields
+     *         the widest row of the sheet contributes to a CSV file
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getLastColumn() {
+        return this.lastColumn;
+    }
+
+    /**
+     * @return the number of rows from the first to the last holding cells
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getRowCount() {
+        return this.lastRow - this.firstRow;
+    }
+
+    /**
+     * @return the number of columns from the first to the last holding cells
+     * @author abhishek
+     * @since 1.0
+     */
+    public int getColumnCount() {
+        return this.lastColumn - this.firstColumn;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        if (!this.declared) {
+            return this.sheetName + " [undeclared]";
+        }
+        return this.sheetName + " [" + this.getRowCount() + " rows x " + this.getColumnCount() + " columns]";
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Base class for the readers that recover the rows of an Excel workbook
+ * without building the POI user model, so that the memory they require does
+ * not grow with the size of the workbook.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public abstract class StreamingWorkbookReader implements Closeable {
+    private Projection projection = new Projection();
+    private long formulaCellCount = 0;
+
+    /**
+     * Opens a streaming reader suited to the format of the workbook, as
+     * indicated by the extension of its name.
+     *
+     * @param file
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @return the reader
+     * @throws IOException
+     *             if the workbook cannot be opened
+     * @author abhishek
+     * @since 1.0
+     */
+    public static StreamingWorkbookReader open(File file) throws IOException {
+        return open(file, SharedStringsStore.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Opens a streaming reader suited to the format of the workbook, as
+     * indicated by the extension of its name.
+     *
+     * @param file
+     *            either a binary (.xls) or a SpreadsheetML (.xlsx) workbook
+     * @param sharedStringsThreshold
+     *            the number of characters of shared strings at which a
+     *            SpreadsheetML reader moves them from the heap into a memory
+     *            mapped file
+     * @return the reader
+     * @throws IOException
+     *             if the workbook cannot be opened
+     * @author abhishek
+     * @since 1.0
+     */
+    public static StreamingWorkbookReader open(File file, long sharedStringsThreshold) throws IOException {
+        if (file.getName().endsWith(".xlsx")) {
+            return new XlsxStreamingReader(file, sharedStringsThreshold);
+        }
+        return new XlsStreamingReader(file);
+    }
+
+    /**
+     * Narrows the rows read, and those measured by {@link #scanMaxRowWidth()},
+     * down to some of the sheets, rows and columns of the workbook. Cells
+     * outside the projection are never formatted.
+     *
+     * @param projection
+     *            the sheets, rows and columns to read
+     * @author abhishek
+     * @since 1.0
+     */
+    public void setProjection(Projection projection) {
+        if (projection == null) {
+            throw new IllegalArgumentException("A projection is required.");
+        }
+        this.projection = projection;
+    }
+
+    /**
+     * @return the sheets, rows and columns to read
+     * @author abhishek
+     * @since 1.0
+     */
+    public Projection getProjection() {
+        return this.projection;
+    }
+
+    /**
+     * Makes a first, light, pass over every selected sheet to discover the width of the
+     * widest row in the workbook - the number of fields every line of the CSV
+     * file has to be padded to. No cell is formatted during this pass.
+     *
+     * @return the number of cells in the longest row of the workbook
+     * @throws IOException
+     *             if the workbook cannot be read or parsed
+     * @author abhishek
+     * @since 1.0
+     */
+    public abstract int scanMaxRowWidth() throws IOException;
+
+    /**
+     * Recovers the width of the widest row from the dimensions each sheet
+     * declares - the DIMENSIONS record of a binary sheet or the
+     * <em>dimension</em> element of a SpreadsheetML one - without reading any
+     * of the rows. This is very much cheaper than
+     * {@link #scanMaxRowWidth()} but only as reliable as the application that
+     * wrote the workbook; some understate the dimensions of a sheet.
+     *
+     * @return the declared number of cells in the longest row of the
+     *         workbook, or -1 if a sheet does not declare its dimensions
+     * @throws IOException
+     *             if the workbook cannot be read or parsed
+     * @author abhishek
+     * @since 1.0
+     */
+    public int declaredMaxRowWidth() throws IOException {
+        int maxRowWidth = 0;
+        for (SheetDimensions dimensions : this.declaredDimensions()) {
+            if (!dimensions.isDeclared()) {
+                return -1;
+            }
+            maxRowWidth = Math.max(maxRowWidth, dimensions.getLastColumn());
+        }
+        return maxRowWidth;
+    }
+
+    /**
+     * Recovers the name of every sheet, in workbook order, along with the
+     * dimensions it declares. Only the list of sheets and the few records or
+     * elements at the head of each sheet are read, so this takes much the
+     * same time however large the workbook.
+     *
+     * @return the name and dimensions of each sheet
+     * @throws IOException
+     *             if the workbook cannot be read or parsed
+     * @author abhishek
+     * @since 1.0
+     */
+    public abstract List<SheetDimensions> declaredDimensions() throws IOException;
+
+    /**
+     * Streams every selected row of every selected sheet of the workbook to
+     * the handler, narrowed down to the selected columns. Sheets that are not
+     * selected are not handed to the handler at all.
+     *
+     * @param handler
+     *            the receiver of the rows
+     * @throws IOException
+     *             if the workbook cannot be read or parsed, or the handler
+     *             fails
+     * @author abhishek
+     * @since 1.0
+     */
+    public abstract void read(RowHandler handler) throws IOException;
+
+    /**
+     * @return the number of formula cells whose cached results have been
+     *         formatted by {@link #read(RowHandler)} so far
+     * @author abhishek
+     * @since 1.0
+     */
+    public long getFormulaCellCount() {
+        return this.formulaCellCount;
+    }
+
+    /**
+     * @param count
+     *            the number of formula cells formatted whilst reading
+     */
+    protected void addFormulaCells(long count) {
+        this.formulaCellCount += count;
+    }
+
+    /**
+     * Releases the workbook.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public abstract void close();
+}
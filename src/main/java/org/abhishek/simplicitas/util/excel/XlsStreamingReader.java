@@ -0,0 +1,503 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordInputStream;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Reads the sheets of a binary (.xls) workbook through the HSSF event model,
+ * listening for the BIFF records as they are read from the file rather than
+ * building an HSSFWorkbook, so that the memory required does not depend upon
+ * the size of the workbook.
+ * <p>
+ * The workbook stream is read directly from the file. Only the shared strings
+ * table and the formats are retained; cell records are formatted as they
+ * arrive and handed over to the {@link RowHandler} a row at a time. Formula
+ * cells are not evaluated, the result cached in the FORMULA record (or the
+ * STRING record that follows it) being formatted instead.
+ * <p>
+ * The records of a binary workbook follow one another in a single stream, so
+ * those of cells outside the projection are still read; they are simply
+ * never formatted.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class XlsStreamingReader extends StreamingWorkbookReader {
+    private static final String[] WORKBOOK_STREAM_NAMES = {
+        "Workbook", "WORKBOOK", "BOOK"
+    };
+
+    private final NPOIFSFileSystem fileSystem;
+
+    /**
+     * @param file
+     *            the .xls workbook
+     * @throws IOException
+     *             if the workbook cannot be opened
+     * @author abhishek
+     * @since 1.0
+     */
+    public XlsStreamingReader(File file) throws IOException {
+        this.fileSystem = new NPOIFSFileSystem(file, true);
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#scanMaxRowWidth()
+     */
+    @Override
+    public int scanMaxRowWidth() throws IOException {
+        BoundSheetRecord[] boundSheets = BoundSheetRecord.orderByBofPosition(this.readBoundSheets());
+        boolean[] selected = new boolean[boundSheets.length];
+        for (int i = 0; i < boundSheets.length; i++) {
+            selected[i] = this.getProjection().selectsSheet(i, boundSheets[i].getSheetname());
+        }
+        RowWidthListener listener = new RowWidthListener(selected, this.getProjection());
+        this.process(listener);
+        return listener.maxRowWidth;
+    }
+
+    /**
+     * Reads the BOUNDSHEET records from the workbook globals and then jumps
+     * straight to the start of every sheet substream to pick up its
+     * DIMENSIONS record, leaving the cell records unread.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#declaredDimensions()
+     */
+    @Override
+    public List<SheetDimensions> declaredDimensions() throws IOException {
+        List<SheetDimensions> sheets = new ArrayList<SheetDimensions>();
+        for (BoundSheetRecord boundSheet : this.readBoundSheets()) {
+            DimensionsRecord dimensions = this.readDimensions(boundSheet.getPositionOfBof());
+            if (dimensions == null) {
+                sheets.add(SheetDimensions.undeclared(boundSheet.getSheetname()));
+            } else {
+                sheets.add(new SheetDimensions(boundSheet.getSheetname(), dimensions.getFirstRow(),
+                    dimensions.getLastRow(), dimensions.getFirstCol(), dimensions.getLastCol()));
+            }
+        }
+        return sheets;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#read(org.abhishek.simplicitas.util.excel.RowHandler)
+     */
+    @Override
+    public void read(RowHandler handler) throws IOException {
+        RecordListener listener = new RecordListener(this.getProjection(), handler);
+        listener.formats = new FormatTrackingHSSFListener(listener);
+        try {
+            this.process(listener.formats);
+        } catch (HandlerFailure ex) {
+            throw ex.getCause();
+        } finally {
+            this.addFormulaCells(listener.formulaCellCount);
+        }
+    }
+
+    /**
+     * Releases the workbook file.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#close()
+     */
+    @Override
+    public void close() {
+        try {
+            this.fileSystem.close();
+        } catch (IOException ex) {
+            // Nothing was written; there is nothing to lose.
+        }
+    }
+
+    private void process(HSSFListener listener) throws IOException {
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        new HSSFEventFactory().processWorkbookEvents(request, this.fileSystem.getRoot());
+    }
+
+    /**
+     * @return the BOUNDSHEET records of the workbook globals, in sheet order
+     */
+    List<BoundSheetRecord> readBoundSheets() throws IOException {
+        List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+        InputStream in = this.openWorkbookStream();
+        try {
+            RecordInputStream records = new RecordInputStream(in);
+            while (records.hasNextRecord()) {
+                records.nextRecord();
+                if (records.getSid() == BoundSheetRecord.sid) {
+                    boundSheets.add(new BoundSheetRecord(records));
+                } else if (records.getSid() == EOFRecord.sid) {
+                    break;
+                } else {
+                    records.readRemainder();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return boundSheets;
+    }
+
+    /**
+     * @param positionOfBof
+     *            offset of the BOF record of the sheet within the workbook
+     *            stream
+     * @return the DIMENSIONS record of the sheet, or null if it has none
+     */
+    DimensionsRecord readDimensions(int positionOfBof) throws IOException {
+        InputStream in = this.openWorkbookStream();
+        try {
+            if (in.skip(positionOfBof) != positionOfBof) {
+                return null;
+            }
+            RecordInputStream records = new RecordInputStream(in);
+            while (records.hasNextRecord()) {
+                records.nextRecord();
+                if (records.getSid() == DimensionsRecord.sid) {
+                    return new DimensionsRecord(records);
+                } else if (records.getSid() == EOFRecord.sid) {
+                    break;
+                } else {
+                    records.readRemainder();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return null;
+    }
+
+    private InputStream openWorkbookStream() throws IOException {
+        // Some old documents name the stream "WORKBOOK" or "BOOK".
+        DirectoryNode root = this.fileSystem.getRoot();
+        for (String name : WORKBOOK_STREAM_NAMES) {
+            if (root.hasEntry(name)) {
+                return root.createDocumentInputStream(name);
+            }
+        }
+        throw new IOException("The file holds no workbook stream.");
+    }
+
+    /**
+     * Carries an IOException raised by the {@link RowHandler} out of the event
+     * factory, whose listeners cannot throw checked exceptions.
+     */
+    private static class HandlerFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        HandlerFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Tracks the right most cell of every selected row of the selected
+     * worksheets; this is the same figure the user model reports through
+     * Row.getLastCellNum().
+     */
+    private static class RowWidthListener implements HSSFListener {
+        private final boolean[] selected;
+        private final Projection projection;
+        private int maxRowWidth = 0;
+        private int depth = 0;
+        private int substreams = 0;
+        private boolean measuring = false;
+
+        RowWidthListener(boolean[] selected, Projection projection) {
+            this.selected = selected;
+            this.projection = projection;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            if (record.getSid() == BOFRecord.sid) {
+                this.depth++;
+                if (this.depth == 1 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                    this.measuring = this.substreams < this.selected.length && this.selected[this.substreams];
+                    this.substreams++;
+                }
+            } else if (record.getSid() == EOFRecord.sid) {
+                this.depth--;
+            } else if (this.measuring && record instanceof CellValueRecordInterface) {
+                CellValueRecordInterface cell = (CellValueRecordInterface) record;
+                this.measure(cell.getRow(), cell.getColumn());
+            } else if (this.measuring && record instanceof MulBlankRecord) {
+                // A run of styled blank cells counts as cells, just as the
+                // user model counts them.
+                MulBlankRecord blanks = (MulBlankRecord) record;
+                this.measure(blanks.getRow(), blanks.getLastColumn());
+            }
+        }
+
+        private void measure(int row, int column) {
+            if (row >= this.projection.getFirstRow() && row <= this.projection.getLastRow()
+                && column + 1 > this.maxRowWidth) {
+                this.maxRowWidth = column + 1;
+            }
+        }
+    }
+
+    /**
+     * Turns the stream of BIFF records into rows of formatted cell values.
+     */
+    private static class RecordListener implements HSSFListener {
+        private final Projection projection;
+        private final RowHandler handler;
+        private final FormatCache formatCache = new FormatCache(true);
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+        private final List<String> cells = new ArrayList<String>();
+        private FormatTrackingHSSFListener formats;
+        private BoundSheetRecord[] orderedSheets;
+        private Projection.SheetProjection sheetProjection;
+        private SSTRecord sharedStrings;
+        private boolean date1904 = false;
+        private int depth = 0;
+        private int substreams = 0;
+        private int sheetIndex = -1;
+        private int rowNum = -1;
+        private int nextRowNum = 0;
+        private int lastRowNum = -1;
+        private int pendingStringColumn = -1;
+        private long formulaCellCount = 0;
+
+        RecordListener(Projection projection, RowHandler handler) {
+            this.projection = projection;
+            this.handler = handler;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            try {
+                this.process(record);
+            } catch (IOException ex) {
+                throw new HandlerFailure(ex);
+            }
+        }
+
+        private void process(Record record) throws IOException {
+            switch (record.getSid()) {
+            case BOFRecord.sid:
+                this.depth++;
+                BOFRecord bof = (BOFRecord) record;
+                if (this.depth == 1 && bof.getType() != BOFRecord.TYPE_WORKBOOK) {
+                    // Substreams following the workbook globals correspond, in
+                    // order of their offset, to the BOUNDSHEET records.
+                    if (this.orderedSheets == null) {
+                        this.orderedSheets = BoundSheetRecord.orderByBofPosition(this.boundSheets);
+                    }
+                    if (bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                        this.sheetIndex = this.substreams;
+                        this.rowNum = -1;
+                        this.nextRowNum = 0;
+                        this.lastRowNum = -1;
+                        String name = (this.sheetIndex < this.orderedSheets.length)
+                            ? this.orderedSheets[this.sheetIndex].getSheetname() : null;
+                        this.sheetProjection = this.projection.startSheet(this.sheetIndex, name);
+                        if (this.sheetProjection != null) {
+                            this.handler.startSheet(this.sheetIndex, name);
+                        }
+                    }
+                    this.substreams++;
+                }
+                break;
+            case EOFRecord.sid:
+                if (this.depth == 1 && this.sheetIndex >= 0) {
+                    this.endSheet();
+                }
+                this.depth--;
+                break;
+            case BoundSheetRecord.sid:
+                this.boundSheets.add((BoundSheetRecord) record);
+                break;
+            case SSTRecord.sid:
+                this.sharedStrings = (SSTRecord) record;
+                break;
+            case DateWindow1904Record.sid:
+                this.date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                break;
+            case RowRecord.sid:
+                if (this.sheetIndex >= 0) {
+                    this.lastRowNum = Math.max(this.lastRowNum, ((RowRecord) record).getRowNumber());
+                }
+                break;
+            case StringRecord.sid:
+                // The cached text result of the preceding formula.
+                if (this.pendingStringColumn >= 0) {
+                    this.cells.set(this.pendingStringColumn, ((StringRecord) record).getString());
+                    this.pendingStringColumn = -1;
+                }
+                break;
+            case MulBlankRecord.sid:
+                // A run of styled blank cells is expanded into the BLANK
+                // records the user model turns it into.
+                if (this.sheetProjection != null && this.depth == 1) {
+                    for (BlankRecord blank : RecordFactory.convertBlankRecords((MulBlankRecord) record)) {
+                        this.cell(blank);
+                    }
+                }
+                break;
+            default:
+                if (this.sheetProjection != null && this.depth == 1 && record instanceof CellValueRecordInterface) {
+                    this.cell((CellValueRecordInterface) record);
+                }
+                break;
+            }
+        }
+
+        private void cell(CellValueRecordInterface cell) throws IOException {
+            this.pendingStringColumn = -1;
+            int row = cell.getRow();
+            if (row != this.rowNum) {
+                this.flushRow();
+                // Rows without any cells between populated rows are delivered
+                // as empty rows.
+                this.emptyRows(row);
+                this.cells.clear();
+                this.rowNum = row;
+            }
+
+            int column = cell.getColumn();
+            if (!this.sheetProjection.wantsCell(row, column)) {
+                return;
+            }
+            while (this.cells.size() <= column) {
+                this.cells.add("");
+            }
+            this.cells.set(column, this.formatCellValue(cell));
+            if (cell instanceof FormulaRecord) {
+                this.formulaCellCount++;
+                if (((FormulaRecord) cell).hasCachedResultString()) {
+                    this.pendingStringColumn = column;
+                }
+            }
+        }
+
+        /**
+         * Formats the value held by a cell record in the same manner the
+         * {@link DataFormatter} formats a cell recovered through the user
+         * model.
+         */
+        private String formatCellValue(CellValueRecordInterface cell) {
+            if (cell instanceof NumberRecord) {
+                return this.formatNumber(cell, ((NumberRecord) cell).getValue());
+            }
+            if (cell instanceof LabelSSTRecord) {
+                return this.sharedStrings.getString(((LabelSSTRecord) cell).getSSTIndex()).getString();
+            }
+            if (cell instanceof LabelRecord) {
+                return ((LabelRecord) cell).getValue();
+            }
+            if (cell instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) cell;
+                if (boolErr.isBoolean()) {
+                    return String.valueOf(boolErr.getBooleanValue());
+                }
+                return FormulaError.forInt(boolErr.getErrorValue()).getString();
+            }
+            if (cell instanceof FormulaRecord) {
+                FormulaRecord formula = (FormulaRecord) cell;
+                switch (formula.getCachedResultType()) {
+                case Cell.CELL_TYPE_NUMERIC:
+                    return this.formatNumber(cell, formula.getValue());
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return String.valueOf(formula.getCachedBooleanValue());
+                case Cell.CELL_TYPE_ERROR:
+                    return FormulaError.forInt(formula.getCachedErrorValue()).getString();
+                default:
+                    // Any text result follows in a STRING record.
+                    return "";
+                }
+            }
+            // BLANK records and anything else carry no value.
+            return "";
+        }
+
+        private String formatNumber(CellValueRecordInterface cell, double value) {
+            // Every extended format record precedes the first sheet, so the
+            // format of each XF index can safely be remembered.
+            int styleIndex = cell.getXFIndex();
+            if (!this.formatCache.isCached(styleIndex)) {
+                this.formatCache.cache(styleIndex, this.formats.getFormatIndex(cell), this.formats.getFormatString(cell));
+            }
+            return this.formatCache.format(styleIndex, value, this.date1904);
+        }
+
+        private void flushRow() throws IOException {
+            if (this.rowNum >= 0) {
+                this.sheetProjection.row(this.handler, this.rowNum, this.cells);
+                this.nextRowNum = this.rowNum + 1;
+                this.rowNum = -1;
+            }
+        }
+
+        /**
+         * Delivers the rows without any cells up to, but not including, the
+         * given row; none are delivered beyond the last row selected.
+         */
+        private void emptyRows(int row) throws IOException {
+            while (this.nextRowNum < row && !this.sheetProjection.isPastLastRow(this.nextRowNum)) {
+                this.cells.clear();
+                this.sheetProjection.row(this.handler, this.nextRowNum++, this.cells);
+            }
+        }
+
+        private void endSheet() throws IOException {
+            if (this.sheetProjection != null) {
+                this.flushRow();
+                // Trailing rows that hold no cells still count towards the
+                // sheet.
+                this.emptyRows(this.lastRowNum + 1);
+                this.handler.endSheet(this.sheetIndex);
+            }
+            this.sheetProjection = null;
+            this.sheetIndex = -1;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler for a single SpreadsheetML worksheet part. Formats the contents
+ * of every cell as it is parsed and hands complete rows over to a
+ * {@link RowHandler}, never holding more than a single row in memory.
+ * <p>
+ * Only the cells within the projection of the sheet are formatted; the text
+ * of any other cell is not even collected, and parsing is abandoned as soon
+ * as the first row beyond the selected range is reached.
+ * <p>
+ * Formula cells are not evaluated; the result Excel cached alongside the
+ * formula when the workbook was last saved is formatted instead.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+class XlsxSheetHandler extends DefaultHandler {
+    private final StylesTable styles;
+    private final SharedStringsStore sharedStrings;
+    private final FormatCache formats;
+    private final boolean date1904;
+    private final Projection.SheetProjection projection;
+    private final RowHandler handler;
+
+    private final List<String> cells = new ArrayList<String>();
+    private final StringBuilder value = new StringBuilder();
+    private int nextRowNum = 0;
+    private int rowNum = -1;
+    private int column = -1;
+    private String cellType = null;
+    private String cellStyle = null;
+    private boolean valueOpen = false;
+    private boolean inlineStringOpen = false;
+    private boolean phoneticOpen = false;
+    private boolean valueFound = false;
+    private boolean cellWanted = false;
+    private long formulaCellCount = 0;
+
+    /**
+     * @param styles
+     *            the styles table of the workbook
+     * @param sharedStrings
+     *            the shared strings table of the workbook
+     * @param formats
+     *            the number formats of the cell styles of the workbook
+     * @param date1904
+     *            whether the workbook uses the 1904 date windowing
+     * @param projection
+     *            the rows and columns of the sheet to deliver
+     * @param handler
+     *            the receiver of the parsed rows
+     * @author abhishek
+     * @since 1.0
+     */
+    XlsxSheetHandler(StylesTable styles, SharedStringsStore sharedStrings, FormatCache formats,
+        boolean date1904, Projection.SheetProjection projection, RowHandler handler) {
+        this.styles = styles;
+        this.sharedStrings = sharedStrings;
+        this.formats = formats;
+        this.date1904 = date1904;
+        this.projection = projection;
+        this.handler = handler;
+    }
+
+    /**
+     * @return the number of wanted formula cells parsed so far
+     */
+    long getFormulaCellCount() {
+        return this.formulaCellCount;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String name, Attributes attributes) throws SAXException {
+        if ("row".equals(name)) {
+            String rowNumStr = attributes.getValue("r");
+            this.rowNum = (rowNumStr != null) ? Integer.parseInt(rowNumStr) - 1 : this.nextRowNum;
+
+            // Rows absent from the sheet part between populated rows are
+            // delivered as empty rows.
+            while (this.nextRowNum < this.rowNum && !this.projection.isPastLastRow(this.nextRowNum)) {
+                this.cells.clear();
+                this.deliver(this.nextRowNum++);
+            }
+            if (this.projection.isPastLastRow(this.rowNum)) {
+                throw new XlsxStreamingReader.StopParsingException();
+            }
+            this.cells.clear();
+            this.column = -1;
+        } else if ("c".equals(name)) {
+            String reference = attributes.getValue("r");
+            this.column = (reference != null) ? columnIndex(reference) : this.column + 1;
+            this.cellType = attributes.getValue("t");
+            this.cellStyle = attributes.getValue("s");
+            this.cellWanted = this.projection.wantsCell(this.rowNum, this.column);
+            this.valueFound = false;
+            this.value.setLength(0);
+        } else if (!this.cellWanted) {
+            return;
+        } else if ("v".equals(name)) {
+            this.valueOpen = true;
+            this.valueFound = true;
+            this.value.setLength(0);
+        } else if ("is".equals(name)) {
+            this.inlineStringOpen = true;
+            this.valueFound = true;
+            this.value.setLength(0);
+        } else if ("f".equals(name)) {
+            this.formulaCellCount++;
+        } else if ("rPh".equals(name)) {
+            this.phoneticOpen = true;
+        } else if ("t".equals(name) && this.inlineStringOpen && !this.phoneticOpen) {
+            this.valueOpen = true;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String name) throws SAXException {
+        if ("v".equals(name) || "t".equals(name)) {
+            this.valueOpen = false;
+        } else if ("rPh".equals(name)) {
+            this.phoneticOpen = false;
+        } else if ("is".equals(name)) {
+            this.inlineStringOpen = false;
+        } else if ("c".equals(name)) {
+            if (!this.cellWanted) {
+                return;
+            }
+            while (this.cells.size() < this.column) {
+                this.cells.add("");
+            }
+            String formatted = this.valueFound ? this.formatCellValue() : "";
+            if (this.cells.size() == this.column) {
+                this.cells.add(formatted);
+            } else {
+                this.cells.set(this.column, formatted);
+            }
+        } else if ("row".equals(name)) {
+            this.cellWanted = false;
+            this.deliver(this.rowNum);
+            this.nextRowNum = this.rowNum + 1;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (this.valueOpen) {
+            this.value.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Formats the raw value of the current cell in the same manner the
+     * DataFormatter formats a cell recovered through the user model.
+     */
+    private String formatCellValue() {
+        String raw = this.value.toString();
+        if ("s".equals(this.cellType)) {
+            return decodeEscapes(this.sharedStrings.getEntryAt(Integer.parseInt(raw.trim())));
+        }
+        if ("inlineStr".equals(this.cellType)) {
+            return decodeEscapes(raw);
+        }
+        if ("str".equals(this.cellType) || "e".equals(this.cellType)) {
+            return raw;
+        }
+        if ("b".equals(this.cellType)) {
+            return String.valueOf(raw.length() > 0 && raw.charAt(0) != '0');
+        }
+        if (raw.length() == 0) {
+            return "";
+        }
+
+        // Anything else is a number, possibly formatted as a date. The
+        // format of each style is looked up once and then remembered.
+        // A workbook without any styles is rendered in the General format,
+        // as the user model renders it.
+        double number = Double.parseDouble(raw);
+        int styleIndex = (this.cellStyle == null) ? 0 : Integer.parseInt(this.cellStyle);
+        if (!this.formats.isCached(styleIndex)) {
+            XSSFCellStyle style = (this.styles == null || this.styles.getNumCellStyles() == 0) ? null
+                : this.styles.getStyleAt(styleIndex);
+            if (style == null) {
+                this.formats.cache(styleIndex, 0, null);
+            } else {
+                int formatIndex = style.getDataFormat();
+                String formatString = style.getDataFormatString();
+                if (formatString == null) {
+                    formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                this.formats.cache(styleIndex, formatIndex, formatString);
+            }
+        }
+        return this.formats.format(styleIndex, number, this.date1904);
+    }
+
+    private void deliver(int rowIndex) throws SAXException {
+        try {
+            this.projection.row(this.handler, rowIndex, this.cells);
+        } catch (IOException ex) {
+            throw new SAXException(ex);
+        }
+    }
+
+    /**
+     * Converts the letters of a cell reference such as <em>AB12</em> into a
+     * zero based column index.
+     *
+     * @param reference
+     *            the cell reference
+     * @return the zero based column index
+     */
+    static int columnIndex(String reference) {
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char ch = reference.charAt(i);
+            if (ch < 'A' || ch > 'Z') {
+                break;
+            }
+            column = (column * 26) + (ch - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * Decodes the <em>_xHHHH_</em> escapes SpreadsheetML uses for characters
+     * that cannot appear in XML, as XSSFRichTextString does.
+     *
+     * @param text
+     *            the raw text
+     * @return the decoded text
+     */
+    static String decodeEscapes(String text) {
+        if (text == null || text.indexOf("_x") < 0) {
+            return text;
+        }
+        StringBuilder buffer = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            if (i + 6 < text.length() && text.charAt(i) == '_' && text.charAt(i + 1) == 'x'
+                && text.charAt(i + 6) == '_' && isHex(text, i + 2, i + 6)) {
+                buffer.append((char) Integer.parseInt(text.substring(i + 2, i + 6), 16));
+                i += 7;
+            } else {
+                buffer.append(text.charAt(i++));
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static boolean isHex(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,363 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the sheets of a SpreadsheetML (.xlsx) workbook with a SAX parser
+ * rather than building the XSSF object model, so that the memory required
+ * does not depend upon the size of the workbook.
+ * <p>
+ * The workbook package is opened directly from the file, the styles and
+ * shared strings tables are loaded and every sheet part is then streamed
+ * through an {@link XlsxSheetHandler} in workbook order. A shared strings
+ * table too large to hold on the heap is kept in a memory mapped file; see
+ * {@link SharedStringsStore}.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class XlsxStreamingReader extends StreamingWorkbookReader {
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final long sharedStringsThreshold;
+    private StylesTable styles;
+    private SharedStringsStore sharedStrings;
+    private FormatCache formats;
+    private boolean date1904;
+
+    /**
+     * Opens the workbook, holding the shared strings on the heap, once they
+     * are needed, unless they amount to
+     * {@link SharedStringsStore#DEFAULT_THRESHOLD} characters or more.
+     *
+     * @param file
+     *            the .xlsx workbook
+     * @throws IOException
+     *             if the workbook cannot be read or is not a valid
+     *             SpreadsheetML package
+     * @author abhishek
+     * @since 1.0
+     */
+    public XlsxStreamingReader(File file) throws IOException {
+        this(file, SharedStringsStore.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Opens the workbook. The tables shared by all of its sheets are loaded
+     * only when the rows are first read, so that the width of the rows or
+     * the dimensions of the sheets can be had without them.
+     *
+     * @param file
+     *            the .xlsx workbook
+     * @param sharedStringsThreshold
+     *            the number of characters of shared strings at which they are
+     *            moved from the heap into a memory mapped file
+     * @throws IOException
+     *             if the workbook cannot be read or is not a valid
+     *             SpreadsheetML package
+     * @author abhishek
+     * @since 1.0
+     */
+    public XlsxStreamingReader(File file, long sharedStringsThreshold) throws IOException {
+        try {
+            this.pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException ex) {
+            throw new IOException("Invalid SpreadsheetML package: " + ex.getMessage(), ex);
+        }
+        this.sharedStringsThreshold = sharedStringsThreshold;
+        try {
+            this.reader = new XSSFReader(this.pkg);
+        } catch (OpenXML4JException ex) {
+            this.close();
+            throw new IOException("Invalid SpreadsheetML package: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#scanMaxRowWidth()
+     */
+    @Override
+    public int scanMaxRowWidth() throws IOException {
+        RowWidthHandler widthHandler = new RowWidthHandler(this.getProjection());
+        XSSFReader.SheetIterator sheets = this.sheets();
+        int sheetIndex = 0;
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            try {
+                if (this.getProjection().selectsSheet(sheetIndex, sheets.getSheetName())) {
+                    parse(sheet, widthHandler);
+                }
+            } catch (IOException ex) {
+                // Parsing is abandoned once past the last row selected.
+                if (!(ex.getCause() instanceof StopParsingException)) {
+                    throw ex;
+                }
+            } finally {
+                sheet.close();
+            }
+            sheetIndex++;
+        }
+        return widthHandler.maxRowWidth;
+    }
+
+    /**
+     * Parses no more of each sheet part than the elements that precede the
+     * sheet data.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#declaredDimensions()
+     */
+    @Override
+    public List<SheetDimensions> declaredDimensions() throws IOException {
+        List<SheetDimensions> dimensions = new ArrayList<SheetDimensions>();
+        XSSFReader.SheetIterator sheets = this.sheets();
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            DimensionHandler dimensionHandler = new DimensionHandler(sheets.getSheetName());
+            try {
+                parse(sheet, dimensionHandler);
+            } catch (IOException ex) {
+                // Parsing is abandoned as soon as the dimension is known.
+                if (!(ex.getCause() instanceof StopParsingException)) {
+                    throw ex;
+                }
+            } finally {
+                sheet.close();
+            }
+            dimensions.add(dimensionHandler.dimensions);
+        }
+        return dimensions;
+    }
+
+    /**
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#read(org.abhishek.simplicitas.util.excel.RowHandler)
+     */
+    @Override
+    public void read(RowHandler handler) throws IOException {
+        this.loadTables();
+        XSSFReader.SheetIterator sheets = this.sheets();
+        int sheetIndex = 0;
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            try {
+                // The part of a sheet that is not selected is never parsed.
+                Projection.SheetProjection sheetProjection = this.getProjection().startSheet(sheetIndex,
+                    sheets.getSheetName());
+                if (sheetProjection != null) {
+                    handler.startSheet(sheetIndex, sheets.getSheetName());
+                    XlsxSheetHandler sheetHandler = new XlsxSheetHandler(this.styles, this.sharedStrings,
+                        this.formats, this.date1904, sheetProjection, handler);
+                    try {
+                        parse(sheet, sheetHandler);
+                    } catch (IOException ex) {
+                        // Parsing is abandoned once past the last row selected.
+                        if (!(ex.getCause() instanceof StopParsingException)) {
+                            throw ex;
+                        }
+                    }
+                    this.addFormulaCells(sheetHandler.getFormulaCellCount());
+                    handler.endSheet(sheetIndex);
+                }
+            } finally {
+                sheet.close();
+            }
+            sheetIndex++;
+        }
+    }
+
+    /**
+     * Releases the package without saving it, along with the shared strings.
+     *
+     * @author abhishek
+     * @since 1.0
+     * @see org.abhishek.simplicitas.util.excel.StreamingWorkbookReader#close()
+     */
+    @Override
+    public void close() {
+        if (this.sharedStrings != null) {
+            this.sharedStrings.close();
+        }
+        this.pkg.revert();
+    }
+
+    /**
+     * Loads the styles and shared strings tables and the date windowing of
+     * the workbook, unless they have already been loaded.
+     */
+    private void loadTables() throws IOException {
+        if (this.formats != null) {
+            return;
+        }
+        try {
+            this.styles = this.reader.getStylesTable();
+            this.sharedStrings = SharedStringsStore.load(this.pkg, this.sharedStringsThreshold);
+            this.date1904 = this.readDate1904();
+        } catch (OpenXML4JException ex) {
+            throw new IOException("Invalid SpreadsheetML package: " + ex.getMessage(), ex);
+        }
+        this.formats = new FormatCache(true);
+    }
+
+    private XSSFReader.SheetIterator sheets() throws IOException {
+        try {
+            return (XSSFReader.SheetIterator) this.reader.getSheetsData();
+        } catch (OpenXML4JException ex) {
+            throw new IOException("Invalid SpreadsheetML package: " + ex.getMessage(), ex);
+        }
+    }
+
+    private boolean readDate1904() throws IOException, OpenXML4JException {
+        final boolean[] date1904 = new boolean[1];
+        InputStream workbook = this.reader.getWorkbookData();
+        try {
+            parse(workbook, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String name, Attributes attributes) {
+                    if ("workbookPr".equals(name)) {
+                        String value = attributes.getValue("date1904");
+                        date1904[0] = "1".equals(value) || "true".equals(value);
+                    }
+                }
+            });
+        } finally {
+            workbook.close();
+        }
+        return date1904[0];
+    }
+
+    /**
+     * Parses an XML part of the package, unwrapping any IOException raised by
+     * a {@link RowHandler} from within the content handler.
+     */
+    static void parse(InputStream part, ContentHandler contentHandler) throws IOException {
+        try {
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(contentHandler);
+            parser.parse(new InputSource(part));
+        } catch (ParserConfigurationException ex) {
+            throw new IOException("SAX parser appears to be broken - " + ex.getMessage(), ex);
+        } catch (SAXException ex) {
+            if (ex.getException() instanceof IOException) {
+                throw (IOException) ex.getException();
+            }
+            throw new IOException("Invalid SpreadsheetML xml: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Raised to abandon parsing a sheet part once the part of interest has
+     * been read.
+     */
+    static class StopParsingException extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Picks up the <em>dimension</em> element that precedes the sheet data;
+     * a reference such as A1:H20, or just A1 for a sheet of a single cell.
+     */
+    private static class DimensionHandler extends DefaultHandler {
+        private SheetDimensions dimensions;
+
+        DimensionHandler(String sheetName) {
+            this.dimensions = SheetDimensions.undeclared(sheetName);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes)
+            throws SAXException {
+            if ("dimension".equals(name)) {
+                String reference = attributes.getValue("ref");
+                if (reference != null) {
+                    String firstCell = reference.substring(0, (reference.indexOf(':') < 0) ? reference.length()
+                        : reference.indexOf(':'));
+                    String lastCell = reference.substring(reference.indexOf(':') + 1);
+                    this.dimensions = new SheetDimensions(this.dimensions.getSheetName(), rowIndex(firstCell),
+                        rowIndex(lastCell) + 1, XlsxSheetHandler.columnIndex(firstCell),
+                        XlsxSheetHandler.columnIndex(lastCell) + 1);
+                }
+                throw new StopParsingException();
+            }
+            if ("sheetData".equals(name)) {
+                throw new StopParsingException();
+            }
+        }
+    }
+
+    /**
+     * Converts the digits of a cell reference such as <em>AB12</em> into a
+     * zero based row index.
+     */
+    static int rowIndex(String reference) {
+        int i = 0;
+        while (i < reference.length() && !Character.isDigit(reference.charAt(i))) {
+            i++;
+        }
+        return (i < reference.length()) ? Integer.parseInt(reference.substring(i)) - 1 : 0;
+    }
+
+    /**
+     * Tracks the right most cell of every row; this is the same figure the
+     * user model reports through Row.getLastCellNum().
+     */
+    private static class RowWidthHandler extends DefaultHandler {
+        private final Projection projection;
+        private int maxRowWidth = 0;
+        private int rowNum = -1;
+        private int column = -1;
+
+        RowWidthHandler(Projection projection) {
+            this.projection = projection;
+        }
+
+        @Override
+        public void startDocument() {
+            this.rowNum = -1;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes)
+            throws SAXException {
+            if ("row".equals(name)) {
+                String rowNumStr = attributes.getValue("r");
+                this.rowNum = (rowNumStr != null) ? Integer.parseInt(rowNumStr) - 1 : this.rowNum + 1;
+                if (this.rowNum > this.projection.getLastRow()) {
+                    throw new StopParsingException();
+                }
+                this.column = -1;
+            } else if ("c".equals(name)) {
+                String reference = attributes.getValue("r");
+                this.column = (reference != null) ? XlsxSheetHandler.columnIndex(reference) : this.column + 1;
+                if (this.rowNum >= this.projection.getFirstRow() && this.column + 1 > this.maxRowWidth) {
+                    this.maxRowWidth = this.column + 1;
+                }
+            }
+        }
+    }
+}
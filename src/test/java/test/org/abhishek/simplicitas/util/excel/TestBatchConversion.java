@@ -0,0 +1,153 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.abhishek.simplicitas.util.common.ConversionManifest;
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that converting a folder on several threads produces the same CSV
+ * files as converting its workbooks one by one.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestBatchConversion {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecursiveParallelConversion() throws IOException {
+        File source = this.folder.newFolder("source");
+        File nested = new File(source, "nested");
+        nested.mkdir();
+        WorkbookFixtures.createTable(new XSSFWorkbook(), new File(source, "small.xlsx"), 5);
+        WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "large.xls"), 500);
+        WorkbookFixtures.createTable(new XSSFWorkbook(), new File(nested, "nested.xlsx"), 50);
+        new File(source, "notes.txt").createNewFile();
+
+        File sequential = this.folder.newFolder("sequential");
+        new ExcelUtils().convertExcelToCSV(source.getPath(), sequential.getPath());
+        new ExcelUtils().convertExcelToCSV(nested.getPath(), sequential.getPath());
+
+        File parallel = this.folder.newFolder("parallel");
+        ExcelUtils converter = new ExcelUtils();
+        converter.setThreads(3);
+        converter.convertExcelToCSV(source.getPath(), parallel.getPath());
+
+        this.assertSameContents(new File(sequential, "small.csv"), new File(parallel, "small.csv"));
+        this.assertSameContents(new File(sequential, "large.csv"), new File(parallel, "large.csv"));
+        this.assertSameContents(new File(sequential, "nested.csv"), new File(parallel, "nested/nested.csv"));
+        assertTrue(!new File(parallel, "notes.csv").exists());
+    }
+
+    @Test
+    public void testIncrementalConversion() throws IOException {
+        File source = this.folder.newFolder("source");
+        WorkbookFixtures.createTable(new XSSFWorkbook(), new File(source, "first.xlsx"), 20);
+        WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "second.xls"), 30);
+        Files.copy(new File(source, "first.xlsx").toPath(), new File(source, "copy.xlsx").toPath());
+
+        for (int threads : new int[] {
+            0, 2
+        }) {
+            File destination = this.folder.newFolder("incremental" + threads);
+            ExcelUtils converter = new ExcelUtils();
+            converter.setThreads(threads);
+            converter.setIncremental(true);
+            converter.convertExcelToCSV(source.getPath(), destination.getPath());
+            File first = new File(destination, "first.csv");
+            File second = new File(destination, "second.csv");
+            this.assertSameContents(first, new File(destination, "copy.csv"));
+
+            // Current CSV files are left alone; a changed workbook is
+            // converted again, as is one converted with other settings.
+            assertTrue(first.setLastModified(1000L) && second.setLastModified(1000L));
+            WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "second.xls"), 40);
+            converter.convertExcelToCSV(source.getPath(), destination.getPath());
+            assertEquals(1000L, first.lastModified());
+            assertTrue(second.lastModified() != 1000L);
+
+            converter.convertExcelToCSV(source.getPath(), destination.getPath(), ";",
+                ExcelUtils.EXCEL_STYLE_ESCAPING);
+            assertTrue(first.lastModified() != 1000L);
+            WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "second.xls"), 30);
+        }
+    }
+
+    @Test
+    public void testIncrementalRenamedDuplicate() throws IOException {
+        for (int threads : new int[] {
+            0, 2
+        }) {
+            File source = this.folder.newFolder("renamed" + threads);
+            File destination = this.folder.newFolder("renamedCsv" + threads);
+            File original = WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "a.xls"), 20);
+            ExcelUtils converter = new ExcelUtils();
+            converter.setThreads(threads);
+            converter.setIncremental(true);
+            converter.convertExcelToCSV(source.getPath(), destination.getPath());
+
+            // The first of the identical workbooks is itself a copy of the
+            // workbook converted on the previous run.
+            File renamed = new File(source, "b.xls");
+            assertTrue(original.renameTo(renamed));
+            Files.copy(renamed.toPath(), new File(source, "c.xls").toPath());
+            converter.convertExcelToCSV(source.getPath(), destination.getPath());
+
+            File csv = new File(destination, "a.csv");
+            this.assertSameContents(csv, new File(destination, "b.csv"));
+            this.assertSameContents(csv, new File(destination, "c.csv"));
+            String manifest = new String(Files.readAllBytes(new File(destination,
+                ConversionManifest.MANIFEST_FILENAME).toPath()));
+            assertTrue(manifest.contains(renamed.getAbsolutePath()));
+            assertTrue(manifest.contains(new File(source, "c.xls").getAbsolutePath()));
+        }
+    }
+
+    @Test
+    public void testIncrementalFailure() throws IOException {
+        for (int threads : new int[] {
+            0, 2
+        }) {
+            File source = this.folder.newFolder("failing" + threads);
+            File destination = this.folder.newFolder("failingCsv" + threads);
+            Files.write(new File(source, "broken.xlsx").toPath(), "not a workbook".getBytes());
+            File first = WorkbookFixtures.createTable(new XSSFWorkbook(), new File(source, "first.xlsx"), 20);
+            Files.copy(first.toPath(), new File(source, "second.xlsx").toPath());
+            ExcelUtils converter = new ExcelUtils();
+            converter.setThreads(threads);
+            converter.setIncremental(true);
+            try {
+                converter.convertExcelToCSV(source.getPath(), destination.getPath());
+                fail("The broken workbook was converted.");
+            } catch (IllegalStateException ex) {
+                assertTrue(ex.getMessage().startsWith("1 of 3 "));
+            }
+
+            // The duplicate is copied and recorded despite the failure.
+            this.assertSameContents(new File(destination, "first.csv"), new File(destination, "second.csv"));
+            String manifest = new String(Files.readAllBytes(new File(destination,
+                ConversionManifest.MANIFEST_FILENAME).toPath()));
+            assertTrue(manifest.contains(new File(source, "second.xlsx").getAbsolutePath()));
+        }
+    }
+
+    private void assertSameContents(File expected, File actual) throws IOException {
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+}
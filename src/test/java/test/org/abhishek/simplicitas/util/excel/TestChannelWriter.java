@@ -0,0 +1,67 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.abhishek.simplicitas.util.excel.ChannelWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the encoding of characters written through a channel.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestChannelWriter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("r\u00E9sum\u00E9 \u20AC").append(i).append(" \uD83D\uDE00,");
+        }
+        File file = this.folder.newFile("out.csv");
+        ChannelWriter writer = new ChannelWriter(file, UTF_8, 16, false);
+        writer.write(text.toString());
+        writer.write('!');
+        writer.close();
+        assertArrayEquals((text + "!").getBytes(UTF_8), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException {
+        File file = this.folder.newFile("out.csv");
+        ChannelWriter writer = new ChannelWriter(file, UTF_8, 1024, true);
+        writer.write("a,b");
+        writer.close();
+        assertArrayEquals(new byte[] {
+            (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', ',', 'b'
+        }, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testUnmappableCharacters() throws IOException {
+        File file = this.folder.newFile("out.csv");
+        ChannelWriter writer = new ChannelWriter(file, Charset.forName("ISO-8859-1"), 1024, false);
+        writer.write("caf\u00E9 \u20AC");
+        writer.close();
+        assertArrayEquals("caf\u00E9 ?".getBytes("ISO-8859-1"), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteOrderMarkNeedsUnicode() throws IOException {
+        new ChannelWriter(this.folder.newFile("out.csv"), Charset.forName("US-ASCII"), 1024, true);
+    }
+}
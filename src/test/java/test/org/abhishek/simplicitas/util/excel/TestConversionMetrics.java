@@ -0,0 +1,172 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.abhishek.simplicitas.util.common.WorkbookGenerator;
+import org.abhishek.simplicitas.util.excel.ConversionListener;
+import org.abhishek.simplicitas.util.excel.ConversionMetrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that conversions, loaded and streamed, are counted alike, that
+ * listeners follow them and that the figures are published over JMX.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestConversionMetrics {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadedAndStreamed() throws Exception {
+        File workbook = this.generate("figures.xlsx");
+        ConversionMetrics loaded = this.convert(workbook, false, "loaded");
+        ConversionMetrics streamed = this.convert(workbook, true, "streamed");
+
+        for (ConversionMetrics metrics : new ConversionMetrics[] { loaded, streamed }) {
+            assertEquals(1, metrics.getFiles());
+            assertEquals(0, metrics.getFailedFiles());
+            assertEquals(2, metrics.getSheets());
+            // A header and two hundred rows on each sheet.
+            assertEquals(2 * 201, metrics.getRows());
+            assertEquals(workbook.length(), metrics.getBytesRead());
+            assertTrue(metrics.getFormulaCells() > 0);
+        }
+        assertEquals(loaded.getCells(), streamed.getCells());
+        assertEquals(loaded.getFormulaCells(), streamed.getFormulaCells());
+        assertEquals(new File(this.folder.getRoot(), "loaded/figures.csv").length(), loaded.getBytesWritten());
+        assertEquals(new File(this.folder.getRoot(), "streamed/figures.csv").length(), streamed.getBytesWritten());
+
+        loaded.reset();
+        assertEquals(0, loaded.getRows());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        File workbook = this.generate("listened.xlsx");
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.addListener(new ConversionListener() {
+            @Override
+            public void fileStarted(File file) {
+                events.add("started " + file.getName());
+            }
+
+            @Override
+            public void sheetConverted(File file, String sheetName, long rows) {
+                events.add(sheetName + " " + rows);
+            }
+
+            @Override
+            public void fileConverted(File file, List<File> csvFiles, long elapsedMillis) {
+                events.add("converted " + csvFiles.size());
+            }
+
+            @Override
+            public void fileFailed(File file, RuntimeException failure) {
+                events.add("failed");
+            }
+        });
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setMetrics(metrics);
+        converter.convertExcelToCSV(workbook.getPath(), this.folder.newFolder("listened").getPath());
+
+        assertEquals(4, events.size());
+        assertEquals("started listened.xlsx", events.get(0));
+        assertTrue(events.get(1).endsWith(" 201"));
+        assertTrue(events.get(2).endsWith(" 201"));
+        assertEquals("converted 1", events.get(3));
+    }
+
+    @Test
+    public void testPipelineListener() throws Exception {
+        File workbook = this.generate("pipelined.xlsx");
+        final Thread converting = Thread.currentThread();
+        final List<String> sheets = Collections.synchronizedList(new ArrayList<String>());
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.addListener(new ConversionListener() {
+            @Override
+            public void fileStarted(File file) {
+            }
+
+            @Override
+            public void sheetConverted(File file, String sheetName, long rows) {
+                // Reported by the writer, once the rows have been written,
+                // rather than by the thread reading them.
+                sheets.add(sheetName + " " + rows + " " + (Thread.currentThread() == converting));
+            }
+
+            @Override
+            public void fileConverted(File file, List<File> csvFiles, long elapsedMillis) {
+            }
+
+            @Override
+            public void fileFailed(File file, RuntimeException failure) {
+            }
+        });
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setPipelined(true);
+        converter.setMetrics(metrics);
+        converter.convertExcelToCSV(workbook.getPath(), this.folder.newFolder("pipelined").getPath());
+
+        assertEquals(2, sheets.size());
+        assertTrue(sheets.get(0).endsWith(" 201 true"));
+        assertTrue(sheets.get(1).endsWith(" 201 true"));
+        assertEquals(2 * 201, metrics.getRows());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        File workbook = this.generate("published.xlsx");
+        ConversionMetrics metrics = this.convert(workbook, true, "published");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("test");
+        try {
+            assertEquals(Long.valueOf(1), server.getAttribute(name, "Files"));
+            assertEquals(Long.valueOf(2 * 201), server.getAttribute(name, "Rows"));
+        } finally {
+            metrics.unregister();
+        }
+        assertTrue(!server.isRegistered(name));
+    }
+
+    private File generate(String name) throws Exception {
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setSeed(5L);
+        generator.setRows(200);
+        generator.setColumns(8);
+        generator.setSheets(2);
+        generator.setBlankRatio(0.2);
+        generator.setFormulaRatio(0.2);
+        File file = new File(this.folder.getRoot(), name);
+        generator.generate(file);
+        return file;
+    }
+
+    private ConversionMetrics convert(File workbook, boolean streaming, String destination) throws Exception {
+        ConversionMetrics metrics = new ConversionMetrics();
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(streaming);
+        converter.setMetrics(metrics);
+        converter.convertExcelToCSV(workbook.getPath(), this.folder.newFolder(destination).getPath());
+        return metrics;
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.abhishek.simplicitas.util.excel.CsvRowReader;
+import org.abhishek.simplicitas.util.excel.CsvRowWriter;
+import org.junit.Test;
+
+/**
+ * Checks that the CSV reader undoes the escaping applied by the CSV writer
+ * under either formatting convention.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestCsvRowReader {
+
+    @Test
+    public void testExcelStyleEscaping() throws IOException {
+        List<List<String>> rows = this.read("\uFEFFplain,\"1,400\",\"\"\"Hello\"\" he said\"\r\n"
+            + "\"two\nlines\",,\"unterminated", ",", CsvRowWriter.EXCEL_STYLE_ESCAPING);
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList("plain", "1,400", "\"Hello\" he said"), rows.get(0));
+        assertEquals(Arrays.asList("two\nlines", "", "unterminated"), rows.get(1));
+    }
+
+    @Test
+    public void testUnixStyleEscaping() throws IOException {
+        List<List<String>> rows = this.read("1\\,400\\,000,two\\\nlines,back\\slash\n\n", ",",
+            CsvRowWriter.UNIX_STYLE_ESCAPING);
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList("1,400,000", "two\nlines", "back\\slash"), rows.get(0));
+        assertEquals(Arrays.asList(""), rows.get(1));
+    }
+
+    @Test
+    public void testMultiCharacterSeparator() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("a|b||c||", "d")), this.read("a|b\\||c\\||||d", "||",
+            CsvRowWriter.UNIX_STYLE_ESCAPING));
+        assertEquals(Arrays.asList(Arrays.asList("a|b", "a||b", "")), this.read("a|b||\"a||b\"||", "||",
+            CsvRowWriter.EXCEL_STYLE_ESCAPING));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<List<String>> rows = Arrays.asList(Arrays.asList("a, b", "\"q\"", "x\ny", ""),
+            Arrays.asList("", "", "", "last"));
+        for (int convention : new int[] { CsvRowWriter.EXCEL_STYLE_ESCAPING, CsvRowWriter.UNIX_STYLE_ESCAPING }) {
+            StringWriter out = new StringWriter();
+            CsvRowWriter writer = new CsvRowWriter(out, ";", convention, 4);
+            for (List<String> row : rows) {
+                writer.writeRow(row);
+            }
+            writer.close();
+            assertEquals(rows, this.read(out.toString(), ";", convention));
+        }
+    }
+
+    private List<List<String>> read(String csv, String separator, int convention) throws IOException {
+        CsvRowReader reader = new CsvRowReader(new StringReader(csv), separator, convention);
+        List<List<String>> rows = new ArrayList<List<String>>();
+        List<String> row = null;
+        while ((row = reader.readRow()) != null) {
+            rows.add(row);
+        }
+        assertNull(reader.readRow());
+        assertEquals(rows.size(), reader.getLineCount());
+        reader.close();
+        return rows;
+    }
+}
@@ -0,0 +1,63 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.abhishek.simplicitas.util.excel.CsvRowWriter;
+import org.junit.Test;
+
+/**
+ * Checks the escaping of fields and the assembly of lines by the CSV writer.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestCsvRowWriter {
+    private static final String EOL = System.getProperty("line.separator");
+
+    @Test
+    public void testExcelStyleEscaping() {
+        CsvRowWriter writer = new CsvRowWriter(new StringWriter(), ",", CsvRowWriter.EXCEL_STYLE_ESCAPING, 0);
+        assertEquals("plain", writer.escapeEmbeddedCharacters("  plain  "));
+        assertEquals("\"1,400\"", writer.escapeEmbeddedCharacters("1,400"));
+        assertEquals("\" two\nlines \"", writer.escapeEmbeddedCharacters(" two\nlines "));
+        assertEquals("\"\"\"Hello\"\" he said, \"", writer.escapeEmbeddedCharacters("\"Hello\" he said, "));
+        assertEquals("", writer.escapeEmbeddedCharacters(""));
+        assertEquals("", writer.escapeEmbeddedCharacters(" \t "));
+        assertEquals("\"  ends with \"\"\"", writer.escapeEmbeddedCharacters("  ends with \""));
+    }
+
+    @Test
+    public void testUnixStyleEscaping() {
+        CsvRowWriter writer = new CsvRowWriter(new StringWriter(), ",", CsvRowWriter.UNIX_STYLE_ESCAPING, 0);
+        assertEquals("  plain  ", writer.escapeEmbeddedCharacters("  plain  "));
+        assertEquals("1\\,400\\,000", writer.escapeEmbeddedCharacters("1,400,000"));
+        assertEquals("two\\\nlines", writer.escapeEmbeddedCharacters("two\nlines"));
+        assertEquals("\"quoted\"", writer.escapeEmbeddedCharacters("\"quoted\""));
+    }
+
+    @Test
+    public void testMultiCharacterSeparator() {
+        CsvRowWriter writer = new CsvRowWriter(new StringWriter(), "||", CsvRowWriter.UNIX_STYLE_ESCAPING, 0);
+        assertEquals("a|b\\||c\\|||", writer.escapeEmbeddedCharacters("a|b||c|||"));
+        writer = new CsvRowWriter(new StringWriter(), "||", CsvRowWriter.EXCEL_STYLE_ESCAPING, 0);
+        assertEquals("a|b", writer.escapeEmbeddedCharacters("a|b"));
+        assertEquals("\"a||b\"", writer.escapeEmbeddedCharacters("a||b"));
+    }
+
+    @Test
+    public void testRowAssembly() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvRowWriter writer = new CsvRowWriter(out, "\t", CsvRowWriter.EXCEL_STYLE_ESCAPING, 4);
+        writer.writeRow(Arrays.asList("", "a", "b c"));
+        writer.writeRow(Arrays.asList("1", null, "2", "", "", "wide"));
+        writer.writeRow(Arrays.<String> asList());
+        writer.close();
+        assertEquals("a\tb c" + EOL + "1\t\t2\t\t\twide" + EOL, out.toString());
+    }
+}
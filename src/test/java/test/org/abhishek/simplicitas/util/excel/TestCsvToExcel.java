@@ -0,0 +1,108 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.abhishek.simplicitas.util.common.WorkbookGenerator;
+import org.abhishek.simplicitas.util.excel.CsvWorkbookWriter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that CSV files are converted back into workbooks that convert to
+ * the same CSV files again, that numbers are typed and formatted and that
+ * long files continue on further sheets.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestCsvToExcel {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setSeed(11L);
+        generator.setRows(400);
+        generator.setColumns(10);
+        generator.setSheets(1);
+        generator.setBlankRatio(0.2);
+        generator.setFormulaRatio(0.1);
+        File workbook = new File(this.folder.getRoot(), "trip.xlsx");
+        generator.generate(workbook);
+
+        for (int convention : new int[] { ExcelUtils.EXCEL_STYLE_ESCAPING, ExcelUtils.UNIX_STYLE_ESCAPING }) {
+            File csv = this.folder.newFolder("csv" + convention);
+            File back = this.folder.newFolder("back" + convention);
+            File again = this.folder.newFolder("again" + convention);
+            ExcelUtils converter = new ExcelUtils();
+            converter.convertExcelToCSV(workbook.getPath(), csv.getPath(), ";", convention);
+            converter.setRowWindow(10);
+            converter.convertCSVToExcel(csv.getPath(), back.getPath(), ";", convention);
+            converter.convertExcelToCSV(back.getPath(), again.getPath(), ";", convention);
+
+            assertArrayEquals(Files.readAllBytes(new File(csv, "trip.csv").toPath()),
+                Files.readAllBytes(new File(again, "trip.csv").toPath()));
+        }
+    }
+
+    @Test
+    public void testCellTypes() throws IOException {
+        File csv = new File(this.folder.getRoot(), "types.csv");
+        Files.write(csv.toPath(), Arrays.asList("1,\"1,234.50\",12.5%,007,TRUE,1.50E+03,text,12345678901234567"),
+            Charset.forName("UTF-8"));
+        ExcelUtils converter = new ExcelUtils();
+        converter.convertCSVToExcel(csv.getPath(), this.folder.getRoot().getPath());
+
+        XSSFWorkbook workbook = new XSSFWorkbook(new File(this.folder.getRoot(), "types.xlsx").getPath());
+        try {
+            assertEquals("types", workbook.getSheetName(0));
+            Row row = workbook.getSheetAt(0).getRow(0);
+            assertEquals(1.0, row.getCell(0).getNumericCellValue(), 0.0);
+            assertEquals(1234.5, row.getCell(1).getNumericCellValue(), 0.0);
+            assertEquals("#,##0.00", row.getCell(1).getCellStyle().getDataFormatString());
+            assertEquals(0.125, row.getCell(2).getNumericCellValue(), 0.0);
+            assertEquals("0.0%", row.getCell(2).getCellStyle().getDataFormatString());
+            assertEquals("007", row.getCell(3).getStringCellValue());
+            assertTrue(row.getCell(4).getBooleanCellValue());
+            assertEquals(1500.0, row.getCell(5).getNumericCellValue(), 0.0);
+            assertEquals(Cell.CELL_TYPE_STRING, row.getCell(6).getCellType());
+            assertEquals(Cell.CELL_TYPE_STRING, row.getCell(7).getCellType());
+        } finally {
+            workbook.close();
+        }
+    }
+
+    @Test
+    public void testStylesShared() throws IOException {
+        File file = new File(this.folder.getRoot(), "styles.xlsx");
+        CsvWorkbookWriter writer = new CsvWorkbookWriter(file, 5, true);
+        try {
+            writer.startSheet(0, "Styles");
+            for (int i = 0; i < 1000; i++) {
+                writer.writeRow(Arrays.asList(i + ".25", i + ".5%", "1," + (100 + i) + ".00", String.valueOf(i)));
+            }
+            writer.endSheet(0);
+            writer.save();
+            assertEquals(1000, writer.getRowCount());
+            assertEquals(3, writer.getStyleCount());
+        } finally {
+            writer.close();
+        }
+    }
+}
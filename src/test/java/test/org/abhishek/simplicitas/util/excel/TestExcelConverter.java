@@ -0,0 +1,111 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.abhishek.simplicitas.util.common.ExcelConverter;
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a single converter shared by several threads produces the same
+ * CSV files as converting each workbook on its own.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestExcelConverter {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSharedConverter() throws Exception {
+        File source = this.folder.newFolder("source");
+        final File[] workbooks = new File[] {
+            WorkbookFixtures.createTable(new XSSFWorkbook(), new File(source, "first.xlsx"), 300),
+            WorkbookFixtures.createTable(new HSSFWorkbook(), new File(source, "second.xls"), 200)
+        };
+        File expected = this.folder.newFolder("expected");
+        new ExcelUtils().convertExcelToCSV(source.getPath(), expected.getPath(), ";", ExcelUtils.UNIX_STYLE_ESCAPING);
+
+        // Settings changed once the converter has been created are ignored.
+        ExcelUtils settings = new ExcelUtils();
+        final ExcelConverter converter = new ExcelConverter(settings, ";", ExcelUtils.UNIX_STYLE_ESCAPING);
+        settings.setFixedRowWidth(20);
+
+        List<File> destinations = new ArrayList<File>();
+        List<Future<Void>> conversions = new ArrayList<Future<Void>>();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 8; i++) {
+                final File destination = this.folder.newFolder("shared" + i);
+                destinations.add(destination);
+                conversions.add(threads.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (File workbook : workbooks) {
+                            converter.convert(workbook, destination);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> conversion : conversions) {
+                conversion.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        for (File destination : destinations) {
+            this.assertSameContents(new File(expected, "first.csv"), new File(destination, "first.csv"));
+            this.assertSameContents(new File(expected, "second.csv"), new File(destination, "second.csv"));
+        }
+    }
+
+    @Test
+    public void testProjectionCopied() throws IOException {
+        File workbook = WorkbookFixtures.createTable(new XSSFWorkbook(), new File(this.folder.getRoot(),
+            "projected.xlsx"), 50);
+        ExcelUtils settings = new ExcelUtils();
+        settings.getProjection().selectColumns("1,0");
+        settings.getProjection().selectRows("5-20");
+        ExcelConverter converter = new ExcelConverter(settings);
+        File before = this.folder.newFolder("before");
+        converter.convert(workbook, before);
+
+        // Changing the projection of the settings afterwards leaves the
+        // converter as it was.
+        settings.getProjection().selectColumn(4);
+        settings.getProjection().selectSheet("Missing");
+        settings.getProjection().selectRows(0, 1);
+        File after = this.folder.newFolder("after");
+        converter.convert(workbook, after);
+
+        this.assertSameContents(new File(before, "projected.csv"), new File(after, "projected.csv"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConvention() {
+        new ExcelConverter(new ExcelUtils(), ",", 99);
+    }
+
+    private void assertSameContents(File expected, File actual) throws IOException {
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.abhishek.simplicitas.util.common.ExcelConverter;
+import org.abhishek.simplicitas.util.common.ExcelFolderWatcher;
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.abhishek.simplicitas.util.common.WorkbookGenerator;
+import org.abhishek.simplicitas.util.excel.ConversionListener;
+import org.abhishek.simplicitas.util.excel.ConversionMetrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a watched folder has the workbooks already in it, and those
+ * dropped into it, converted once each, only after they have settled.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestExcelFolderWatcher {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWatch() throws Exception {
+        File inbox = this.folder.newFolder("inbox");
+        File outbox = this.folder.newFolder("outbox");
+        File expected = this.folder.newFolder("expected");
+        File staging = this.folder.newFolder("staging");
+        File existing = this.generate(new File(inbox, "existing.xlsx"), 1L);
+        File dropped = this.generate(new File(staging, "dropped.xlsx"), 2L);
+
+        final Map<String, Integer> conversions = new ConcurrentHashMap<String, Integer>();
+        final CountDownLatch converted = new CountDownLatch(2);
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.addListener(new ConversionListener() {
+            @Override
+            public void fileStarted(File workbook) {
+                // Not needed.
+            }
+
+            @Override
+            public void sheetConverted(File workbook, String sheetName, long rows) {
+                // Not needed.
+            }
+
+            @Override
+            public void fileConverted(File workbook, List<File> csvFiles, long elapsedMillis) {
+                Integer count = conversions.get(workbook.getName());
+                conversions.put(workbook.getName(), (count == null) ? 1 : count + 1);
+                converted.countDown();
+            }
+
+            @Override
+            public void fileFailed(File workbook, RuntimeException failure) {
+                conversions.put(workbook.getName(), -1);
+            }
+        });
+        ExcelUtils settings = new ExcelUtils();
+        settings.setStreaming(true);
+        settings.setMetrics(metrics);
+        final ExcelFolderWatcher watcher = new ExcelFolderWatcher(new ExcelConverter(settings), 2);
+        watcher.setSettleMillis(300);
+
+        final File source = inbox;
+        final File destination = outbox;
+        Thread watching = new Thread() {
+            @Override
+            public void run() {
+                watcher.watch(source, destination);
+            }
+        };
+        watching.start();
+        try {
+            // Copied in slowly, pausing for less than the settle time, and
+            // alongside a lock file that is never converted.
+            Files.write(new File(inbox, "~$dropped.xlsx").toPath(), new byte[] { 1, 2, 3 });
+            byte[] content = Files.readAllBytes(dropped.toPath());
+            OutputStream out = new FileOutputStream(new File(inbox, "dropped.xlsx"));
+            try {
+                for (int i = 0; i < content.length; i += content.length / 4 + 1) {
+                    out.write(content, i, Math.min(content.length / 4 + 1, content.length - i));
+                    out.flush();
+                    Thread.sleep(100);
+                }
+            } finally {
+                out.close();
+            }
+            assertTrue(converted.await(30, TimeUnit.SECONDS));
+        } finally {
+            watcher.stop();
+            watching.join(30000);
+        }
+        assertFalse(watching.isAlive());
+
+        assertEquals(Integer.valueOf(1), conversions.get("existing.xlsx"));
+        assertEquals(Integer.valueOf(1), conversions.get("dropped.xlsx"));
+        assertEquals(2, conversions.size());
+        assertFalse(new File(outbox, "~$dropped.csv").exists());
+
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.convertExcelToCSV(staging.getPath(), expected.getPath());
+        converter.convertExcelToCSV(existing.getPath(), expected.getPath());
+        for (String name : new String[] { "existing.csv", "dropped.csv" }) {
+            assertArrayEquals(Files.readAllBytes(new File(expected, name).toPath()),
+                Files.readAllBytes(new File(outbox, name).toPath()));
+        }
+    }
+
+    private File generate(File file, long seed) throws IOException {
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setSeed(seed);
+        generator.setRows(200);
+        generator.setColumns(6);
+        generator.setSheets(1);
+        generator.generate(file);
+        return file;
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.abhishek.simplicitas.util.common.ExcelInspector;
+import org.abhishek.simplicitas.util.excel.SheetDimensions;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the sheet names and dimensions reported by the inspector match
+ * those of the workbook.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestExcelInspector {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testXlsx() throws IOException {
+        // POI leaves the dimension of the sheets it writes at A1, so the
+        // dimension Excel would have written is set by hand.
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        this.populate(workbook);
+        workbook.getSheetAt(0).getCTWorksheet().getDimension().setRef("B3:F120");
+        this.check(this.write(workbook, "sample.xlsx"), 2, 1);
+    }
+
+    @Test
+    public void testXls() throws IOException {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        this.populate(workbook);
+        this.check(this.write(workbook, "sample.xls"), 0, 0);
+    }
+
+    private void check(File workbook, int firstRow, int firstColumn) {
+        List<SheetDimensions> sheets = ExcelInspector.inspect(workbook);
+        assertEquals(2, sheets.size());
+
+        SheetDimensions data = sheets.get(0);
+        assertEquals("Data", data.getSheetName());
+        assertTrue(data.isDeclared());
+        assertEquals(firstRow, data.getFirstRow());
+        assertEquals(120, data.getLastRow());
+        assertEquals(120 - firstRow, data.getRowCount());
+        assertEquals(firstColumn, data.getFirstColumn());
+        assertEquals(6, data.getLastColumn());
+        assertEquals(6 - firstColumn, data.getColumnCount());
+
+        assertEquals("Other sheet", sheets.get(1).getSheetName());
+        assertEquals(1, sheets.get(1).getLastRow());
+        assertEquals(1, sheets.get(1).getLastColumn());
+    }
+
+    private void populate(Workbook workbook) {
+        Sheet sheet = workbook.createSheet("Data");
+        for (int i = 2; i < 120; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(1).setCellValue(i);
+            row.createCell(i % 5 + 1).setCellValue("row " + i);
+        }
+        workbook.createSheet("Other sheet").createRow(0).createCell(0).setCellValue("only");
+    }
+
+    private File write(Workbook workbook, String name) throws IOException {
+        File file = this.folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
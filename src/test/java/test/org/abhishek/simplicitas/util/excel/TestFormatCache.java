@@ -0,0 +1,75 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.abhishek.simplicitas.util.excel.FormatCache;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+/**
+ * Checks that numbers formatted through the cache of cell styles read the
+ * same as the cells of a loaded workbook formatted by a DataFormatter.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestFormatCache {
+    private static final String[] FORMATS = new String[] {
+        "General", "0", "0.00", "#,##0.00", "0%", "0.00E+00", "0.00E00", "# ?/?", "# ??/??",
+        "$#,##0.00_);($#,##0.00)", "#,##0;(#,##0);\"zero\"", "#,###", "dd/mm/yyyy", "[h]:mm:ss", "@"
+    };
+    private static final double[] VALUES = new double[] {
+        -1234.5, 1234.5, 0, -0.0, -0.001, 2.675, 0.125, 0.3, 1.0E20, 1.0E-10, 1000000000000000.2, 12345678901d, 42
+    };
+
+    @Test
+    public void testSameAsLoadedCells() {
+        Workbook workbook = new HSSFWorkbook();
+        DataFormat dataFormat = workbook.createDataFormat();
+        Cell cell = workbook.createSheet().createRow(0).createCell(0);
+        DataFormatter formatter = new DataFormatter(true);
+        FormatCache cache = new FormatCache(true);
+
+        // Both are given the numbers in the same order, as the Format of a
+        // format string is compiled for the first number it is needed for.
+        for (int i = 0; i < FORMATS.length; i++) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(dataFormat.getFormat(FORMATS[i]));
+            cell.setCellStyle(style);
+            assertFalse(cache.isCached(i));
+            cache.cache(i, style.getDataFormat(), style.getDataFormatString());
+            assertTrue(cache.isCached(i));
+            for (double value : VALUES) {
+                cell.setCellValue(value);
+                assertEquals(FORMATS[i] + " " + value, formatter.formatCellValue(cell), cache.format(i, value, false));
+            }
+        }
+    }
+
+    @Test
+    public void testNoFormat() {
+        FormatCache cache = new FormatCache(true);
+        cache.cache(200, 0, null);
+        cache.cache(3, 0, " ");
+        assertEquals("1", cache.format(200, 1, false));
+        assertEquals("12345678901", cache.format(200, 12345678901d, false));
+        assertEquals("2.5", cache.format(3, 2.5, false));
+    }
+
+    @Test
+    public void testDate1904() {
+        FormatCache cache = new FormatCache(true);
+        cache.cache(0, 164, "yyyy-mm-dd");
+        assertEquals("1900-01-01", cache.format(0, 1, false));
+        assertEquals("1904-01-02", cache.format(0, 1, true));
+    }
+}
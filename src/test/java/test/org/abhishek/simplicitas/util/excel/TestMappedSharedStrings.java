@@ -0,0 +1,55 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.abhishek.simplicitas.util.excel.MappedSharedStrings;
+import org.junit.Test;
+
+/**
+ * Checks that entries read back from the mapped file exactly as they were
+ * added.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestMappedSharedStrings {
+    @Test
+    public void testEntries() throws IOException {
+        String[] entries = {
+            "plain", "", "caf\u00E9 \u20AC", "two\nlines", "\uD83D\uDE00 surrogate pair"
+        };
+        MappedSharedStrings strings = new MappedSharedStrings();
+        try {
+            for (String entry : entries) {
+                strings.add(entry);
+            }
+            for (int i = 0; i < 10000; i++) {
+                strings.add("entry " + i);
+            }
+            strings.finish();
+            assertEquals(entries.length + 10000, strings.size());
+            for (int i = 0; i < entries.length; i++) {
+                assertEquals(entries[i], strings.getEntryAt(i));
+            }
+            assertEquals("entry 9999", strings.getEntryAt(strings.size() - 1));
+        } finally {
+            strings.close();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws IOException {
+        MappedSharedStrings strings = new MappedSharedStrings();
+        try {
+            strings.add("only");
+            strings.finish();
+            strings.getEntryAt(1);
+        } finally {
+            strings.close();
+        }
+    }
+}
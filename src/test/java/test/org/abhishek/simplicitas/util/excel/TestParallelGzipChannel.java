@@ -0,0 +1,108 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.abhishek.simplicitas.util.excel.ChannelWriter;
+import org.abhishek.simplicitas.util.excel.ParallelGzipChannel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the blocks compressed in parallel read back as a single stream.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestParallelGzipChannel {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append(i).append(",row ").append(i * 7).append(",\"quoted\"\n");
+        }
+        File file = this.folder.newFile("out.csv.gz");
+        ChannelWriter writer = new ChannelWriter(new ParallelGzipChannel(this.open(file), 3, 1000), UTF_8, 64,
+            false);
+        writer.write(text.toString());
+        writer.close();
+        assertArrayEquals(text.toString().getBytes(UTF_8), gunzip(file));
+    }
+
+    @Test
+    public void testSharedExecutor() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            File first = this.folder.newFile("first.csv.gz");
+            File second = this.folder.newFile("second.csv.gz");
+            ChannelWriter firstWriter = new ChannelWriter(new ParallelGzipChannel(this.open(first), executor, 2, 100),
+                UTF_8, 16, false);
+            ChannelWriter secondWriter = new ChannelWriter(new ParallelGzipChannel(this.open(second), executor, 1,
+                100), UTF_8, 16, false);
+            StringBuilder firstText = new StringBuilder();
+            StringBuilder secondText = new StringBuilder();
+            // Far more blocks than are ever in flight, so they are reused.
+            for (int i = 0; i < 2000; i++) {
+                String line = i + ",row " + i + "\n";
+                firstWriter.write(line);
+                firstText.append(line);
+                line = "other " + (i * 3) + "\n";
+                secondWriter.write(line);
+                secondText.append(line);
+            }
+            firstWriter.close();
+            secondWriter.close();
+            assertFalse(executor.isShutdown());
+            assertArrayEquals(firstText.toString().getBytes(UTF_8), gunzip(first));
+            assertArrayEquals(secondText.toString().getBytes(UTF_8), gunzip(second));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = this.folder.newFile("empty.csv.gz");
+        new ParallelGzipChannel(this.open(file), 2, 1000).close();
+        assertArrayEquals(new byte[0], gunzip(file));
+    }
+
+    private FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    static byte[] gunzip(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count = 0;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
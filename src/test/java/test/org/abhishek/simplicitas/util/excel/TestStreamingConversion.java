@@ -0,0 +1,550 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.abhishek.simplicitas.util.common.SheetRowIterator;
+import org.abhishek.simplicitas.util.excel.Projection;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the streaming conversion, and the conversion of sheets on worker
+ * threads, produce the same CSV file as the conversion through the user model.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestStreamingConversion {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private int conversions = 0;
+
+    @Test
+    public void testXlsxExcelStyle() throws IOException {
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsxUnixStyle() throws IOException {
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ";", ExcelUtils.UNIX_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsExcelStyle() throws IOException {
+        this.compare(this.createWorkbook(new HSSFWorkbook(), "sample.xls"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsUnixStyle() throws IOException {
+        this.compare(this.createWorkbook(new HSSFWorkbook(), "sample.xls"), "\t", ExcelUtils.UNIX_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsxEdgeValues() throws IOException {
+        this.compare(this.createWorkbook(WorkbookFixtures.withEdgeValues(new XSSFWorkbook()), "sample.xlsx"), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsxWithoutStyles() throws IOException {
+        File workbook = WorkbookFixtures.createWithoutStyles(new File(this.folder.getRoot(), "unstyled.xlsx"));
+        this.compare(workbook, ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsEdgeValues() throws IOException {
+        this.compare(this.createWorkbook(WorkbookFixtures.withEdgeValues(new HSSFWorkbook()), "sample.xls"), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsStyledBlanks() throws IOException {
+        File workbook = this.createWorkbook(WorkbookFixtures.withStyledBlanks(new HSSFWorkbook()), "sample.xls");
+        this.compare(workbook, ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+        ExcelUtils declared = new ExcelUtils();
+        declared.setStreaming(true);
+        declared.setDeclaredRowWidth(true);
+        this.compare(workbook, ";", ExcelUtils.EXCEL_STYLE_ESCAPING, declared);
+    }
+
+    @Test
+    public void testXlsxFixedRowWidth() throws IOException {
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING, 8);
+    }
+
+    @Test
+    public void testXlsFixedRowWidth() throws IOException {
+        this.compare(this.createWorkbook(new HSSFWorkbook(), "sample.xls"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING, 8);
+    }
+
+    @Test
+    public void testXlsDeclaredRowWidth() throws IOException {
+        File workbook = this.createWorkbook(new HSSFWorkbook(), "sample.xls");
+        File loaded = this.folder.newFolder("loaded");
+        File streamed = this.folder.newFolder("streamed");
+
+        new ExcelUtils().convertExcelToCSV(workbook.getPath(), loaded.getPath(), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING);
+
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setDeclaredRowWidth(true);
+        converter.convertExcelToCSV(workbook.getPath(), streamed.getPath(), ",", ExcelUtils.EXCEL_STYLE_ESCAPING);
+
+        assertArrayEquals(Files.readAllBytes(new File(loaded, "sample.csv").toPath()),
+            Files.readAllBytes(new File(streamed, "sample.csv").toPath()));
+    }
+
+    @Test
+    public void testXlsxSheetThreads() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setSheetThreads(2);
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING,
+            converter);
+    }
+
+    @Test
+    public void testXlsSheetThreads() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setSheetThreads(3);
+        this.compare(this.createWorkbook(new HSSFWorkbook(), "sample.xls"), ";", ExcelUtils.UNIX_STYLE_ESCAPING,
+            converter);
+    }
+
+    @Test
+    public void testMappedSharedStrings() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setSharedStringsThreshold(0);
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING,
+            converter);
+    }
+
+    @Test
+    public void testXlsxPipelined() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setPipelined(true);
+        this.compare(this.createWorkbook(this.withBulkSheet(new XSSFWorkbook()), "sample.xlsx"), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING, converter);
+    }
+
+    @Test
+    public void testXlsPipelined() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setPipelined(true);
+        this.compare(this.createWorkbook(this.withBulkSheet(new HSSFWorkbook()), "sample.xls"), ";",
+            ExcelUtils.UNIX_STYLE_ESCAPING, converter);
+    }
+
+    @Test
+    public void testXlsxSparseRows() throws IOException {
+        this.compare(this.createWorkbook(this.withSparseSheet(new XSSFWorkbook(), 16000), "sample.xlsx"), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    @Test
+    public void testXlsSparseRows() throws IOException {
+        this.compare(this.createWorkbook(this.withSparseSheet(new HSSFWorkbook(), 250), "sample.xls"), ",",
+            ExcelUtils.EXCEL_STYLE_ESCAPING);
+    }
+
+    /**
+     * Adds a sheet whose rows hold a handful of cells spread far apart.
+     */
+    private Workbook withSparseSheet(Workbook workbook, int lastColumn) {
+        Sheet sheet = workbook.createSheet("Sparse");
+        for (int i = 0; i < 20; i++) {
+            Row row = sheet.createRow(i * 2);
+            row.createCell((i * 37) % lastColumn).setCellValue(i);
+            row.createCell(lastColumn - i).setCellValue("last " + i);
+            if (i % 3 == 0) {
+                row.createCell(lastColumn / 2).setCellValue("");
+            }
+        }
+        return workbook;
+    }
+
+    /**
+     * Adds a sheet long enough to be formatted in several batches, with gaps.
+     */
+    private Workbook withBulkSheet(Workbook workbook) {
+        Sheet sheet = workbook.createSheet("Bulk");
+        for (int i = 0; i < 2000; i++) {
+            if (i % 7 != 3) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue(i);
+                row.createCell(i % 5 + 1).setCellValue("row " + i + ", \"bulk\"");
+            }
+        }
+        return workbook;
+    }
+
+    @Test
+    public void testIterateSheet() throws IOException {
+        File xlsx = this.createWorkbook(new XSSFWorkbook(), "sample.xlsx");
+        File xls = this.createWorkbook(new HSSFWorkbook(), "sample.xls");
+        ExcelUtils loaded = new ExcelUtils();
+        ExcelUtils streamed = new ExcelUtils();
+        streamed.setStreaming(true);
+
+        List<String[]> expected = this.readRows(loaded.iterateSheet(xlsx.getPath(), 0));
+        assertEquals(9, expected.size());
+        assertArrayEquals(new String[] {
+            "1", "2.5", "three", "true", "3.5"
+        }, expected.get(0));
+        assertEquals(0, expected.get(1).length);
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xlsx.getPath(), "Data")));
+        this.assertSameRows(expected, this.readRows(loaded.iterateSheet(xls.getPath(), "Data")));
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xls.getPath(), 0)));
+
+        expected = this.readRows(loaded.iterateSheet(xlsx.getPath(), "Second"));
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xlsx.getPath(), 2)));
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xls.getPath(), "Second")));
+
+        // Numbers are rendered as the conversion renders them, however
+        // awkward the number or its format.
+        xlsx = this.createWorkbook(WorkbookFixtures.withEdgeValues(new XSSFWorkbook()), "edges.xlsx");
+        xls = this.createWorkbook(WorkbookFixtures.withEdgeValues(new HSSFWorkbook()), "edges.xls");
+        expected = this.readRows(loaded.iterateSheet(xlsx.getPath(), "Edges"));
+        assertEquals(WorkbookFixtures.edgeValueCount(), expected.size());
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xlsx.getPath(), "Edges")));
+        this.assertSameRows(expected, this.readRows(loaded.iterateSheet(xls.getPath(), 0)));
+        this.assertSameRows(expected, this.readRows(streamed.iterateSheet(xls.getPath(), 0)));
+
+        // Abandoning a streamed sheet part way through stops the parser.
+        SheetRowIterator rows = streamed.iterateSheet(xls.getPath(), 0);
+        assertTrue(rows.hasNext());
+        rows.next();
+        rows.close();
+    }
+
+    private List<String[]> readRows(SheetRowIterator rows) {
+        List<String[]> read = new ArrayList<String[]>();
+        try {
+            while (rows.hasNext()) {
+                read.add(rows.next());
+            }
+        } finally {
+            rows.close();
+        }
+        return read;
+    }
+
+    private void assertSameRows(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testStitchedByteOrderMark() throws IOException {
+        File workbook = this.createWorkbook(new XSSFWorkbook(), "sample.xlsx");
+        File loaded = this.folder.newFolder("loaded");
+        File stitched = this.folder.newFolder("stitched");
+
+        ExcelUtils converter = new ExcelUtils();
+        converter.setByteOrderMark(true);
+        converter.setCharset(Charset.forName("UTF-16LE"));
+        converter.convertExcelToCSV(workbook.getPath(), loaded.getPath());
+        converter.setSheetThreads(2);
+        converter.convertExcelToCSV(workbook.getPath(), stitched.getPath());
+
+        byte[] expected = Files.readAllBytes(new File(loaded, "sample.csv").toPath());
+        assertArrayEquals(expected, Files.readAllBytes(new File(stitched, "sample.csv").toPath()));
+        assertEquals((byte) 0xFF, expected[0]);
+        assertEquals((byte) 0xFE, expected[1]);
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        File workbook = this.createWorkbook(new HSSFWorkbook(), "sample.xls");
+        File loaded = this.folder.newFolder("loaded");
+        File compressed = this.folder.newFolder("compressed");
+
+        new ExcelUtils().convertExcelToCSV(workbook.getPath(), loaded.getPath());
+        ExcelUtils converter = new ExcelUtils();
+        converter.setGzip(true);
+        converter.setGzipThreads(2);
+        converter.setSheetThreads(2);
+        converter.convertExcelToCSV(workbook.getPath(), compressed.getPath());
+
+        assertArrayEquals(Files.readAllBytes(new File(loaded, "sample.csv").toPath()),
+            TestParallelGzipChannel.gunzip(new File(compressed, "sample.csv.gz")));
+        assertFalse(new File(compressed, "sample.csv").exists());
+    }
+
+    @Test
+    public void testEvaluateFormulas() throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setEvaluateFormulas(true);
+        this.compare(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), ",", ExcelUtils.EXCEL_STYLE_ESCAPING,
+            converter);
+    }
+
+    @Test
+    public void testCachedFormulaResults() throws IOException {
+        Workbook workbook = new HSSFWorkbook();
+        Row row = workbook.createSheet("Stale").createRow(0);
+        row.createCell(0).setCellValue(2);
+        row.createCell(1).setCellFormula("A1*10");
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+        // The cached result no longer matches the formula.
+        row.getCell(0).setCellValue(3);
+        File file = new File(this.folder.getRoot(), "stale.xls");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+
+        File cached = this.folder.newFolder("cached");
+        File evaluated = this.folder.newFolder("evaluated");
+        new ExcelUtils().convertExcelToCSV(file.getPath(), cached.getPath());
+        ExcelUtils converter = new ExcelUtils();
+        converter.setEvaluateFormulas(true);
+        converter.convertExcelToCSV(file.getPath(), evaluated.getPath());
+
+        assertEquals("3,20", new String(Files.readAllBytes(new File(cached, "stale.csv").toPath())));
+        assertEquals("3,30", new String(Files.readAllBytes(new File(evaluated, "stale.csv").toPath())));
+    }
+
+    @Test
+    public void testCsvPerSheet() throws IOException {
+        File workbook = this.createWorkbook(new XSSFWorkbook(), "sample.xlsx");
+        File loaded = this.folder.newFolder("loaded");
+        File split = this.folder.newFolder("split");
+
+        new ExcelUtils().convertExcelToCSV(workbook.getPath(), loaded.getPath());
+        ExcelUtils converter = new ExcelUtils();
+        converter.setCsvPerSheet(true);
+        converter.setSheetThreads(2);
+        converter.convertExcelToCSV(workbook.getPath(), split.getPath());
+
+        String whole = new String(Files.readAllBytes(new File(loaded, "sample.csv").toPath()));
+        String data = new String(Files.readAllBytes(new File(split, "sample_Data.csv").toPath()));
+        String second = new String(Files.readAllBytes(new File(split, "sample_Second.csv").toPath()));
+        assertEquals(whole, data + System.getProperty("line.separator") + second);
+        assertFalse(new File(split, "sample_Empty.csv").exists());
+        assertFalse(new File(split, "sample.csv").exists());
+    }
+
+    @Test
+    public void testCsvPerSheetIllegalNames() throws IOException {
+        Workbook book = new XSSFWorkbook();
+        for (String name : new String[] {
+            "a<b>", "A|B>", "\"quoted\""
+        }) {
+            book.createSheet(name).createRow(0).createCell(0).setCellValue(name);
+        }
+        File workbook = new File(this.folder.getRoot(), "names.xlsx");
+        FileOutputStream out = new FileOutputStream(workbook);
+        try {
+            book.write(out);
+        } finally {
+            out.close();
+        }
+        File split = this.folder.newFolder("split");
+        ExcelUtils converter = new ExcelUtils();
+        converter.setCsvPerSheet(true);
+        converter.setSheetThreads(2);
+        converter.convertExcelToCSV(workbook.getPath(), split.getPath());
+
+        // The second sheet's name maps onto the first's file name but for
+        // case, so it is told apart by its index.
+        assertEquals("a<b>", new String(Files.readAllBytes(new File(split, "names_a_b_.csv").toPath())));
+        assertEquals("A|B>", new String(Files.readAllBytes(new File(split, "names_A_B__1.csv").toPath())));
+        assertEquals("\"\"\"quoted\"\"\"",
+            new String(Files.readAllBytes(new File(split, "names__quoted_.csv").toPath())));
+        assertEquals(3, split.list().length);
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        Projection projection = new Projection();
+        projection.selectSheets("Data,2");
+        projection.selectColumns("2,1,7");
+        projection.selectRows("-3");
+        String nl = System.getProperty("line.separator");
+        String expected = "three,2.5," + nl + ",," + nl + ",\"A, with comma\"," + nl + ",,three-x" + nl + ",," + nl
+            + ",123456789,";
+
+        for (String name : new String[] {
+            "sample.xlsx", "sample.xls"
+        }) {
+            File workbook = this.createWorkbook(name.endsWith("x") ? new XSSFWorkbook() : new HSSFWorkbook(), name);
+            ExcelUtils loaded = new ExcelUtils();
+            loaded.setProjection(projection);
+            assertEquals(name, expected, this.convert(workbook, loaded));
+            ExcelUtils streamed = new ExcelUtils();
+            streamed.setProjection(projection);
+            streamed.setStreaming(true);
+            assertEquals(name, expected, this.convert(workbook, streamed));
+            streamed.setPipelined(true);
+            assertEquals(name, expected, this.convert(workbook, streamed));
+        }
+    }
+
+    @Test
+    public void testProjectionByHeader() throws IOException {
+        Projection projection = new Projection();
+        projection.selectSheet("Data");
+        projection.selectColumn("three");
+        projection.selectColumn(0);
+
+        for (String name : new String[] {
+            "sample.xlsx", "sample.xls"
+        }) {
+            File workbook = this.createWorkbook(name.endsWith("x") ? new XSSFWorkbook() : new HSSFWorkbook(), name);
+            ExcelUtils loaded = new ExcelUtils();
+            loaded.setProjection(projection);
+            ExcelUtils streamed = new ExcelUtils();
+            streamed.setProjection(projection);
+            streamed.setStreaming(true);
+            String expected = this.convert(workbook, loaded);
+            assertTrue(expected.startsWith("three,1" + System.getProperty("line.separator")));
+            assertEquals(9, expected.split(System.getProperty("line.separator")).length);
+            assertEquals(name, expected, this.convert(workbook, streamed));
+            loaded.setSheetThreads(2);
+            assertEquals(name, expected, this.convert(workbook, loaded));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testProjectionUnknownHeader() throws IOException {
+        Projection projection = new Projection();
+        projection.selectColumn("missing");
+        ExcelUtils streamed = new ExcelUtils();
+        streamed.setProjection(projection);
+        streamed.setStreaming(true);
+        this.convert(this.createWorkbook(new XSSFWorkbook(), "sample.xlsx"), streamed);
+    }
+
+    private String convert(File workbook, ExcelUtils converter) throws IOException {
+        File destination = this.folder.newFolder("converted" + (++this.conversions));
+        converter.convertExcelToCSV(workbook.getPath(), destination.getPath());
+        String csvName = workbook.getName().substring(0, workbook.getName().lastIndexOf('.')) + ".csv";
+        return new String(Files.readAllBytes(new File(destination, csvName).toPath()), Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void testPartRows() throws IOException {
+        File workbook = this.createWorkbook(new XSSFWorkbook(), "sample.xlsx");
+        String whole = this.convert(workbook, new ExcelUtils());
+        ExcelUtils converter = new ExcelUtils();
+        converter.setPartRows(4);
+        converter.setPartHeader(true);
+        File destination = this.folder.newFolder("parts");
+        converter.convertExcelToCSV(workbook.getPath(), destination.getPath());
+
+        assertFalse(new File(destination, "sample.csv").exists());
+        List<String> manifest = Files.readAllLines(new File(destination, "sample.parts").toPath(),
+            Charset.forName("UTF-8"));
+        assertEquals(5, manifest.size());
+        assertEquals("sample_part00001.csv\t0\t4\t5", manifest.get(1).substring(0,
+            manifest.get(1).lastIndexOf('\t')));
+        assertEquals("sample_part00002.csv\t5\t8\t4", manifest.get(2).substring(0,
+            manifest.get(2).lastIndexOf('\t')));
+        assertEquals("sample_part00003.csv\t9\t10\t2", manifest.get(3).substring(0,
+            manifest.get(3).lastIndexOf('\t')));
+        assertEquals("# complete", manifest.get(4));
+
+        String nl = System.getProperty("line.separator");
+        String header = whole.substring(0, whole.indexOf(nl));
+        StringBuilder joined = new StringBuilder();
+        for (int i = 1; i <= 3; i++) {
+            String part = new String(Files.readAllBytes(new File(destination, "sample_part0000" + i + ".csv")
+                .toPath()), Charset.forName("UTF-8"));
+            assertTrue(part.startsWith(header + nl));
+            if (i > 1) {
+                part = part.substring(header.length() + nl.length());
+                joined.append(nl);
+            }
+            joined.append(part);
+        }
+        assertEquals(whole, joined.toString());
+    }
+
+    @Test
+    public void testPartBytes() throws IOException {
+        File workbook = this.createWorkbook(this.withBulkSheet(new HSSFWorkbook()), "sample.xls");
+        String whole = this.convert(workbook, new ExcelUtils());
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setPartBytes(4096);
+        File destination = this.folder.newFolder("parts");
+        converter.convertExcelToCSV(workbook.getPath(), destination.getPath());
+
+        List<String> manifest = Files.readAllLines(new File(destination, "sample.parts").toPath(),
+            Charset.forName("UTF-8"));
+        assertTrue(manifest.size() > 4);
+        StringBuilder joined = new StringBuilder();
+        long nextRow = 0;
+        for (String line : manifest.subList(1, manifest.size() - 1)) {
+            String[] fields = line.split("\t");
+            assertEquals(nextRow, Long.parseLong(fields[1]));
+            nextRow = Long.parseLong(fields[2]) + 1;
+            byte[] part = Files.readAllBytes(new File(destination, fields[0]).toPath());
+            assertEquals(Long.parseLong(fields[4]), part.length);
+            if (joined.length() > 0) {
+                joined.append(System.getProperty("line.separator"));
+            }
+            joined.append(new String(part, Charset.forName("UTF-8")));
+        }
+        assertEquals(whole, joined.toString());
+    }
+
+    protected void compare(File workbook, String separator, int formattingConvention) throws IOException {
+        this.compare(workbook, separator, formattingConvention, 0);
+    }
+
+    protected void compare(File workbook, String separator, int formattingConvention, int fixedRowWidth)
+        throws IOException {
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.setFixedRowWidth(fixedRowWidth);
+        this.compare(workbook, separator, formattingConvention, converter);
+    }
+
+    protected void compare(File workbook, String separator, int formattingConvention, ExcelUtils candidate)
+        throws IOException {
+        File loaded = this.folder.newFolder("loaded");
+        File streamed = this.folder.newFolder("streamed");
+        String csvName = workbook.getName().substring(0, workbook.getName().lastIndexOf('.')) + ".csv";
+
+        ExcelUtils converter = new ExcelUtils();
+        converter.convertExcelToCSV(workbook.getPath(), loaded.getPath(), separator, formattingConvention);
+
+        candidate.convertExcelToCSV(workbook.getPath(), streamed.getPath(), separator, formattingConvention);
+
+        assertArrayEquals(Files.readAllBytes(new File(loaded, csvName).toPath()),
+            Files.readAllBytes(new File(streamed, csvName).toPath()));
+    }
+
+    protected File createWorkbook(Workbook workbook, String name) throws IOException {
+        return WorkbookFixtures.createSample(workbook, new File(this.folder.getRoot(), name));
+    }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.abhishek.simplicitas.util.common.ExcelUtils;
+import org.abhishek.simplicitas.util.common.WorkbookGenerator;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that generated workbooks have the requested shape, can be generated
+ * again from the same seed and carry the results of their formulae.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public class TestWorkbookGenerator {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testShape() throws IOException {
+        WorkbookGenerator generator = this.newGenerator(1L);
+        generator.setStringCount(5);
+        File file = new File(this.folder.getRoot(), "shape.xlsx");
+        generator.generate(file);
+
+        XSSFWorkbook workbook = new XSSFWorkbook(file.getPath());
+        try {
+            assertEquals(2, workbook.getNumberOfSheets());
+            assertEquals(300, workbook.getSheetAt(1).getLastRowNum());
+            assertEquals(12, workbook.getSheetAt(0).getRow(0).getLastCellNum());
+            assertEquals("Column 12", workbook.getSheetAt(0).getRow(0).getCell(11).getStringCellValue());
+            // The headers and no more than five distinct strings.
+            assertTrue(workbook.getSharedStringSource().getUniqueCount() <= 12 + 5);
+        } finally {
+            workbook.close();
+        }
+    }
+
+    @Test
+    public void testReproducible() throws IOException {
+        byte[] first = this.generateAndConvert(this.newGenerator(7L), "first");
+        byte[] second = this.generateAndConvert(this.newGenerator(7L), "second");
+        byte[] other = this.generateAndConvert(this.newGenerator(8L), "other");
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    @Test
+    public void testCachedFormulaResults() throws IOException {
+        WorkbookGenerator generator = this.newGenerator(3L);
+        generator.setFormulaRatio(0.5);
+        File file = new File(this.folder.getRoot(), "formulae.xlsx");
+        generator.generate(file);
+
+        File cached = this.folder.newFolder("cached");
+        new ExcelUtils().convertExcelToCSV(file.getPath(), cached.getPath());
+        File evaluated = this.folder.newFolder("evaluated");
+        ExcelUtils converter = new ExcelUtils();
+        converter.setEvaluateFormulas(true);
+        converter.convertExcelToCSV(file.getPath(), evaluated.getPath());
+
+        assertArrayEquals(Files.readAllBytes(new File(cached, "formulae.csv").toPath()),
+            Files.readAllBytes(new File(evaluated, "formulae.csv").toPath()));
+    }
+
+    private WorkbookGenerator newGenerator(long seed) {
+        WorkbookGenerator generator = new WorkbookGenerator();
+        generator.setSeed(seed);
+        generator.setRows(300);
+        generator.setColumns(12);
+        generator.setSheets(2);
+        generator.setBlankRatio(0.3);
+        generator.setFormulaRatio(0.2);
+        generator.setFormatCount(12);
+        generator.setRowWindow(10);
+        return generator;
+    }
+
+    private byte[] generateAndConvert(WorkbookGenerator generator, String name) throws IOException {
+        File file = new File(this.folder.getRoot(), name + ".xlsx");
+        generator.generate(file);
+        File destination = this.folder.newFolder(name);
+        ExcelUtils converter = new ExcelUtils();
+        converter.setStreaming(true);
+        converter.convertExcelToCSV(file.getPath(), destination.getPath());
+        return Files.readAllBytes(new File(destination, name + ".csv").toPath());
+    }
+}
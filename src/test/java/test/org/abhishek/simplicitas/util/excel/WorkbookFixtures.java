@@ -0,0 +1,319 @@
+/* Copyright 2016 Roychoudhury, Abhishek */
+
+package test.org.abhishek.simplicitas.util.excel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Builds the workbooks the conversion tests are run against, so that every
+ * test class converts the same cells.
+ *
+ * @author abhishek
+ * @since 1.0
+ */
+public final class WorkbookFixtures {
+    /**
+     * The numbers, and the formats they are given, whose rendering has
+     * differed between the streaming and user model conversions: signed
+     * zeroes, halves, large and tiny magnitudes, scientific notation,
+     * fractions and negative numbers formatted as dates or elapsed times.
+     */
+    private static final Object[][] EDGE_VALUES = new Object[][] {
+        {
+            -0.0d, "General"
+        }, {
+            -0.0d, "0.00"
+        }, {
+            -0.001d, "0.00"
+        }, {
+            -0.0d, "$#,##0.00_);($#,##0.00)"
+        }, {
+            -0.001d, "$#,##0.00_);($#,##0.00)"
+        }, {
+            -1234.5d, "$#,##0.00_);($#,##0.00)"
+        }, {
+            1.0E20d, "0.00E+00"
+        }, {
+            1.0E20d, "0.00E00"
+        }, {
+            42d, "0.00E00"
+        }, {
+            1.0E-10d, "0.00E+00"
+        }, {
+            2.675d, "0.00"
+        }, {
+            0.125d, "0.00"
+        }, {
+            1.005d, "#,##0.00"
+        }, {
+            1000000000000000.2d, "General"
+        }, {
+            1000000000000000.2d, "0"
+        }, {
+            1.0E20d, "General"
+        }, {
+            1.0E-10d, "General"
+        }, {
+            1.0E-10d, "0.00"
+        }, {
+            0.3d, "# ?/?"
+        }, {
+            1.25d, "# ??/??"
+        }, {
+            -1234.5d, "dd/mm/yyyy"
+        }, {
+            -1234.5d, "[h]:mm:ss"
+        }, {
+            1234.5d, "[h]:mm:ss"
+        }, {
+            0.125d, "0%"
+        }
+    };
+
+    private WorkbookFixtures() {
+    }
+
+    /**
+     * Creates a workbook of three sheets: Data, which holds numbers, strings
+     * needing escaping, a boolean, a date, formulas and gaps between both rows
+     * and cells, Empty, which holds nothing, and Second.
+     *
+     * @param workbook
+     *            the empty workbook, or one holding sheets to precede Data
+     * @param file
+     *            the file the workbook is written to
+     * @return the file
+     * @throws IOException
+     *             if the workbook cannot be written
+     */
+    public static File createSample(Workbook workbook, File file) throws IOException {
+        CreationHelper helper = workbook.getCreationHelper();
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(helper.createDataFormat().getFormat("dd/mm/yyyy"));
+        CellStyle amountStyle = workbook.createCellStyle();
+        amountStyle.setDataFormat(helper.createDataFormat().getFormat("#,##0.00"));
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2016, Calendar.MARCH, 14);
+
+        Sheet sheet = workbook.createSheet("Data");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue(1);
+        row.createCell(1).setCellValue(2.5);
+        row.createCell(2).setCellValue("three");
+        row.createCell(3).setCellValue(true);
+        row.createCell(4).setCellFormula("A1+B1");
+
+        row = sheet.createRow(2);
+        row.createCell(1).setCellValue("A, with comma");
+        row.createCell(3).setCellValue("\"Hello\" he said");
+        Cell cell = row.createCell(6);
+        cell.setCellValue(1400.125);
+        cell.setCellStyle(amountStyle);
+
+        row = sheet.createRow(3);
+        row.createCell(4).setCellValue("two\nlines");
+        cell = row.createCell(5);
+        cell.setCellValue(calendar.getTime());
+        cell.setCellStyle(dateStyle);
+        row.createCell(7).setCellFormula("CONCATENATE(C1,\"-x\")");
+
+        sheet.createRow(5);
+        row = sheet.createRow(6);
+        row.createCell(0).setCellValue("  padded  ");
+        row.createCell(2).setCellValue(-0.001);
+        sheet.createRow(8);
+
+        workbook.createSheet("Empty");
+
+        sheet = workbook.createSheet("Second");
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue("second sheet");
+        row.createCell(1).setCellValue(123456789);
+
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+        return WorkbookFixtures.write(workbook, file);
+    }
+
+    /**
+     * Creates a workbook with a single sheet, Data, of the given number of
+     * rows, each holding its number, a string needing escaping and an amount
+     * that moves from one column to the next.
+     *
+     * @param workbook
+     *            the empty workbook
+     * @param file
+     *            the file the workbook is written to
+     * @param rows
+     *            the number of rows
+     * @return the file
+     * @throws IOException
+     *             if the workbook cannot be written
+     */
+    public static File createTable(Workbook workbook, File file, int rows) throws IOException {
+        CellStyle amountStyle = workbook.createCellStyle();
+        amountStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("#,##0.00"));
+        Sheet sheet = workbook.createSheet("Data");
+        for (int i = 0; i < rows; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(i);
+            row.createCell(1).setCellValue("row " + i + ", of " + rows + "; \"table\"");
+            Cell cell = row.createCell(i % 5 + 2);
+            cell.setCellValue(i * 1234.5);
+            if (i % 2 == 0) {
+                cell.setCellStyle(amountStyle);
+            }
+        }
+        return WorkbookFixtures.write(workbook, file);
+    }
+
+    /**
+     * Adds a sheet, Edges, with a row for each of the {@link #EDGE_VALUES}:
+     * its format, then the number in that format.
+     *
+     * @param workbook
+     *            the workbook
+     * @return the workbook
+     */
+    public static Workbook withEdgeValues(Workbook workbook) {
+        DataFormat dataFormat = workbook.createDataFormat();
+        Sheet sheet = workbook.createSheet("Edges");
+        for (int i = 0; i < WorkbookFixtures.EDGE_VALUES.length; i++) {
+            String format = (String) WorkbookFixtures.EDGE_VALUES[i][1];
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(dataFormat.getFormat(format));
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(format);
+            Cell cell = row.createCell(1);
+            cell.setCellValue((Double) WorkbookFixtures.EDGE_VALUES[i][0]);
+            cell.setCellStyle(style);
+        }
+        return workbook;
+    }
+
+    /**
+     * @return the number of rows of the Edges sheet
+     */
+    public static int edgeValueCount() {
+        return WorkbookFixtures.EDGE_VALUES.length;
+    }
+
+    /**
+     * Adds a sheet, Blanks, whose rows hold runs of blank cells that have
+     * been given a style - written to a BIFF workbook as MULBLANK records -
+     * reaching further to the right than any other cell.
+     *
+     * @param workbook
+     *            the workbook
+     * @return the workbook
+     */
+    public static Workbook withStyledBlanks(Workbook workbook) {
+        CellStyle style = workbook.createCellStyle();
+        style.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
+        style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        Sheet sheet = workbook.createSheet("Blanks");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("x");
+        for (int i = 1; i <= 12; i++) {
+            row.createCell(i).setCellStyle(style);
+        }
+        row = sheet.createRow(2);
+        row.createCell(0).setCellValue(1);
+        row.createCell(1).setCellStyle(style);
+        row.createCell(2).setCellStyle(style);
+        row.createCell(3).setCellValue(2);
+        row.createCell(4).setCellStyle(style);
+        row = sheet.createRow(3);
+        for (int i = 2; i <= 5; i++) {
+            row.createCell(i).setCellStyle(style);
+        }
+        return workbook;
+    }
+
+    /**
+     * Creates a SpreadsheetML workbook with no styles part at all, as some
+     * tools other than Excel write them, holding a sheet, Data, of unstyled
+     * numbers and strings.
+     *
+     * @param file
+     *            the file the workbook is written to
+     * @return the file
+     * @throws IOException
+     *             if the workbook cannot be written
+     */
+    public static File createWithoutStyles(File file) throws IOException {
+        String[][] parts = new String[][] {
+            {
+                "[Content_Types].xml",
+                "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" "
+                    + "ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" "
+                    + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" "
+                    + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "</Types>"
+            }, {
+                "_rels/.rels",
+                "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Target=\"xl/workbook.xml\" Type=\"http://schemas.openxmlformats.org"
+                    + "/officeDocument/2006/relationships/officeDocument\"/></Relationships>"
+            }, {
+                "xl/workbook.xml",
+                "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+                    + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                    + "<sheets><sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>"
+            }, {
+                "xl/_rels/workbook.xml.rels",
+                "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Target=\"worksheets/sheet1.xml\" "
+                    + "Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\"/>"
+                    + "</Relationships>"
+            }, {
+                "xl/worksheets/sheet1.xml",
+                "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                    + "<row r=\"1\"><c r=\"A1\"><v>1</v></c><c r=\"B1\"><v>12345678901</v></c>"
+                    + "<c r=\"C1\"><v>2.5</v></c><c r=\"D1\" t=\"inlineStr\"><is><t>text</t></is></c></row>"
+                    + "<row r=\"3\"><c r=\"B3\"><v>-0.001</v></c><c r=\"C3\"><v>1E+20</v></c>"
+                    + "<c r=\"D3\"><v>0</v></c></row></sheetData></worksheet>"
+            }
+        };
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (String[] part : parts) {
+                out.putNextEntry(new ZipEntry(part[0]));
+                out.write(part[1].getBytes(Charset.forName("UTF-8")));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static File write(Workbook workbook, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            workbook.write(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}